@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonRenderingBenchmark;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure publishing a summary end to end, from rendering to the response of a local stub of
+ * DashBeats answering after a given latency: a full publish to a new publisher, posting every
+ * widget, and the publish of a summary where one build changed, posting only the changed widgets.
+ * <p/>
+ * The latency is sampled for its percentiles. The bytes posted per publish are printed at the
+ * end of every iteration.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PublishBenchmark {
+
+    private static final String ROOT_URL = "http://jenkins.example.com";
+
+    /* Latency of the server in milliseconds */
+    @Param({"0", "5"})
+    private long latency;
+
+    @Param({"false", "true"})
+    private boolean compression;
+
+    /* Number of rows of every list widget */
+    @Param({"10"})
+    private int rows;
+
+    private DashBeatsStubServer server;
+    private DashBeatsClient client;
+    private JsonFactory jsonFactory;
+    private StatsSummary summary;
+    private DashBeatsPublisher publisher;
+    private long publishes;
+    private long posts;
+    private long postedBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new DashBeatsStubServer().start();
+        server.setLatency(latency);
+        server.setRecording(false);
+        client = new DashBeatsClient(compression);
+        jsonFactory = new JsonFactory("YOUR_AUTH_TOKEN") {
+            @Override
+            protected String getRootUrl() {
+                return ROOT_URL;
+            }
+        };
+        summary = JsonRenderingBenchmark.createSummary(rows);
+        publisher = new DashBeatsPublisher(server.getUrl(), client, jsonFactory);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * A publisher knowing nothing delivered yet, so that every widget is posted
+     */
+    @State(Scope.Thread)
+    public static class FreshPublisher {
+        private DashBeatsPublisher publisher;
+
+        @Setup(Level.Invocation)
+        public void setUp(PublishBenchmark benchmark) {
+            publisher = new DashBeatsPublisher(benchmark.server.getUrl(), benchmark.client, benchmark.jsonFactory);
+        }
+    }
+
+    @Benchmark
+    public void publishAll(FreshPublisher fresh) {
+        fresh.publisher.publish(summary);
+        publishes++;
+    }
+
+    @Benchmark
+    public void publishOneChanged() {
+        summary.getLatestBuilds().get(0).incrementBuildResult("FAILURE");
+        publisher.publish(summary);
+        publishes++;
+    }
+
+    /**
+     * Print the posts and bytes per publish of the iteration
+     */
+    @TearDown(Level.Iteration)
+    public void report() {
+        long iterationPosts = server.getPosts() - posts;
+        long iterationBytes = server.getPostedBytes() - postedBytes;
+        if (publishes > 0) {
+            System.out.printf("%n%d publishes, %.1f posts and %d bytes per publish%n", publishes,
+                    (double) iterationPosts / publishes, iterationBytes / publishes);
+        }
+        posts = server.getPosts();
+        postedBytes = server.getPostedBytes();
+        publishes = 0;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the DashBeats store fed with synthetic statistics: the throughput of updating it with
+ * a new build, and the latency of creating the summary, after a history of builds.
+ * Run with <code>-prof gc</code> for the allocation per operation.
+ */
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Thread)
+public class DashBeatsStoreBenchmark {
+
+    /* Number of statistics generated ahead and fed in turn to the update */
+    private static final int STREAM_SIZE = 1 << 16;
+
+    /* Number of builds in the store before measuring */
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int history;
+
+    @Param({"10", "1000"})
+    private int jobs;
+
+    @Param({"10", "200"})
+    private int causes;
+
+    @Param({"0.1", "0.5"})
+    private double failureRatio;
+
+    private DashBeatsStore store;
+    private List<FailureCause> knownCauses;
+    private Statistics[] stream;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticStatistics generator = new SyntheticStatistics(jobs, causes, failureRatio, 42L);
+        knownCauses = generator.getCauses();
+        store = new DashBeatsStore();
+        for (int i = 0; i < history; i++) {
+            store.update(generator.next(), knownCauses);
+        }
+        stream = generator.generate(STREAM_SIZE).toArray(new Statistics[STREAM_SIZE]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long update() {
+        store.update(stream[next], knownCauses);
+        next = (next + 1) & (STREAM_SIZE - 1);
+        return store.getVersion();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public StatsSummary createSummary() {
+        return store.createSummary();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.FailureCauseStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compare filtering the stats store by compiling the criteria for every stats, as the filter
+ * utility used to, with a query compiled once, for a plain text and a regular expression filter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class StatsQueryBenchmark {
+
+    private static final String[] RESULTS = {"SUCCESS", "FAILURE", "UNSTABLE", "ABORTED"};
+
+    /* Number of stats in the store */
+    @Param({"1000", "10000"})
+    private int records;
+
+    private List<Statistics> stats;
+    private GraphFilterBuilder literalFilter;
+    private GraphFilterBuilder regexFilter;
+
+    @Setup
+    public void setUp() {
+        stats = new ArrayList<Statistics>(records);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < records; i++) {
+            stats.add(new Statistics("job-" + (i % 50), i, new Date(now - i * 60000L), 60000L,
+                    Collections.<String>emptyList(), "slave-" + (i % 10), "master", 0,
+                    RESULTS[i % RESULTS.length], null, Collections.<FailureCauseStatistics>emptyList()));
+        }
+        literalFilter = new GraphFilterBuilder();
+        literalFilter.setProjectName("job-1");
+        literalFilter.setMasterName("master");
+        literalFilter.setExcludeResult("ABORTED");
+        regexFilter = new GraphFilterBuilder();
+        regexFilter.setProjectName("job-(1|2)");
+        regexFilter.setSlaveName("slave-[0-4]");
+        regexFilter.setExcludeResult("ABORTED");
+    }
+
+    @Benchmark
+    public int perStatsCompileLiteral() {
+        return countPerStatsCompile(literalFilter);
+    }
+
+    @Benchmark
+    public int compiledLiteral() {
+        return countCompiled(literalFilter);
+    }
+
+    @Benchmark
+    public int perStatsCompileRegex() {
+        return countPerStatsCompile(regexFilter);
+    }
+
+    @Benchmark
+    public int compiledRegex() {
+        return countCompiled(regexFilter);
+    }
+
+    /**
+     * Count the matching stats, compiling the query once
+     */
+    private int countCompiled(GraphFilterBuilder filter) {
+        StatsQuery query = StatsQuery.compile(filter);
+        int count = 0;
+        for (Statistics stat : stats) {
+            if (query.matches(stat)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the matching stats, compiling a pattern for every criterion of every stats
+     */
+    private int countPerStatsCompile(GraphFilterBuilder filter) {
+        int count = 0;
+        for (Statistics stat : stats) {
+            if (!isMatched(filter.getExcludeResult(), stat.getResult(), false)
+                    && isMatched(filter.getProjectName(), stat.getProjectName(), true)
+                    && isMatched(filter.getResult(), stat.getResult(), true)
+                    && isMatched(filter.getMasterName(), stat.getMaster(), true)
+                    && isMatched(filter.getSlaveName(), stat.getSlaveHostName(), true)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isMatched(String matcher, String text, boolean ifNone) {
+        if (matcher == null) {
+            return ifNone;
+        }
+        return Pattern.compile(".*" + matcher + ".*").matcher(text).find();
+    }
+}
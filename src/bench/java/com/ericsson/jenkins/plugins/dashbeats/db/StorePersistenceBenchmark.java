@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.XmlFile;
+import hudson.util.XStream2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the persistence of the stats store at scale, as done by the knowledge base: saving the
+ * whole store, saving it after a new build as every build does, loading it cold with a new
+ * XStream, and rebuilding the index and the DashBeats store from the statistics loaded.
+ * <p/>
+ * Every operation is timed once per iteration. The size of the file and the peak heap of the
+ * operation are printed at the end of every iteration.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+@State(Scope.Thread)
+public class StorePersistenceBenchmark {
+
+    /**
+     * The formats the knowledge base can store the statistics with
+     */
+    public enum Format {
+        /* XML written by XStream, as in dashbeats-plugin-store.xml */
+        XSTREAM_XML {
+            @Override
+            void write(File file, Map<String, Statistics> stats) throws IOException {
+                new XmlFile(new XStream2(), file).write(stats);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            Map<String, Statistics> read(File file) throws IOException {
+                return (Map<String, Statistics>) new XmlFile(new XStream2(), file).read();
+            }
+        };
+
+        abstract void write(File file, Map<String, Statistics> stats) throws IOException;
+
+        abstract Map<String, Statistics> read(File file) throws IOException;
+    }
+
+    /* Number of builds in the store */
+    @Param({"10000", "100000", "1000000"})
+    private int records;
+
+    @Param({"XSTREAM_XML"})
+    private Format format;
+
+    private SyntheticStatistics generator;
+    private List<FailureCause> causes;
+    private StatsIndex index;
+    private Map<String, Statistics> loaded;
+    private File file;
+    private long heapBefore;
+
+    @Setup
+    public void setUp() throws IOException {
+        generator = new SyntheticStatistics(1000, 200, 0.2, 42L);
+        causes = generator.getCauses();
+        index = new StatsIndex();
+        index.addAll(generator.generate(records));
+        file = File.createTempFile("dashbeats-store", ".xml");
+        file.deleteOnExit();
+        format.write(file, index.toMap());
+        loaded = format.read(file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeakHeap() {
+        System.gc();
+        heapBefore = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    /**
+     * Print the file size and the peak heap of the iteration
+     */
+    @TearDown(Level.Iteration)
+    public void report() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.printf("%n%s of %d records: file %d KB, heap %d MB before, %d MB at peak%n", format, records,
+                file.length() / 1024, heapBefore >> 20, peak >> 20);
+    }
+
+    @Benchmark
+    public long fullSave() throws IOException {
+        format.write(file, index.toMap());
+        return file.length();
+    }
+
+    /**
+     * Save after a new build, the whole store being written as on every build
+     */
+    @Benchmark
+    public long incrementalSave() throws IOException {
+        index.add(generator.next());
+        format.write(file, index.toMap());
+        return file.length();
+    }
+
+    @Benchmark
+    public int coldLoad() throws IOException {
+        return format.read(file).size();
+    }
+
+    /**
+     * Rebuild the index and the DashBeats store from the statistics loaded, as on start up
+     */
+    @Benchmark
+    public int rebuild() {
+        StatsIndex rebuilt = new StatsIndex();
+        rebuilt.addAll(loaded.values());
+        DashBeatsStore store = new DashBeatsStore();
+        for (Statistics stat : loaded.values()) {
+            store.update(stat, causes);
+        }
+        return rebuilt.size() + store.size();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.model.indication.FoundIndication;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.FailureCauseStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a stream of statistics looking like those of a real Jenkins, for benchmarks.
+ * <p/>
+ * A few jobs build much more often than the others, as do a few failure causes, both picked
+ * with a skewed distribution: an index is the size times a uniform random number to the power
+ * of the skew, 1 being uniform. Builds fail with the given ratio, most failed builds having one
+ * known cause, some two, and some none. Build numbers increase per job and starting times
+ * increase with the stream. The stream is the same for the same seed.
+ */
+public class SyntheticStatistics {
+
+    private static final String[] OTHER_RESULTS = {"UNSTABLE", "ABORTED"};
+    /* Ratio of the failed builds with two causes, and with none */
+    private static final double TWO_CAUSES = 0.1;
+    private static final double NO_CAUSE = 0.2;
+    /* Number of slaves the builds run on */
+    private static final int SLAVES = 20;
+    /* Mean delay between two builds in milliseconds */
+    private static final long MEAN_INTERVAL = 30000L;
+    public static final double DEFAULT_SKEW = 3;
+
+    private final int jobs;
+    private final double failureRatio;
+    private final double skew;
+    private final List<FailureCause> causes;
+    private final int[] buildNumbers;
+    private final Random random;
+    private long time;
+
+    /**
+     * Constructor of a generator
+     *
+     * @param jobs number of jobs
+     * @param causes number of failure causes
+     * @param failureRatio ratio of the failed builds, between 0 and 1
+     * @param seed seed of the random stream
+     */
+    public SyntheticStatistics(int jobs, int causes, double failureRatio, long seed) {
+        this(jobs, causes, failureRatio, DEFAULT_SKEW, seed);
+    }
+
+    /**
+     * Constructor of a generator
+     *
+     * @param jobs number of jobs
+     * @param causes number of failure causes
+     * @param failureRatio ratio of the failed builds, between 0 and 1
+     * @param skew skew of the distribution of jobs and causes, 1 for uniform
+     * @param seed seed of the random stream
+     */
+    public SyntheticStatistics(int jobs, int causes, double failureRatio, double skew, long seed) {
+        this.jobs = jobs;
+        this.failureRatio = failureRatio;
+        this.skew = skew;
+        this.causes = new ArrayList<FailureCause>(causes);
+        for (int i = 0; i < causes; i++) {
+            FailureCause cause = new FailureCause("Failure cause " + i, "Description of failure cause " + i);
+            cause.setId("cause-" + i);
+            cause.setCategories(Collections.singletonList("category-" + (i % 5)));
+            this.causes.add(cause);
+        }
+        this.buildNumbers = new int[jobs];
+        this.random = new Random(seed);
+        this.time = 1400000000000L;
+    }
+
+    /**
+     * Get the failure causes the statistics refer to, as known by the knowledge base
+     *
+     * @return causes
+     */
+    public List<FailureCause> getCauses() {
+        return causes;
+    }
+
+    /**
+     * Generate the next statistics of the stream
+     *
+     * @return statistics
+     */
+    public Statistics next() {
+        int job = pick(jobs);
+        int buildNumber = ++buildNumbers[job];
+        time += (long) (-Math.log(1 - random.nextDouble()) * MEAN_INTERVAL);
+        String result;
+        List<FailureCauseStatistics> found = new ArrayList<FailureCauseStatistics>(2);
+        double outcome = random.nextDouble();
+        if (outcome < failureRatio) {
+            result = "FAILURE";
+            double known = random.nextDouble();
+            if (known >= NO_CAUSE && !causes.isEmpty()) {
+                found.add(createCauseStatistics(pick(causes.size())));
+                if (known < NO_CAUSE + TWO_CAUSES) {
+                    found.add(createCauseStatistics(pick(causes.size())));
+                }
+            }
+        } else if (outcome < failureRatio + (1 - failureRatio) * 0.05) {
+            result = OTHER_RESULTS[random.nextInt(OTHER_RESULTS.length)];
+        } else {
+            result = "SUCCESS";
+        }
+        long duration = 10000L + random.nextInt(600000);
+        return new Statistics("job-" + job, buildNumber, new Date(time), duration,
+                Collections.singletonList("SCMTrigger"), "slave-" + random.nextInt(SLAVES), "master",
+                0, result, null, found);
+    }
+
+    /**
+     * Generate statistics
+     *
+     * @param count number of statistics
+     * @return statistics, oldest first
+     */
+    public List<Statistics> generate(int count) {
+        List<Statistics> list = new ArrayList<Statistics>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(next());
+        }
+        return list;
+    }
+
+    /**
+     * Pick an index, the lowest being the most frequent
+     *
+     * @param size
+     * @return index
+     */
+    private int pick(int size) {
+        return (int) (size * Math.pow(random.nextDouble(), skew));
+    }
+
+    /**
+     * Create the statistics of a failure cause found in a build
+     *
+     * @param index
+     * @return statistics
+     */
+    private FailureCauseStatistics createCauseStatistics(int index) {
+        return new FailureCauseStatistics(causes.get(index).getId(), Collections.<FoundIndication>emptyList());
+    }
+}
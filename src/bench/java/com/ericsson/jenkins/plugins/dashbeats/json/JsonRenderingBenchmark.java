@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.json;
+
+import com.ericsson.jenkins.plugins.dashbeats.model.BuildInfo;
+import com.ericsson.jenkins.plugins.dashbeats.model.FaultCauseInfo;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.sf.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the json object path, i.e. json-lib objects serialized by Jackson as Jersey does,
+ * with the streaming path writing the payloads of all widgets to a reusable buffer.
+ * The streaming path renders unchanged rows from the cache of the json factory.
+ * Run with <code>-prof gc</code> to compare the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonRenderingBenchmark {
+
+    private static final String ROOT_URL = "http://jenkins.example.com";
+
+    /* Number of rows of every list widget */
+    @Param({"10", "100"})
+    private int rows;
+
+    private StatsSummary summary;
+    private JsonFactory jsonFactory;
+    private ObjectMapper mapper;
+    private JsonWriter payload;
+
+    @Setup
+    public void setUp() {
+        summary = createSummary(rows);
+        jsonFactory = new JsonFactory("YOUR_AUTH_TOKEN") {
+            @Override
+            protected String getRootUrl() {
+                return ROOT_URL;
+            }
+        };
+        mapper = new ObjectMapper();
+        payload = new JsonWriter();
+    }
+
+    @Benchmark
+    public void jsonObjects(Blackhole blackhole) throws Exception {
+        blackhole.consume(mapper.writeValueAsBytes(withItems(jsonFactory.createCommonFaultCauses(summary))));
+        blackhole.consume(mapper.writeValueAsBytes(withItems(jsonFactory.createLatestFailedBuilds(summary))));
+        blackhole.consume(mapper.writeValueAsBytes(withItems(jsonFactory.createLatestBuilds(summary))));
+        blackhole.consume(mapper.writeValueAsBytes(withItems(jsonFactory.createTopFailedJobs(summary))));
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) {
+        RenderedSummary rendered = jsonFactory.render(summary);
+        post(blackhole, rendered.getCommonFaultCauses());
+        post(blackhole, rendered.getLatestFailedBuilds());
+        post(blackhole, rendered.getLatestBuilds());
+        post(blackhole, rendered.getTopFailedJobs());
+    }
+
+    /**
+     * Streaming with one build changing per summary, as when a build completes,
+     * the rows of the other builds come from the render cache
+     */
+    @Benchmark
+    public void streamingOneChanged(Blackhole blackhole) {
+        summary.getLatestBuilds().get(0).incrementBuildResult("FAILURE");
+        streaming(blackhole);
+    }
+
+    private JSONObject withItems(List<JSONObject> items) {
+        JSONObject jsonObject = jsonFactory.createJson();
+        jsonObject.put("items", items);
+        return jsonObject;
+    }
+
+    private void post(Blackhole blackhole, byte[] members) {
+        jsonFactory.writePayload(payload, members);
+        blackhole.consume(payload.array());
+        blackhole.consume(payload.size());
+    }
+
+    /**
+     * Create a summary with a number of rows in every list widget
+     *
+     * @param rows
+     * @return summary
+     */
+    public static StatsSummary createSummary(int rows) {
+        Date now = new Date();
+        StatsSummary summary = new StatsSummary(now, now, rows);
+        List<FaultCauseInfo> causes = new ArrayList<FaultCauseInfo>();
+        List<BuildInfo> builds = new ArrayList<BuildInfo>();
+        for (int i = 0; i < rows; i++) {
+            FaultCauseInfo faultCause = new FaultCauseInfo(now, "cause-" + i);
+            faultCause.setCauseName("Fault cause \"" + i + "\"");
+            faultCause.setFailures(i);
+            causes.add(faultCause);
+            BuildInfo buildInfo = new BuildInfo(now, "job-" + (i % 17), i, "FAILURE");
+            buildInfo.setFailures(i);
+            buildInfo.setSuccesses(2 * i);
+            builds.add(buildInfo);
+        }
+        summary.setCommonFailureCauses(causes);
+        summary.setLatestFailedBuilds(builds);
+        summary.setLatestBuilds(builds);
+        summary.setTopFailedJobs(builds);
+        return summary;
+    }
+}
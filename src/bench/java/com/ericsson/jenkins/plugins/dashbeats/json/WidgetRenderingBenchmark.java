@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.json;
+
+import com.ericsson.jenkins.plugins.dashbeats.client.WidgetType;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import com.ericsson.jenkins.plugins.dashbeats.widget.WidgetRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the rendering of the payload of every built-in widget, with the summary unchanged,
+ * the rows coming from the render cache, and with one build changed as when a build completes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class WidgetRenderingBenchmark {
+
+    private static final String ROOT_URL = "http://jenkins.example.com";
+
+    @Param({"WELCOME", "COMMON_FAULT_CAUSES", "LATEST_FAILED_BUILDS", "LATEST_BUILD", "TOP_FAILED_JOBS",
+            "CONFIGURE_FAILURE_CAUSES"})
+    private WidgetType widget;
+
+    /* Number of rows of every list widget */
+    @Param({"10", "100"})
+    private int rows;
+
+    private StatsSummary summary;
+    private JsonFactory jsonFactory;
+    private WidgetRenderer renderer;
+    private JsonWriter writer;
+    private JsonWriter payload;
+
+    @Setup
+    public void setUp() {
+        summary = JsonRenderingBenchmark.createSummary(rows);
+        jsonFactory = new JsonFactory("YOUR_AUTH_TOKEN") {
+            @Override
+            protected String getRootUrl() {
+                return ROOT_URL;
+            }
+        };
+        renderer = widget.getWidget().createRenderer(jsonFactory);
+        writer = new JsonWriter();
+        payload = new JsonWriter();
+    }
+
+    @Benchmark
+    public int unchanged() {
+        return post(renderer.render(summary, ROOT_URL, writer));
+    }
+
+    @Benchmark
+    public int oneChanged() {
+        summary.getLatestBuilds().get(0).incrementBuildResult("FAILURE");
+        return post(renderer.render(summary, ROOT_URL, writer));
+    }
+
+    /**
+     * Write the payload posted, as the publisher does
+     */
+    private int post(byte[] members) {
+        jsonFactory.writePayload(payload, members);
+        return payload.size();
+    }
+}
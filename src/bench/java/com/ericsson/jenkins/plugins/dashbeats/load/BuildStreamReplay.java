@@ -0,0 +1,469 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.load;
+
+import com.ericsson.jenkins.plugins.dashbeats.client.DashBeatsStubServer;
+import com.ericsson.jenkins.plugins.dashbeats.db.DashBeatsKnowledgeBase;
+import com.ericsson.jenkins.plugins.dashbeats.db.SyntheticStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.FailureCauseStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.XmlFile;
+import hudson.util.XStream2;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays a stream of completed builds into {@link DashBeatsKnowledgeBase#saveStatistics(Statistics)},
+ * as Jenkins does, publishing to a local stub of DashBeats, to reproduce production pressure.
+ * <p/>
+ * The builds are either generated from a seed, see {@link SyntheticStatistics}, or read from a
+ * store file, <code>dashbeats-plugin-store.xml</code>, and replayed in the order they started.
+ * Generated builds arrive at a mean rate, some of them in bursts as when a commit triggers many
+ * jobs at once. Recorded builds arrive with their recorded delays, sped up, unless a rate is given.
+ * Every build completes on one of the executor threads, which hands it over to a single thread saving
+ * the builds one at a time, as BFA does, the builds waiting to be saved being queued.
+ * <p/>
+ * Every second the throughput, the depth of the queue of builds to save, the widget updates pending
+ * publication, the posts received by the stub and the garbage collections are printed, and a
+ * summary at the end, with the latency percentiles of saveStatistics and the time taken to
+ * publish everything after the last build. The knowledge base runs in a Jenkins started for the
+ * replay. Run with:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbench.main=com.ericsson.jenkins.plugins.dashbeats.load.BuildStreamReplay \
+ *     -Djmh.args="--builds=20000 --rate=200 --executors=16"
+ * </pre>
+ * Options, as <code>--name=value</code>:
+ * <ul>
+ * <li><code>builds</code> number of builds generated, 10000 by default</li>
+ * <li><code>rate</code> mean number of builds per second, 100 by default for generated builds</li>
+ * <li><code>burst-probability</code> probability that a build comes with a burst, 0.01 by default</li>
+ * <li><code>burst-size</code> number of builds of a burst, 50 by default</li>
+ * <li><code>executors</code> number of threads completing builds, 8 by default</li>
+ * <li><code>jobs</code>, <code>causes</code>, <code>failure-ratio</code>, <code>skew</code> and
+ * <code>seed</code> the distribution of the builds generated</li>
+ * <li><code>replay</code> a store file to replay instead of generating builds</li>
+ * <li><code>speed</code> the speed up of the recorded delays, 60 by default</li>
+ * <li><code>latency</code> latency of the stub in milliseconds, 0 by default</li>
+ * </ul>
+ */
+public class BuildStreamReplay {
+
+    /* Delay in milliseconds after the last build, after which the publication is given up */
+    private static final long DRAIN_TIMEOUT = 120000L;
+
+    private final Map<String, String> options;
+    private final DashBeatsStubServer server;
+    private final List<Statistics> builds;
+    private final long[] arrivals;
+    private final List<FailureCause> causes;
+    /* Latency of every saveStatistics in nanoseconds, in the order they complete */
+    private final long[] latencies;
+    private final AtomicInteger saved = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile int maxQueueDepth;
+    private volatile int maxPendingUpdates;
+
+    /**
+     * Constructor of a replay
+     *
+     * @param options
+     * @param server the stub of DashBeats published to
+     * @throws Exception if the store to replay cannot be read
+     */
+    public BuildStreamReplay(Map<String, String> options, DashBeatsStubServer server) throws Exception {
+        this.options = options;
+        this.server = server;
+        Random random = new Random(getLong("seed", 42L));
+        String replay = options.get("replay");
+        if (replay == null) {
+            SyntheticStatistics generator = new SyntheticStatistics(getInt("jobs", 200), getInt("causes", 50),
+                    getDouble("failure-ratio", 0.2), getDouble("skew", SyntheticStatistics.DEFAULT_SKEW),
+                    getLong("seed", 42L));
+            builds = generator.generate(getInt("builds", 10000));
+            causes = generator.getCauses();
+            arrivals = generateArrivals(builds.size(), getDouble("rate", 100), random);
+        } else {
+            builds = readStore(new File(replay));
+            causes = createCauses(builds);
+            arrivals = options.containsKey("rate")
+                    ? generateArrivals(builds.size(), getDouble("rate", 100), random)
+                    : recordedArrivals(builds, getDouble("speed", 60));
+        }
+        latencies = new long[builds.size()];
+    }
+
+    /**
+     * Replay the builds into a knowledge base publishing to the stub, printing the metrics
+     *
+     * @throws Exception
+     */
+    public void run() throws Exception {
+        final DashBeatsKnowledgeBase knowledgeBase = new DashBeatsKnowledgeBase(server.getUrl(), "YOUR_AUTH_TOKEN");
+        for (FailureCause cause : causes) {
+            knowledgeBase.addCause(cause);
+        }
+        knowledgeBase.start();
+        // replay against a loaded store, the stats saved while warming up being only buffered
+        knowledgeBase.getWarmUp().await(1, TimeUnit.DAYS);
+        System.out.printf("Store loaded in %d ms%n", knowledgeBase.getWarmUp().getDuration());
+        int executors = getInt("executors", 8);
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(executors, executors, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        // saveStatistics is not thread safe, BFA never calls it concurrently
+        final ThreadPoolExecutor saver = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        final long start = System.nanoTime();
+        System.out.printf("Replaying %d builds over %.1f s with %d executors%n", builds.size(),
+                arrivals.length == 0 ? 0 : arrivals[arrivals.length - 1] / 1000.0, executors);
+        System.out.println("time_s saved/s queue pending posts/s posted_KB/s gc_count gc_ms");
+        sampler.scheduleAtFixedRate(new Sampler(saver, knowledgeBase, start), 1, 1, TimeUnit.SECONDS);
+        long[] gcBefore = getGcStats();
+        try {
+            for (int i = 0; i < builds.size(); i++) {
+                long delay = arrivals[i] - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                final Statistics stat = builds.get(i);
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // the build completes on the executor, then waits for the saving thread
+                        saver.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                save(knowledgeBase, stat);
+                            }
+                        });
+                    }
+                });
+            }
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.DAYS);
+            saver.shutdown();
+            saver.awaitTermination(1, TimeUnit.DAYS);
+            long lastSaved = System.nanoTime();
+            long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT;
+            while (knowledgeBase.getPendingUpdates() > 0 && System.currentTimeMillis() < drainDeadline) {
+                Thread.sleep(10);
+            }
+            long end = System.nanoTime();
+            sampler.shutdownNow();
+            report(end - start, end - lastSaved, knowledgeBase.getPendingUpdates(), gcBefore);
+        } finally {
+            sampler.shutdownNow();
+            pool.shutdownNow();
+            saver.shutdownNow();
+            knowledgeBase.stop();
+        }
+    }
+
+    /**
+     * Save a build, recording the latency
+     *
+     * @param knowledgeBase
+     * @param stat
+     */
+    private void save(DashBeatsKnowledgeBase knowledgeBase, Statistics stat) {
+        long begin = System.nanoTime();
+        try {
+            knowledgeBase.saveStatistics(stat);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+        }
+        latencies[saved.getAndIncrement()] = System.nanoTime() - begin;
+    }
+
+    /**
+     * Print the summary of the replay
+     *
+     * @param elapsed nanoseconds from the first build to everything published
+     * @param drain nanoseconds from the last build saved to everything published
+     * @param pending widget updates still pending
+     * @param gcBefore
+     */
+    private void report(long elapsed, long drain, int pending, long[] gcBefore) {
+        int count = saved.get();
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        long[] gc = getGcStats();
+        System.out.println();
+        System.out.printf("builds saved        %d, %d failed%n", count, failed.get());
+        System.out.printf("throughput          %.1f builds/s%n", count / (elapsed / 1e9));
+        System.out.printf("saveStatistics      p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 1));
+        System.out.printf("queue depth         max %d builds waiting to be saved%n", maxQueueDepth);
+        System.out.printf("pending updates     max %d, %d left%n", maxPendingUpdates, pending);
+        System.out.printf("publish lag         %.1f ms after the last build%n", drain / 1e6);
+        System.out.printf("posts               %d, %d KB%n", server.getPosts(), server.getPostedBytes() / 1024);
+        System.out.printf("gc                  %d collections, %d ms%n", gc[0] - gcBefore[0], gc[1] - gcBefore[1]);
+    }
+
+    /**
+     * Samples the metrics every second
+     */
+    private class Sampler implements Runnable {
+        /* The thread saving the builds, queuing the builds waiting to be saved */
+        private final ThreadPoolExecutor saver;
+        private final DashBeatsKnowledgeBase knowledgeBase;
+        private final long start;
+        private int lastSaved;
+        private long lastPosts;
+        private long lastBytes;
+        private long[] lastGc = getGcStats();
+
+        Sampler(ThreadPoolExecutor saver, DashBeatsKnowledgeBase knowledgeBase, long start) {
+            this.saver = saver;
+            this.knowledgeBase = knowledgeBase;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            int queue = saver.getQueue().size();
+            int pending = knowledgeBase.getPendingUpdates();
+            maxQueueDepth = Math.max(maxQueueDepth, queue);
+            maxPendingUpdates = Math.max(maxPendingUpdates, pending);
+            int nowSaved = saved.get();
+            long posts = server.getPosts();
+            long bytes = server.getPostedBytes();
+            long[] gc = getGcStats();
+            System.out.printf("%6d %7d %5d %7d %7d %11d %8d %5d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), nowSaved - lastSaved, queue, pending,
+                    posts - lastPosts, (bytes - lastBytes) / 1024, gc[0] - lastGc[0], gc[1] - lastGc[1]);
+            lastSaved = nowSaved;
+            lastPosts = posts;
+            lastBytes = bytes;
+            lastGc = gc;
+        }
+    }
+
+    /**
+     * Generate the arrival times of builds: a Poisson process at a mean rate, where a build may
+     * come with a burst of builds arriving at the same time
+     *
+     * @param count
+     * @param rate mean builds per second
+     * @param random
+     * @return arrival times in milliseconds from the start
+     */
+    private long[] generateArrivals(int count, double rate, Random random) {
+        double burstProbability = getDouble("burst-probability", 0.01);
+        int burstSize = getInt("burst-size", 50);
+        // bursts bring builds on top of the others, the mean delay is stretched to keep the rate
+        double builds = 1 + burstProbability * burstSize;
+        double meanDelay = 1000.0 * builds / rate;
+        long[] times = new long[count];
+        double time = 0;
+        int i = 0;
+        while (i < count) {
+            time += -Math.log(1 - random.nextDouble()) * meanDelay;
+            int arriving = random.nextDouble() < burstProbability ? 1 + burstSize : 1;
+            for (int j = 0; j < arriving && i < count; j++) {
+                times[i++] = (long) time;
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Get the arrival times of recorded builds, from their starting times
+     *
+     * @param builds ordered by starting time
+     * @param speed factor the delays are divided by
+     * @return arrival times in milliseconds from the start
+     */
+    private static long[] recordedArrivals(List<Statistics> builds, double speed) {
+        long[] times = new long[builds.size()];
+        if (builds.isEmpty()) {
+            return times;
+        }
+        long first = getTime(builds.get(0));
+        for (int i = 0; i < times.length; i++) {
+            times[i] = (long) ((getTime(builds.get(i)) - first) / speed);
+        }
+        return times;
+    }
+
+    /**
+     * Read the builds of a store file, ordered by starting time
+     *
+     * @param file
+     * @return builds
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Statistics> readStore(File file) throws Exception {
+        Map<String, Statistics> stored = (Map<String, Statistics>) new XmlFile(new XStream2(), file).read();
+        List<Statistics> list = new ArrayList<Statistics>(stored.values());
+        Collections.sort(list, new Comparator<Statistics>() {
+            @Override
+            public int compare(Statistics a, Statistics b) {
+                long timeA = getTime(a);
+                long timeB = getTime(b);
+                return timeA < timeB ? -1 : (timeA == timeB ? 0 : 1);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Create the failure causes recorded builds refer to, the knowledge base needing them
+     *
+     * @param builds
+     * @return causes
+     */
+    private static List<FailureCause> createCauses(List<Statistics> builds) {
+        Map<String, FailureCause> causes = new LinkedHashMap<String, FailureCause>();
+        for (Statistics stat : builds) {
+            if (stat.getFailureCauseStatisticsList() == null) {
+                continue;
+            }
+            for (FailureCauseStatistics found : stat.getFailureCauseStatisticsList()) {
+                if (!causes.containsKey(found.getId())) {
+                    FailureCause cause = new FailureCause("Recorded cause " + found.getId(), "");
+                    cause.setId(found.getId());
+                    causes.put(found.getId(), cause);
+                }
+            }
+        }
+        return new ArrayList<FailureCause>(causes.values());
+    }
+
+    private static long getTime(Statistics stat) {
+        return stat.getStartingTime() == null ? 0 : stat.getStartingTime().getTime();
+    }
+
+    /**
+     * Get the number and total time of the garbage collections so far
+     *
+     * @return count and time in milliseconds
+     */
+    private static long[] getGcStats() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[] {count, time};
+    }
+
+    /**
+     * Get a percentile of sorted latencies
+     *
+     * @param sorted nanoseconds
+     * @param ratio
+     * @return milliseconds
+     */
+    private static double percentile(long[] sorted, double ratio) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(ratio * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private long getLong(String name, long defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    private double getDouble(String name, double defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * Parse options given as <code>--name=value</code>
+     *
+     * @param args
+     * @return value by name
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Option not as --name=value : " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Start a Jenkins and a stub of DashBeats, and replay the builds
+     *
+     * @param args options
+     * @throws Throwable
+     */
+    public static void main(String[] args) throws Throwable {
+        Map<String, String> options = parseOptions(args);
+        final DashBeatsStubServer server = new DashBeatsStubServer().start();
+        server.setRecording(false);
+        server.setLatency(options.containsKey("latency") ? Long.parseLong(options.get("latency")) : 0);
+        final BuildStreamReplay replay = new BuildStreamReplay(options, server);
+        JenkinsRule jenkins = new JenkinsRule();
+        // the replay may last longer than a test
+        jenkins.timeout = 0;
+        try {
+            jenkins.apply(new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    replay.run();
+                }
+            }, Description.createTestDescription(BuildStreamReplay.class, "replay")).evaluate();
+        } finally {
+            server.stop();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import net.sf.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker wrapping a {@link DashingClient}.
+ * <p/>
+ * After a number of consecutive failed posts the circuit opens: posts are then answered
+ * immediately with {@link #SERVICE_UNAVAILABLE} without touching the network, and the
+ * server is probed in the background with {@link DashingClient#ping(String)}. The probe
+ * interval doubles after every failed probe, up to a maximum. When a probe succeeds the
+ * circuit closes again and the listeners are notified so they can re-send what was skipped.
+ */
+public class CircuitBreakerClient implements DashingClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreakerClient.class.getName());
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_INITIAL_BACKOFF = 5000L;
+    public static final long DEFAULT_MAX_BACKOFF = 300000L;
+    public static final int SERVICE_UNAVAILABLE = 503;
+
+    private static final int BAD_REQUEST = 400;
+
+    /**
+     * State of the circuit
+     */
+    public enum State {
+        CLOSED,
+        OPEN
+    }
+
+    /**
+     * Listener notified when the circuit opens or closes.
+     */
+    public interface StateListener {
+        /**
+         * Called once the circuit has opened, DashBeats is considered unreachable
+         */
+        public void onOpen();
+
+        /**
+         * Called once the circuit has closed, DashBeats is reachable again
+         */
+        public void onClose();
+    }
+
+    /* The client doing the real work */
+    private final DashingClient client;
+    /* The url pinged to probe the DashBeats server while the circuit is open */
+    private final String pingUrl;
+    /* Number of consecutive failures opening the circuit */
+    private final int failureThreshold;
+    /* First probe delay in milliseconds */
+    private final long initialBackoff;
+    /* Upper bound of the probe delay in milliseconds */
+    private final long maxBackoff;
+    /* Scheduler running the probes, never the build threads */
+    private final ScheduledExecutorService scheduler;
+    /* Listeners of state changes */
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<StateListener>();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long backoff;
+
+    /**
+     * Constructor using the default threshold and backoff.
+     *
+     * @param client
+     * @param pingUrl
+     * @param scheduler
+     */
+    public CircuitBreakerClient(DashingClient client, String pingUrl, ScheduledExecutorService scheduler) {
+        this(client, pingUrl, DEFAULT_FAILURE_THRESHOLD, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF, scheduler);
+    }
+
+    /**
+     * Constructor of the circuit breaker.
+     *
+     * @param client
+     * @param pingUrl
+     * @param failureThreshold
+     * @param initialBackoff
+     * @param maxBackoff
+     * @param scheduler
+     */
+    public CircuitBreakerClient(DashingClient client, String pingUrl, int failureThreshold,
+                                long initialBackoff, long maxBackoff, ScheduledExecutorService scheduler) {
+        this.client = client;
+        this.pingUrl = pingUrl;
+        this.failureThreshold = failureThreshold;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.scheduler = scheduler;
+        this.backoff = initialBackoff;
+    }
+
+    /**
+     * Register a listener of state changes
+     *
+     * @param listener
+     */
+    public void addStateListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Get the current state of the circuit
+     *
+     * @return state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Check if the circuit is open, i.e. posts are short-circuited
+     *
+     * @return true if open
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    /**
+     * Post to the wrapped client unless the circuit is open.
+     *
+     * @param url
+     * @param jsonObject
+     * @return response code, or {@link #SERVICE_UNAVAILABLE} while the circuit is open
+     */
+    @Override
+    public int post(String url, JSONObject jsonObject) {
+        if (isOpen()) {
+            return SERVICE_UNAVAILABLE;
+        }
+        int code = client.post(url, jsonObject);
+        record(code);
+        return code;
+    }
+
+    /**
+     * Post to the wrapped client unless the circuit is open.
+     *
+     * @param url
+     * @param payload
+     * @param length
+     * @return response code, or {@link #SERVICE_UNAVAILABLE} while the circuit is open
+     */
+    @Override
+    public int post(String url, byte[] payload, int length) {
+        if (isOpen()) {
+            return SERVICE_UNAVAILABLE;
+        }
+        int code = client.post(url, payload, length);
+        record(code);
+        return code;
+    }
+
+    /**
+     * Ping is always passed through, it is what probes the server.
+     *
+     * @param url
+     * @return response code
+     */
+    @Override
+    public int ping(String url) {
+        return client.ping(url);
+    }
+
+    /**
+     * Probe the server, closing the circuit on success or backing off on failure.
+     */
+    void probe() {
+        int code = client.ping(pingUrl);
+        if (isFailure(code)) {
+            long delay;
+            synchronized (this) {
+                backoff = Math.min(backoff * 2, maxBackoff);
+                delay = backoff;
+            }
+            LOGGER.debug("DashBeats server still unreachable (code {}), next probe in {} ms", code, delay);
+            scheduleProbe(delay);
+        } else {
+            synchronized (this) {
+                state = State.CLOSED;
+                consecutiveFailures = 0;
+                backoff = initialBackoff;
+            }
+            LOGGER.info("DashBeats server is reachable again, closing the circuit");
+            for (StateListener listener : listeners) {
+                listener.onClose();
+            }
+        }
+    }
+
+    /**
+     * Record the outcome of a post, opening the circuit when the threshold is reached.
+     *
+     * @param code
+     */
+    private void record(int code) {
+        boolean tripped = false;
+        synchronized (this) {
+            if (isFailure(code)) {
+                consecutiveFailures++;
+                if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+                    state = State.OPEN;
+                    backoff = initialBackoff;
+                    tripped = true;
+                }
+            } else {
+                consecutiveFailures = 0;
+            }
+        }
+        if (tripped) {
+            LOGGER.warn("DashBeats server unreachable after {} failures, opening the circuit", failureThreshold);
+            for (StateListener listener : listeners) {
+                listener.onOpen();
+            }
+            scheduleProbe(initialBackoff);
+        }
+    }
+
+    /**
+     * Schedule the next probe
+     *
+     * @param delay in milliseconds
+     */
+    private void scheduleProbe(long delay) {
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    probe();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Probe not scheduled, the scheduler is shut down");
+        }
+    }
+
+    /**
+     * A failure is either a connection problem, reported as bad request by the client, or a server error.
+     *
+     * @param code
+     * @return true if the code denotes an unreachable or failing server
+     */
+    static boolean isFailure(int code) {
+        return code == BAD_REQUEST || code >= 500;
+    }
+}
@@ -24,6 +24,7 @@
 package com.ericsson.jenkins.plugins.dashbeats.client;
 
 import net.sf.json.JSONObject;
+import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,11 +32,24 @@ import org.slf4j.LoggerFactory;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Implementation of a client to push data to DashBeats server
  * <p/>
+ * Payloads may be compressed with gzip, as summaries are repetitive text. Servers are not
+ * required to accept compressed requests, so compression is turned off as soon as a server
+ * rejects a compressed payload, the payload being sent again uncompressed. A server may also
+ * tell which encodings it accepts with an Accept-Encoding header in the response to
+ * {@link #ping(String)}, which then turns compression on or off.
+ * <p/>
  * Created by ekongto on 2014-09-08.
  */
 public class DashBeatsClient implements DashingClient {
@@ -43,14 +57,37 @@ public class DashBeatsClient implements DashingClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(DashBeatsClient.class.getName());
 
     private static final int BAD_REQUEST = 400;
+    /* Timeouts in milliseconds, so that an unreachable server does not hold a build for minutes */
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final int READ_TIMEOUT = 10000;
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+    private static final String GZIP = "gzip";
 
     private Client client;
+    /* Whether compression is wanted */
+    private final boolean compression;
+    /* Whether payloads are compressed, turned off when the server does not accept it */
+    private volatile boolean compressing;
 
     /**
      * Constructor of the client
      */
     public DashBeatsClient() {
-        client = ClientBuilder.newClient().register(JacksonFeature.class);
+        this(false);
+    }
+
+    /**
+     * Constructor of a client compressing the payloads if the server accepts it
+     *
+     * @param compression
+     */
+    public DashBeatsClient(boolean compression) {
+        this.compression = compression;
+        this.compressing = compression;
+        client = ClientBuilder.newClient()
+                .property(ClientProperties.CONNECT_TIMEOUT, CONNECT_TIMEOUT)
+                .property(ClientProperties.READ_TIMEOUT, READ_TIMEOUT)
+                .register(JacksonFeature.class);
     }
 
     /**
@@ -86,6 +123,49 @@ public class DashBeatsClient implements DashingClient {
         return BAD_REQUEST;
     }
 
+    /**
+     * Post method to publish a payload already encoded in json to Dashing API.
+     * The payload is streamed as is, without any json mapping, compressed if enabled.
+     *
+     * @param url
+     * @param payload
+     * @param length
+     * @return response code
+     */
+    @Override
+    public int post(String url, byte[] payload, int length) {
+
+        try {
+            if (compressing) {
+                int status = post(url, gzip(payload, length), GZIP);
+                if (status != UNSUPPORTED_MEDIA_TYPE && status != BAD_REQUEST) {
+                    return status;
+                }
+                // the server may not understand the compressed payload, try without
+                int plainStatus = post(url, new ByteArrayInputStream(payload, 0, length), null);
+                if (plainStatus < BAD_REQUEST) {
+                    LOGGER.info("DashBeats server rejected a compressed payload, compression turned off for {}", url);
+                    compressing = false;
+                }
+                return plainStatus;
+            }
+            return post(url, new ByteArrayInputStream(payload, 0, length), null);
+        } catch (Exception e) {
+            LOGGER.info("Exception caught while doing a post to DashBeast server:" + e);
+        }
+
+        return BAD_REQUEST;
+    }
+
+    /**
+     * Check whether payloads are currently compressed
+     *
+     * @return true if compressing
+     */
+    public boolean isCompressing() {
+        return compressing;
+    }
+
     /**
      * Ping the server by doing a simple http get
      *
@@ -100,12 +180,94 @@ public class DashBeatsClient implements DashingClient {
                     .target(url)
                     .request()
                     .get();
-
-            return response.getStatus();
+            int status = response.getStatus();
+            if (compression) {
+                probeCompression(response.getHeaderString("Accept-Encoding"));
+            }
+            response.close();
+            return status;
         } catch (Exception e) {
             LOGGER.info("Exception caught while doing a ping to DashBeast server:" + e);
         }
 
         return BAD_REQUEST;
     }
+
+    /**
+     * Turn compression on or off from the encodings a server accepts in requests, as told
+     * by an Accept-Encoding response header. Nothing is known without header.
+     *
+     * @param acceptEncoding the header value, may be null
+     */
+    private void probeCompression(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return;
+        }
+        boolean accepted = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            if (GZIP.equalsIgnoreCase(params[0].trim())) {
+                accepted = getQuality(params) > 0;
+            }
+        }
+        if (accepted != compressing) {
+            LOGGER.info("DashBeats server {} compressed payloads", accepted ? "accepts" : "does not accept");
+            compressing = accepted;
+        }
+    }
+
+    /**
+     * Get the quality of a coding from its parameters, e.g. <code>q=0</code> meaning not acceptable
+     *
+     * @param params the coding followed by its parameters
+     * @return quality, 1 if not given
+     */
+    private static float getQuality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Send the body of a post
+     *
+     * @param url
+     * @param body
+     * @param contentEncoding encoding of the body, null if none
+     * @return response code
+     */
+    private int post(String url, Object body, String contentEncoding) {
+        Invocation.Builder request = client.target(url).request();
+        if (contentEncoding != null) {
+            request.header(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        }
+        Response response = request.post(Entity.entity(body, MediaType.APPLICATION_JSON_TYPE));
+        int status = response.getStatus();
+        response.close();
+        return status;
+    }
+
+    /**
+     * Compress a payload with gzip
+     *
+     * @param payload
+     * @param length
+     * @return the compressed payload
+     * @throws IOException
+     */
+    private static byte[] gzip(byte[] payload, int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 4 + 64);
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(payload, 0, length);
+        out.close();
+        return bytes.toByteArray();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import com.thoughtworks.xstream.XStream;
+import hudson.XmlFile;
+import hudson.util.XStream2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Durable outbox of widget payloads which could not be delivered to the DashBeats server.
+ * <p/>
+ * Only the latest payload per widget url is kept, a newer payload replacing an older one,
+ * so the outbox is bounded by the number of widgets. The outbox is persisted to a file,
+ * typically under JENKINS_HOME, so that undelivered updates survive a restart, and
+ * {@link #drain()} delivers them once the server is reachable.
+ */
+public class DashBeatsOutbox {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DashBeatsOutbox.class.getName());
+
+    private static final XStream XSTREAM = new XStream2();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /* The client used to deliver pending payloads */
+    private final DashingClient client;
+    /* The file the outbox is persisted to */
+    private final XmlFile file;
+    /* Pending payloads as json text, per widget url */
+    private final Map<String, String> pending = new LinkedHashMap<String, String>();
+    /* Set when pending payloads changed since last written */
+    private boolean dirty = false;
+
+    /**
+     * Constructor of the outbox
+     *
+     * @param client
+     * @param file
+     */
+    public DashBeatsOutbox(DashingClient client, File file) {
+        this.client = client;
+        this.file = new XmlFile(XSTREAM, file);
+    }
+
+    /**
+     * Load pending payloads from file, if existing
+     */
+    public synchronized void load() {
+        if (file.exists()) {
+            try {
+                pending.putAll((Map<String, String>) file.read());
+                LOGGER.info("Read {} pending DashBeats updates from file : {}", pending.size(), file);
+            } catch (IOException e) {
+                LOGGER.error("Failed to read DashBeats outbox from file : {}", e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of pending payloads
+     *
+     * @return size
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Keep the payload as the latest one to deliver to the url
+     *
+     * @param url
+     * @param payload json encoded in UTF-8
+     * @param length number of bytes of the payload
+     */
+    public synchronized void put(String url, byte[] payload, int length) {
+        pending.put(url, new String(payload, 0, length, UTF8));
+        dirty = true;
+    }
+
+    /**
+     * Record the outcome of a post: a delivered payload clears the url, a payload which
+     * could not reach the server is kept. A payload rejected by the server, e.g. because of
+     * a wrong token, would be rejected again and is not kept.
+     *
+     * @param url
+     * @param payload
+     * @param length
+     * @param code response code of the post
+     */
+    public synchronized void record(String url, byte[] payload, int length, int code) {
+        if (CircuitBreakerClient.isFailure(code)) {
+            put(url, payload, length);
+        } else if (pending.remove(url) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Write pending payloads to file, if changed
+     */
+    public synchronized void flush() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            file.write(new LinkedHashMap<String, String>(pending));
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.error("Failed to write DashBeats outbox to file : {}", e);
+        }
+    }
+
+    /**
+     * Deliver pending payloads, stopping at the first one which cannot reach the server.
+     * The posts are done outside the lock so that the outbox can still be read meanwhile.
+     */
+    public void drain() {
+        List<Map.Entry<String, String>> entries;
+        synchronized (this) {
+            entries = new ArrayList<Map.Entry<String, String>>();
+            for (Map.Entry<String, String> entry : pending.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<String, String>(entry));
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("Draining {} pending DashBeats updates", entries.size());
+        for (Map.Entry<String, String> entry : entries) {
+            byte[] payload = entry.getValue().getBytes(UTF8);
+            int code = client.post(entry.getKey(), payload, payload.length);
+            if (CircuitBreakerClient.isFailure(code)) {
+                break;
+            }
+            if (code >= 300) {
+                LOGGER.warn("DashBeats rejected pending update for {} with code {}, dropping it", entry.getKey(), code);
+            }
+            synchronized (this) {
+                // a newer payload may have been put meanwhile, it is still to be delivered
+                if (entry.getValue().equals(pending.get(entry.getKey()))) {
+                    pending.remove(entry.getKey());
+                    dirty = true;
+                }
+            }
+        }
+        flush();
+    }
+}
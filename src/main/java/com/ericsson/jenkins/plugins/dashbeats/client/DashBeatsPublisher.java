@@ -24,17 +24,26 @@
 package com.ericsson.jenkins.plugins.dashbeats.client;
 
 import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonWriter;
+import com.ericsson.jenkins.plugins.dashbeats.json.RenderedSummary;
+import com.ericsson.jenkins.plugins.dashbeats.metrics.DashBeatsMetrics;
 import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
-import net.sf.json.JSONObject;
+import com.ericsson.jenkins.plugins.dashbeats.widget.DashBeatsWidget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import jenkins.model.Jenkins;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This Class is responsible to publish data to the DashBeats server. It publish
  * Jenkins BFA Stats to every widget within the dashboard.
- * There are 5 widgets defined:
+ * The built-in widgets are:
  * <ul>
  * <li>Welcome</li>
  * <li>Common Fault Causes</li>
@@ -42,9 +51,18 @@ import jenkins.model.Jenkins;
  * <li>Latest Failed Builds</li>
  * <li>Top Failed Jobs</li>
  * </ul>
+ * Other plugins may contribute widgets, see {@link DashBeatsWidget}.
+ * When used with a {@link CircuitBreakerClient}, publishing is skipped while the circuit
+ * is open and the latest summary is published again once the server is back. When an
+ * outbox is set, payloads which could not be delivered are kept in it instead.
+ * A publisher may be restricted to a subset of the widgets. Widgets are published by priority,
+ * and a widget whose content is the one already delivered is not posted again.
+ * <p/>
  * Created by ekongto on 2014-09-08.
  */
-public class DashBeatsPublisher implements StatsPublisher {
+public class DashBeatsPublisher implements StatsPublisher, CircuitBreakerClient.StateListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DashBeatsPublisher.class.getName());
 
     public static final String DEFAULT_URL = "http://localhost:3030";
     public static final String DEFAULT_AUTH_TOKEN = "YOUR_AUTH_TOKEN";
@@ -54,6 +72,7 @@ public class DashBeatsPublisher implements StatsPublisher {
     public static final String LATEST_FAILED_BUILDS_PATH = "/widgets/latest_failed_builds";
     public static final String TOP_FAILED_JOBS_PATH = "/widgets/top_failed_jobs";
     public static final String CONFIGURE_FAILURE_CAUSES_URL = "/widgets/configure_common_causes";
+    public static final int NOT_MODIFIED = 304;
 
     /* The url of DashBeats */
     private String url;
@@ -62,19 +81,22 @@ public class DashBeatsPublisher implements StatsPublisher {
 
     /* The url of the welcome widget on DashBeats */
     private String welcomeUrl;
-    /* The url of the common fault causes widget on DashBeats */
-    private String commonFaultCausesUrl;
-    /* The url of the latest builds widget on DashBeats */
-    private String latestBuildsUrl;
-    /* The url of the latest failed builds widget on DashBeats */
-    private String latestFailedBuildsUrl;
-    /* The url of the top failed jobs widget on DashBeats */
-    private String topFailedJobsUrl;
-    /* The url of the configure link widget on DashBeats */
-    private String configureFailureCausesUrl;
 
     /*The client used to post data to DashBeats */
     private DashingClient client;
+    /* The widgets published to, by priority, with their url on DashBeats */
+    private Map<DashBeatsWidget, String> widgetUrls;
+    /* The content last delivered to every widget */
+    private final Map<DashBeatsWidget, byte[]> delivered = new HashMap<DashBeatsWidget, byte[]>();
+
+    /* The latest summary, kept to be published again when DashBeats recovers */
+    private volatile RenderedSummary latestSummary;
+    /* Set while DashBeats is unreachable, publishing is then skipped */
+    private volatile boolean suspended = false;
+    /* Optional outbox of undelivered payloads */
+    private DashBeatsOutbox outbox;
+    /* Buffer the payloads are written to before being posted, reused across posts */
+    private final JsonWriter payload = new JsonWriter();
 
     /**
      * Constructor, instantiate a client and widget's urls.
@@ -82,17 +104,55 @@ public class DashBeatsPublisher implements StatsPublisher {
      * @param url
      * @param jsonFactory
      */
-    public DashBeatsPublisher(String url, DashBeatsClient client, JsonFactory jsonFactory) {
+    public DashBeatsPublisher(String url, DashingClient client, JsonFactory jsonFactory) {
+        this(url, client, jsonFactory, jsonFactory.getWidgets());
+    }
+
+    /**
+     * Constructor of a publisher restricted to some widgets.
+     *
+     * @param url
+     * @param client
+     * @param jsonFactory
+     * @param widgets
+     */
+    public DashBeatsPublisher(String url, DashingClient client, JsonFactory jsonFactory, Set<WidgetType> widgets) {
+        this(url, client, jsonFactory, getWidgets(widgets));
+    }
+
+    /**
+     * Constructor of a publisher restricted to some widgets.
+     *
+     * @param url
+     * @param client
+     * @param jsonFactory
+     * @param widgets
+     */
+    public DashBeatsPublisher(String url, DashingClient client, JsonFactory jsonFactory, List<DashBeatsWidget> widgets) {
         this.url = url;
         this.jsonFactory = jsonFactory;
         this.client = client;
 
         this.welcomeUrl = url + WELCOME_PATH;
-        this.commonFaultCausesUrl = url + COMMON_FAULT_CAUSES_PATH;
-        this.latestBuildsUrl = url + LATEST_BUILDS_PATH;
-        this.latestFailedBuildsUrl = url + LATEST_FAILED_BUILDS_PATH;
-        this.topFailedJobsUrl = url + TOP_FAILED_JOBS_PATH;
-        this.configureFailureCausesUrl = url + CONFIGURE_FAILURE_CAUSES_URL;
+        Map<DashBeatsWidget, String> urls = new LinkedHashMap<DashBeatsWidget, String>();
+        // failures first
+        for (DashBeatsWidget.Priority priority : DashBeatsWidget.Priority.values()) {
+            for (DashBeatsWidget widget : widgets) {
+                if (widget.getPriority() == priority) {
+                    urls.put(widget, url + widget.getPath());
+                }
+            }
+        }
+        this.widgetUrls = Collections.unmodifiableMap(urls);
+    }
+
+    /**
+     * Set the outbox keeping payloads which could not be delivered
+     *
+     * @param outbox
+     */
+    public void setOutbox(DashBeatsOutbox outbox) {
+        this.outbox = outbox;
     }
 
     /**
@@ -109,9 +169,10 @@ public class DashBeatsPublisher implements StatsPublisher {
      *
      * @return response code
      */
-    public int publishWelcome() {
-        JSONObject json = jsonFactory.createWelcome();
-        return publishWelcome(json);
+    public synchronized int publishWelcome() {
+        int code = post(welcomeUrl, jsonFactory.renderWelcome());
+        flushOutbox();
+        return code;
     }
 
     /**
@@ -120,123 +181,207 @@ public class DashBeatsPublisher implements StatsPublisher {
      * @param summary
      */
     public void publish(StatsSummary summary) {
-        publish(WidgetType.WELCOME, summary);
-        publish(WidgetType.COMMON_FAULT_CAUSES, summary);
-        publish(WidgetType.LATEST_FAILED_BUILDS, summary);
-        publish(WidgetType.LATEST_BUILD, summary);
-        publish(WidgetType.TOP_FAILED_JOBS, summary);
-        publish(WidgetType.CONFIGURE_FAILURE_CAUSES, summary);
+        publish(jsonFactory.render(summary));
     }
 
     /**
-     * Publish stats to a specified widget on DashBeats server
+     * Publish already rendered stats to all widgets on DashBeats server. While the server
+     * is unreachable the summary is only remembered, and its payloads are kept in the outbox if any.
+     *
+     * @param rendered
+     */
+    public synchronized void publish(RenderedSummary rendered) {
+        latestSummary = rendered;
+        if (suspended && outbox == null) {
+            LOGGER.debug("DashBeats server unreachable, summary kept until it recovers");
+            return;
+        }
+        for (DashBeatsWidget widget : widgetUrls.keySet()) {
+            sendWidget(widget, rendered);
+        }
+        flushOutbox();
+    }
+
+    /**
+     * Publish stats to a specified widget on DashBeats server, even if unchanged
      *
      * @param type
      * @param summary
      * @return
      */
     public synchronized int publish(WidgetType type, StatsSummary summary) {
+        DashBeatsWidget widget = type.getWidget();
+        delivered.remove(widget);
+        int code = sendWidget(widget, jsonFactory.render(summary));
+        flushOutbox();
+        return code;
+    }
 
-        int code = 400;
-        List<JSONObject> data;
-
-        switch (type) {
-        case WELCOME:
-            JSONObject json = jsonFactory.createWelcome();
-            code = publishWelcome(json);
-            break;
-        case COMMON_FAULT_CAUSES:
-            data = jsonFactory.createCommonFaultCauses(summary);
-            code = publishCommonFaultCauses(data);
-            break;
-        case LATEST_FAILED_BUILDS:
-            data = jsonFactory.createLatestFailedBuilds(summary);
-            code = publishLatestFailedBuilds(data);
-            break;
-        case LATEST_BUILD:
-            data = jsonFactory.createLatestBuilds(summary);
-            code = publishLatestBuilds(data);
-            break;
-        case TOP_FAILED_JOBS:
-            data = jsonFactory.createTopFailedJobs(summary);
-            code = publishTopFailedJobs(data);
-            break;
-        case CONFIGURE_FAILURE_CAUSES:
-            code = publishConfigureFailureCauses();
-            break;
-        default:
-            break;
+    /**
+     * Publish already rendered stats to a widget on DashBeats server. While the server is
+     * unreachable the summary is only remembered, and the payload is kept in the outbox if any.
+     * The outbox is not persisted, see {@link #flushOutbox()}.
+     *
+     * @param widget
+     * @param rendered
+     * @return response code
+     */
+    public synchronized int publishWidget(DashBeatsWidget widget, RenderedSummary rendered) {
+        RenderedSummary latest = latestSummary;
+        if (latest == null || latest.getSummary().getVersion() <= rendered.getSummary().getVersion()) {
+            latestSummary = rendered;
+        }
+        if (suspended && outbox == null) {
+            return CircuitBreakerClient.SERVICE_UNAVAILABLE;
         }
+        return sendWidget(widget, rendered);
+    }
+
+    /**
+     * Get the widgets published to, by priority
+     *
+     * @return widgets
+     */
+    public List<DashBeatsWidget> getWidgets() {
+        return new ArrayList<DashBeatsWidget>(widgetUrls.keySet());
+    }
 
+    /**
+     * Send the rendered content of a widget, unless already delivered
+     *
+     * @param widget
+     * @param rendered
+     * @return response code, {@link #NOT_MODIFIED} if already delivered
+     */
+    private int sendWidget(DashBeatsWidget widget, RenderedSummary rendered) {
+        String widgetUrl = widgetUrls.get(widget);
+        byte[] content = rendered.getContent(widget);
+        if (widgetUrl == null || content == null) {
+            LOGGER.debug("DashBeats widget {} not published to {}", widget, url);
+            return 400;
+        }
+        // unchanged widgets share the same rendered content
+        if (content == delivered.get(widget)) {
+            return NOT_MODIFIED;
+        }
+        DashBeatsMetrics metrics = DashBeatsMetrics.getInstance();
+        String stage = DashBeatsMetrics.PUBLISH + "." + widget.getId();
+        long start = System.nanoTime();
+        int code = post(widgetUrl, content);
+        metrics.histogram(stage).recordSince(start);
+        if (code < 300) {
+            delivered.put(widget, content);
+        } else {
+            metrics.errors(stage).increment();
+            delivered.remove(widget);
+        }
         return code;
     }
 
     /**
-     * Send data to the welcome widget
+     * Deliver the payloads pending in the outbox, if any. Synchronized with publishing so that
+     * an older pending payload is never delivered after a newer one.
+     */
+    public synchronized void drainOutbox() {
+        if (outbox != null && !suspended) {
+            outbox.drain();
+        }
+    }
+
+    /**
+     * Get the latest summary given to publish
      *
-     * @param jsonObject
-     * @return response code
+     * @return latest summary, null if none
      */
-    private int publishWelcome(JSONObject jsonObject) {
-        return client.post(welcomeUrl, jsonObject);
+    public StatsSummary getLatestSummary() {
+        RenderedSummary rendered = latestSummary;
+        return rendered == null ? null : rendered.getSummary();
     }
 
     /**
-     * Send data to the common fault causes widget
+     * Get the number of payloads not delivered yet
      *
-     * @param data
-     * @return response code
+     * @return pending updates
      */
-    private int publishCommonFaultCauses(List<JSONObject> data) {
-        JSONObject jsonObject = jsonFactory.createJson();
-        jsonObject.put("items", data);
-        return client.post(commonFaultCausesUrl, jsonObject);
+    public int getPendingUpdates() {
+        return outbox == null ? 0 : outbox.size();
     }
 
     /**
-     * Send data to the latest builds widgets
+     * Stop publishing while the DashBeats server is unreachable
+     */
+    @Override
+    public void onOpen() {
+        suspended = true;
+    }
+
+    /**
+     * Publish the latest summary, which may have been skipped, once the server is back.
+     * Publishes from the calling thread, a {@link TargetPublisher} resumes from its worker instead.
+     */
+    @Override
+    public void onClose() {
+        RenderedSummary rendered = resume();
+        if (rendered != null) {
+            publish(rendered);
+        } else {
+            drainOutbox();
+        }
+    }
+
+    /**
+     * Resume publishing once the server is back, without publishing anything yet
      *
-     * @param data
-     * @return response code
+     * @return the latest summary, which may have been skipped, null if none
      */
-    private int publishLatestBuilds(List<JSONObject> data) {
-        JSONObject jsonObject = jsonFactory.createJson();
-        jsonObject.put("items", data);
-        return client.post(latestBuildsUrl, jsonObject);
+    public RenderedSummary resume() {
+        suspended = false;
+        return latestSummary;
     }
 
     /**
-     * Send data to the latest failed builds widget
+     * Post the content of a widget, completed with the authorization token, to a widget url
+     * unless the server is known to be unreachable. The outcome is recorded in the outbox if any.
      *
-     * @param data
+     * @param widgetUrl
+     * @param members the rendered content of the widget
      * @return response code
      */
-    private int publishLatestFailedBuilds(List<JSONObject> data) {
-        JSONObject jsonObject = jsonFactory.createJson();
-        jsonObject.put("items", data);
-        return client.post(latestFailedBuildsUrl, jsonObject);
+    private int post(String widgetUrl, byte[] members) {
+        jsonFactory.writePayload(payload, members);
+        if (suspended) {
+            if (outbox != null) {
+                outbox.put(widgetUrl, payload.array(), payload.size());
+            }
+            return CircuitBreakerClient.SERVICE_UNAVAILABLE;
+        }
+        int code = client.post(widgetUrl, payload.array(), payload.size());
+        if (outbox != null) {
+            outbox.record(widgetUrl, payload.array(), payload.size(), code);
+        }
+        return code;
     }
 
     /**
-     * Send data to the top failed jobs widget
-     * @param data
-     * @return response code
+     * Get the widgets of widget types
+     *
+     * @param types
+     * @return widgets
      */
-    private int publishTopFailedJobs(List<JSONObject> data) {
-        JSONObject jsonObject = jsonFactory.createJson();
-        jsonObject.put("items", data);
-        return client.post(topFailedJobsUrl, jsonObject);
+    private static List<DashBeatsWidget> getWidgets(Set<WidgetType> types) {
+        List<DashBeatsWidget> widgets = new ArrayList<DashBeatsWidget>();
+        for (WidgetType type : types) {
+            widgets.add(type.getWidget());
+        }
+        return widgets;
     }
 
     /**
-     * Send configure link to the top failed jobs widget
-     * @param data
-     * @return response code
+     * Persist the outbox if any
      */
-    private int publishConfigureFailureCauses() {
-        JSONObject jsonObject = jsonFactory.createJson();
-        jsonObject.put("url", Jenkins.getInstance().getRootUrl() + "/failure-cause-management/");
-        jsonObject.put("text", "Configure Failure Causes");
-        return client.post(configureFailureCausesUrl, jsonObject);
+    public synchronized void flushOutbox() {
+        if (outbox != null) {
+            outbox.flush();
+        }
     }
 }
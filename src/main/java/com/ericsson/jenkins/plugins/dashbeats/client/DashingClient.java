@@ -40,6 +40,16 @@ public interface DashingClient {
      */
     public int post(String url, JSONObject jsonObject);
 
+    /**
+     * Post method to publish a payload already encoded in json to API at url.
+     *
+     * @param url
+     * @param payload json encoded in UTF-8
+     * @param length number of bytes of the payload
+     * @return response code
+     */
+    public int post(String url, byte[] payload, int length);
+
     /**
      * Ping the target url
      *
@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.RenderedSummary;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Publishes a summary to several DashBeats servers. The summary is rendered once
+ * and then queued to every target, each one publishing from its own worker.
+ * Listeners are given the same rendered summary.
+ */
+public class FanOutPublisher {
+
+    /**
+     * Listener of the summaries published, called from the publishing thread so it must not block.
+     */
+    public interface Listener {
+        /**
+         * Called once a summary has been rendered and queued to the targets
+         *
+         * @param rendered
+         */
+        public void onPublish(RenderedSummary rendered);
+    }
+
+    /* Json Factory rendering the summaries */
+    private final JsonFactory jsonFactory;
+    /* The targets published to */
+    private final List<TargetPublisher> targets;
+    /* The latest summary rendered, served to the clients pulling it */
+    private volatile RenderedSummary latest;
+    /* Listeners of the summaries published */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * Constructor of the fan out publisher
+     *
+     * @param jsonFactory
+     * @param targets
+     */
+    public FanOutPublisher(JsonFactory jsonFactory, List<TargetPublisher> targets) {
+        this.jsonFactory = jsonFactory;
+        this.targets = new ArrayList<TargetPublisher>(targets);
+    }
+
+    /**
+     * Get the targets published to
+     *
+     * @return targets
+     */
+    public List<TargetPublisher> getTargets() {
+        return Collections.unmodifiableList(targets);
+    }
+
+    /**
+     * Render the summary and queue it to every target
+     *
+     * @param summary
+     */
+    public void publish(StatsSummary summary) {
+        publish(render(summary));
+    }
+
+    /**
+     * Render a summary, to be published with {@link #publish(RenderedSummary)}
+     *
+     * @param summary
+     * @return the rendered summary
+     */
+    public RenderedSummary render(StatsSummary summary) {
+        return jsonFactory.render(summary);
+    }
+
+    /**
+     * Queue a rendered summary to every target
+     *
+     * @param rendered
+     */
+    public void publish(RenderedSummary rendered) {
+        latest = rendered;
+        for (TargetPublisher target : targets) {
+            target.publish(rendered);
+        }
+        for (Listener listener : listeners) {
+            listener.onPublish(rendered);
+        }
+    }
+
+    /**
+     * Register a listener of the summaries published
+     *
+     * @param listener
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Get the latest summary rendered
+     *
+     * @return the rendered summary, null if none yet
+     */
+    public RenderedSummary getLatest() {
+        return latest;
+    }
+
+    /**
+     * Queue the welcome widget to every target
+     */
+    public void publishWelcome() {
+        for (TargetPublisher target : targets) {
+            target.publishWelcome();
+        }
+    }
+
+    /**
+     * Queue the delivery of pending payloads to every target
+     */
+    public void drainOutboxes() {
+        for (TargetPublisher target : targets) {
+            target.drainOutbox();
+        }
+    }
+
+    /**
+     * Get the number of payloads not delivered yet, over all targets
+     *
+     * @return pending updates
+     */
+    public int getPendingUpdates() {
+        int count = 0;
+        for (TargetPublisher target : targets) {
+            count += target.getPublisher().getPendingUpdates();
+        }
+        return count;
+    }
+
+    /**
+     * Stop the workers of all targets
+     */
+    public void shutdown() {
+        for (TargetPublisher target : targets) {
+            target.shutdown();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import com.ericsson.jenkins.plugins.dashbeats.json.RenderedSummary;
+import com.ericsson.jenkins.plugins.dashbeats.widget.DashBeatsWidget;
+import hudson.util.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes to one DashBeats server from its own worker thread, so that a slow or
+ * unreachable server never delays the builds nor the other servers.
+ * <p/>
+ * Every widget has a slot holding at most one summary: a summary given while another one
+ * is still waiting replaces it, only the latest state of the dashboard being of interest.
+ * The worker publishes one widget at a time, always the one of highest priority waiting,
+ * so the failure widgets of a new summary overtake the other widgets of an older one.
+ * Widgets of low priority are only published when nothing else waits, and at most once
+ * per {@link #DEFAULT_LOW_PRIORITY_INTERVAL}, their updates being coalesced meanwhile.
+ * <p/>
+ * As the listener of the circuit breaker of its server, it re-publishes the latest summary
+ * from its worker once the server is back, never from the thread probing the server.
+ */
+public class TargetPublisher implements CircuitBreakerClient.StateListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TargetPublisher.class.getName());
+
+    /* Minimum delay in milliseconds between two publications of the low priority widgets */
+    public static final long DEFAULT_LOW_PRIORITY_INTERVAL = 60000L;
+
+    /* The publisher doing the work */
+    private final DashBeatsPublisher publisher;
+    /* The worker of this target */
+    private final ScheduledExecutorService worker;
+    /* The summary waiting to be published, per widget */
+    private final Map<DashBeatsWidget, AtomicReference<RenderedSummary>> pending =
+            new LinkedHashMap<DashBeatsWidget, AtomicReference<RenderedSummary>>();
+    /* Set while a run of the worker publishing the pending widgets is queued */
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+    /* Set while a delayed run for the low priority widgets is scheduled */
+    private final AtomicBoolean lowPriorityScheduled = new AtomicBoolean(false);
+    private final long lowPriorityInterval;
+    /* When the low priority widgets were last published, only used by the worker */
+    private long lowPriorityPublished = 0;
+
+    /**
+     * Constructor, starting a worker for the publisher.
+     *
+     * @param publisher
+     */
+    public TargetPublisher(DashBeatsPublisher publisher) {
+        this(publisher, DEFAULT_LOW_PRIORITY_INTERVAL);
+    }
+
+    /**
+     * Constructor, starting a worker for the publisher.
+     *
+     * @param publisher
+     * @param lowPriorityInterval minimum delay in milliseconds between publications of low priority widgets
+     */
+    public TargetPublisher(DashBeatsPublisher publisher, long lowPriorityInterval) {
+        this.publisher = publisher;
+        this.lowPriorityInterval = lowPriorityInterval;
+        this.worker = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
+        for (DashBeatsWidget widget : publisher.getWidgets()) {
+            pending.put(widget, new AtomicReference<RenderedSummary>());
+        }
+    }
+
+    /**
+     * Get the publisher of this target
+     *
+     * @return publisher
+     */
+    public DashBeatsPublisher getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Queue a summary to be published, replacing the one waiting for each widget if any.
+     *
+     * @param rendered
+     */
+    public void publish(RenderedSummary rendered) {
+        for (AtomicReference<RenderedSummary> slot : pending.values()) {
+            slot.set(rendered);
+        }
+        if (queued.compareAndSet(false, true)) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    queued.set(false);
+                    publishPending();
+                }
+            });
+        }
+    }
+
+    /**
+     * Queue the publication of the welcome widget
+     */
+    public void publishWelcome() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                publisher.publishWelcome();
+            }
+        });
+    }
+
+    /**
+     * Queue the delivery of the pending payloads of the outbox
+     */
+    public void drainOutbox() {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                publisher.drainOutbox();
+            }
+        });
+    }
+
+    /**
+     * Stop publishing while the DashBeats server is unreachable
+     */
+    @Override
+    public void onOpen() {
+        publisher.onOpen();
+    }
+
+    /**
+     * Queue the latest summary, which may have been skipped, once the server is back
+     */
+    @Override
+    public void onClose() {
+        RenderedSummary rendered = publisher.resume();
+        if (rendered != null) {
+            publish(rendered);
+        } else {
+            drainOutbox();
+        }
+    }
+
+    /**
+     * Get the number of widget updates waiting to be published
+     *
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (AtomicReference<RenderedSummary> slot : pending.values()) {
+            if (slot.get() != null) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Stop the worker
+     */
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * Publish the pending widgets by priority, run by the worker
+     */
+    void publishPending() {
+        boolean published = false;
+        DashBeatsWidget widget;
+        while ((widget = nextPending()) != null) {
+            published |= publishWidget(widget);
+        }
+        long now = System.currentTimeMillis();
+        if (hasPending(DashBeatsWidget.Priority.LOW) && now - lowPriorityPublished >= lowPriorityInterval) {
+            // the low priority widgets pending are published as one batch, the interval counting from it
+            lowPriorityPublished = now;
+            for (DashBeatsWidget lowPriority : pending.keySet()) {
+                if (lowPriority.getPriority() == DashBeatsWidget.Priority.LOW) {
+                    published |= publishWidget(lowPriority);
+                }
+            }
+        }
+        if (published) {
+            publisher.flushOutbox();
+        }
+        long wait = lowPriorityPublished + lowPriorityInterval - System.currentTimeMillis();
+        if (hasPending(DashBeatsWidget.Priority.LOW) && wait > 0 && lowPriorityScheduled.compareAndSet(false, true)) {
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    lowPriorityScheduled.set(false);
+                    publishPending();
+                }
+            }, wait);
+        }
+    }
+
+    /**
+     * Publish the summary pending for a widget, if any
+     *
+     * @param widget
+     * @return true if published
+     */
+    private boolean publishWidget(DashBeatsWidget widget) {
+        RenderedSummary rendered = pending.get(widget).getAndSet(null);
+        if (rendered == null) {
+            return false;
+        }
+        publisher.publishWidget(widget, rendered);
+        return true;
+    }
+
+    /**
+     * Get the widget to publish next: the first pending widget of the highest priority,
+     * the low priority widgets being published as a batch by {@link #publishPending()}
+     *
+     * @return the widget, null if none
+     */
+    private DashBeatsWidget nextPending() {
+        for (DashBeatsWidget.Priority priority : DashBeatsWidget.Priority.values()) {
+            if (priority == DashBeatsWidget.Priority.LOW) {
+                continue;
+            }
+            for (Map.Entry<DashBeatsWidget, AtomicReference<RenderedSummary>> slot : pending.entrySet()) {
+                if (slot.getKey().getPriority() == priority && slot.getValue().get() != null) {
+                    return slot.getKey();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check whether a widget of a priority is pending
+     *
+     * @param priority
+     * @return true if pending
+     */
+    private boolean hasPending(DashBeatsWidget.Priority priority) {
+        for (Map.Entry<DashBeatsWidget, AtomicReference<RenderedSummary>> slot : pending.entrySet()) {
+            if (slot.getKey().getPriority() == priority && slot.getValue().get() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run a task on the worker, unless shut down
+     *
+     * @param task
+     */
+    private void execute(Runnable task) {
+        schedule(task, 0);
+    }
+
+    /**
+     * Run a task on the worker after a delay, unless shut down
+     *
+     * @param task
+     * @param delay in milliseconds
+     */
+    private void schedule(Runnable task, long delay) {
+        try {
+            worker.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("DashBeats publisher is shut down, task rejected");
+        }
+    }
+}
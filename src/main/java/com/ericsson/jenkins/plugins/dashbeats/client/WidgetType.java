@@ -23,7 +23,16 @@
  */
 package com.ericsson.jenkins.plugins.dashbeats.client;
 
+import com.ericsson.jenkins.plugins.dashbeats.widget.DashBeatsWidget;
+import com.ericsson.jenkins.plugins.dashbeats.widget.WidgetRegistry;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
 /**
+ * The built-in widgets of DashBeats, see {@link WidgetRegistry} for all the widgets.
+ *
  * Created by ekongto on 2014-09-10.
  */
 public enum WidgetType {
@@ -32,5 +41,35 @@ public enum WidgetType {
     LATEST_FAILED_BUILDS,
     LATEST_BUILD,
     TOP_FAILED_JOBS,
-    CONFIGURE_FAILURE_CAUSES
+    CONFIGURE_FAILURE_CAUSES;
+
+    /**
+     * Get the widget of this type
+     *
+     * @return widget
+     */
+    public DashBeatsWidget getWidget() {
+        return WidgetRegistry.getBuiltin(this);
+    }
+
+    /**
+     * Parse a list of widget type names separated by commas or spaces, case insensitive.
+     * An empty list means all widgets.
+     *
+     * @param names
+     * @return the widget types
+     * @throws IllegalArgumentException if a name is not a widget type
+     */
+    public static Set<WidgetType> parse(String names) {
+        if (names == null || names.trim().length() == 0) {
+            return EnumSet.allOf(WidgetType.class);
+        }
+        Set<WidgetType> types = EnumSet.noneOf(WidgetType.class);
+        for (String name : names.trim().split("[,\\s]+")) {
+            if (name.length() > 0) {
+                types.add(WidgetType.valueOf(name.toUpperCase(Locale.ENGLISH)));
+            }
+        }
+        return types;
+    }
 }
@@ -24,10 +24,22 @@
 package com.ericsson.jenkins.plugins.dashbeats.db;
 
 import com.ericsson.jenkins.plugins.dashbeats.Messages;
+import com.ericsson.jenkins.plugins.dashbeats.client.CircuitBreakerClient;
 import com.ericsson.jenkins.plugins.dashbeats.client.DashBeatsClient;
+import com.ericsson.jenkins.plugins.dashbeats.client.DashBeatsOutbox;
 import com.ericsson.jenkins.plugins.dashbeats.client.DashBeatsPublisher;
+import com.ericsson.jenkins.plugins.dashbeats.client.FanOutPublisher;
+import com.ericsson.jenkins.plugins.dashbeats.client.TargetPublisher;
 import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.RenderedSummary;
+import com.ericsson.jenkins.plugins.dashbeats.metrics.BuildTrace;
+import com.ericsson.jenkins.plugins.dashbeats.metrics.BuildTracer;
+import com.ericsson.jenkins.plugins.dashbeats.metrics.DashBeatsMetrics;
+import com.ericsson.jenkins.plugins.dashbeats.metrics.Gauge;
 import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import com.ericsson.jenkins.plugins.dashbeats.web.SummaryBroadcaster;
+import com.ericsson.jenkins.plugins.dashbeats.widget.DashBeatsWidget;
+import com.ericsson.jenkins.plugins.dashbeats.widget.WidgetRegistry;
 import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBase;
 import com.sonyericsson.jenkins.plugins.bfa.db.LocalFileKnowledgeBase;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
@@ -37,7 +49,9 @@ import com.thoughtworks.xstream.XStream;
 import hudson.Extension;
 import hudson.Util;
 import hudson.XmlFile;
+import hudson.init.InitMilestone;
 import hudson.model.Descriptor;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
 import hudson.util.XStream2;
 import jenkins.model.Jenkins;
@@ -49,6 +63,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,7 +76,7 @@ import java.util.regex.Pattern;
  * Implement of the Build-Failure-Analyser KnowledgeBase. Along with the DashBeatsDescriptor,
  * This class is the extension of the BFA plugin, which will add DashBeats item in the drop down
  * list in the configuration (in addition to Local Jenkins, MongoDB). Whenever the saveStatistics
- * is called, it will publish data to the DashBeats server.
+ * is called, it will publish data to the DashBeats server, and to the additional targets if any.
  *
  *
  * Created by ekongto on 2014-09-03.
@@ -73,31 +91,60 @@ public class DashBeatsKnowledgeBase extends LocalFileKnowledgeBase {
     private String url = DashBeatsPublisher.DEFAULT_URL;
     /* DashBeats authorization token require to publish stats */
     private String authToken = DashBeatsPublisher.DEFAULT_AUTH_TOKEN;
+    /* Additional DashBeats servers to publish to */
+    private List<DashBeatsTarget> targets = new ArrayList<DashBeatsTarget>();
+    /* Whether payloads are compressed when the DashBeats server accepts it */
+    private boolean compression = false;
     /* DashBeats Statistics Aggregrator */
     private transient DashBeatsStore store;
-    /* DashBeats publisher */
-    private transient DashBeatsPublisher publisher;
-    /* When starting up, the causes list is not yet reloaded
-     * Use this flag to reload statsStore at first build event only once */
-    private transient boolean isReloaded = false;
+    /* DashBeats publisher, to all targets */
+    private transient FanOutPublisher publisher;
+    /* Scheduler of background work, e.g. probing an unreachable DashBeats server */
+    private transient ScheduledExecutorService scheduler;
+    /* Broadcaster of the summary changes to the stream subscribers, kept across restarts of the publisher */
+    private transient SummaryBroadcaster broadcaster;
+    /* Loading of the stats store in the background, stats saved meanwhile being buffered */
+    private transient StoreWarmUp warmUp;
+    /* Thread loading the stats store, not to hold the scheduler probing and draining the targets */
+    private transient ExecutorService loader;
     /* BFA statistics store, marked as transient as it persists on demand, not with BFA config */
-    private transient Map<String, Statistics> statsStore;
+    private transient StatsIndex statsStore;
 
     private static final String DASHBEATS_STORE_FILENAME = "dashbeats-plugin-store.xml";
+    private static final String DASHBEATS_OUTBOX_FILENAME = "dashbeats-plugin-outbox.xml";
+    private static final String DASHBEATS_TARGET_OUTBOX_FILENAME = "dashbeats-plugin-outbox-%s.xml";
+    /* Delay in seconds between two attempts to deliver pending widget updates */
+    private static final long OUTBOX_DRAIN_DELAY = 60;
     private static final XStream XSTREAM = new XStream2();
 
     static {
         XSTREAM.alias("DashBeatsStore", DashBeatsStore.class);
     }
 
+    /**
+     * Constructor publishing to a single DashBeats server.
+     */
+    public DashBeatsKnowledgeBase(String url, String authToken) {
+        this(url, authToken, null);
+    }
+
+    /**
+     * Constructor publishing to several DashBeats servers.
+     */
+    public DashBeatsKnowledgeBase(String url, String authToken, List<DashBeatsTarget> targets) {
+        this(url, authToken, targets, false);
+    }
+
     /**
      * Default constructor.
      */
     @DataBoundConstructor
-    public DashBeatsKnowledgeBase(String url, String authToken) {
+    public DashBeatsKnowledgeBase(String url, String authToken, List<DashBeatsTarget> targets, boolean compression) {
         super();
         this.url = url;
         this.authToken = authToken;
+        this.compression = compression;
+        setTargets(targets);
     }
 
     /**
@@ -135,18 +182,219 @@ public class DashBeatsKnowledgeBase extends LocalFileKnowledgeBase {
         this.authToken = authToken;
     }
 
+    /**
+     * Check whether payloads are compressed when the DashBeats server accepts it
+     *
+     * @return true if compression is enabled
+     */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Enable or disable compression of payloads
+     *
+     * @param compression
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Get the additional DashBeats servers
+     *
+     * @return targets
+     */
+    public List<DashBeatsTarget> getTargets() {
+        if (targets == null) {
+            // configuration saved before targets were introduced
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(targets);
+    }
+
+    /**
+     * Set the additional DashBeats servers
+     *
+     * @param targets
+     */
+    public void setTargets(List<DashBeatsTarget> targets) {
+        this.targets = new ArrayList<DashBeatsTarget>();
+        if (targets != null) {
+            this.targets.addAll(targets);
+        }
+    }
+
     @Override
     public void start() {
         //when the BFA starts
+        stop();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory());
         this.store = new DashBeatsStore();
-        this.publisher = new DashBeatsPublisher(url, new DashBeatsClient(), new JsonFactory(authToken));
-        this.statsStore = new HashMap<String, Statistics>();
+        List<TargetPublisher> targetPublishers = new ArrayList<TargetPublisher>();
+        targetPublishers.add(createTargetPublisher(url, authToken, WidgetRegistry.all(),
+                compression, DASHBEATS_OUTBOX_FILENAME));
+        for (DashBeatsTarget target : getTargets()) {
+            String outboxFilename = String.format(DASHBEATS_TARGET_OUTBOX_FILENAME, Util.getDigestOf(target.getUrl()));
+            targetPublishers.add(createTargetPublisher(target.getUrl(), target.getAuthToken(),
+                    target.getSelectedWidgets(), target.isCompression(), outboxFilename));
+        }
+        this.publisher = new FanOutPublisher(new JsonFactory(authToken), targetPublishers);
+        this.publisher.addListener(getBroadcaster());
+        this.statsStore = new StatsIndex();
+        this.warmUp = new StoreWarmUp();
+        registerGauges();
         this.publisher.publishWelcome();
+        final StoreWarmUp loading = warmUp;
+        final StatsIndex index = statsStore;
+        final DashBeatsStore aggregates = store;
+        final FanOutPublisher target = publisher;
+        this.loader = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadStore(loading, index, aggregates, target);
+            }
+        });
+        // the thread ends once the store is loaded
+        loader.shutdown();
+        final FanOutPublisher drainer = publisher;
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                drainer.drainOutboxes();
+            }
+        }, 0, OUTBOX_DRAIN_DELAY, TimeUnit.SECONDS);
     }
 
     @Override
     public void stop() {
         //when the BFA stops
+        if (publisher != null) {
+            publisher.shutdown();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (loader != null) {
+            loader.shutdownNow();
+            loader = null;
+        }
+    }
+
+    /**
+     * Register the gauges of the queues and of the stats store
+     */
+    private void registerGauges() {
+        DashBeatsMetrics metrics = DashBeatsMetrics.getInstance();
+        metrics.gauge("publish.pending", new Gauge() {
+            @Override
+            public long getValue() {
+                return getPendingUpdates();
+            }
+        });
+        final StatsIndex index = statsStore;
+        metrics.gauge("stats.size", new Gauge() {
+            @Override
+            public long getValue() {
+                return index.size();
+            }
+        });
+        metrics.gauge("stats.query.cache.hits", new Gauge() {
+            @Override
+            public long getValue() {
+                return index.getCache().getHits();
+            }
+        });
+        metrics.gauge("stats.query.cache.misses", new Gauge() {
+            @Override
+            public long getValue() {
+                return index.getCache().getMisses();
+            }
+        });
+        metrics.gauge("stats.query.cache.invalidations", new Gauge() {
+            @Override
+            public long getValue() {
+                return index.getCache().getInvalidations();
+            }
+        });
+        metrics.gauge("stats.warmup.progress", new Gauge() {
+            @Override
+            public long getValue() {
+                StoreWarmUp loading = warmUp;
+                return loading == null ? 0 : loading.getProgress();
+            }
+        });
+        metrics.gauge("stats.warmup.buffered", new Gauge() {
+            @Override
+            public long getValue() {
+                StoreWarmUp loading = warmUp;
+                return loading == null ? 0 : loading.getBuffered();
+            }
+        });
+        metrics.gauge("stats.warmup.dropped", new Gauge() {
+            @Override
+            public long getValue() {
+                StoreWarmUp loading = warmUp;
+                return loading == null ? 0 : loading.getDropped();
+            }
+        });
+    }
+
+    /**
+     * Get the number of widget updates not delivered to DashBeats yet
+     *
+     * @return pending updates
+     */
+    public int getPendingUpdates() {
+        if (publisher == null) {
+            return 0;
+        }
+        return publisher.getPendingUpdates();
+    }
+
+    /**
+     * Get the latest summary rendered, as published to DashBeats
+     *
+     * @return the rendered summary, null if none yet
+     */
+    public RenderedSummary getSnapshot() {
+        if (publisher == null) {
+            return null;
+        }
+        return publisher.getLatest();
+    }
+
+    /**
+     * Get the counters of the builds of every job and fault cause the summaries are created from
+     *
+     * @return the store, null if not started
+     */
+    public DashBeatsStore getStore() {
+        return store;
+    }
+
+    /**
+     * Get the progress of the loading of the stats store. Until it is ready, the statistics
+     * returned by the queries are the ones loaded so far.
+     *
+     * @return warm-up, null if not started
+     */
+    public StoreWarmUp getWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Get the broadcaster of the summary changes
+     *
+     * @return broadcaster
+     */
+    public synchronized SummaryBroadcaster getBroadcaster() {
+        if (broadcaster == null) {
+            broadcaster = new SummaryBroadcaster();
+        }
+        return broadcaster;
     }
 
     @Override
@@ -194,28 +442,66 @@ public class DashBeatsKnowledgeBase extends LocalFileKnowledgeBase {
      */
     @Override
     public void saveStatistics(Statistics stat) throws Exception {
-        if (!isReloaded) {
-            isReloaded = true;
-            loadStore(getCauses());
+        DashBeatsMetrics metrics = DashBeatsMetrics.getInstance();
+        BuildTracer tracer = BuildTracer.getInstance();
+        BuildTrace trace = tracer.start(stat.getProjectName(), stat.getBuildNumber());
+        long start = System.nanoTime();
+        try {
+            // stats saved while the store is loading are applied once it is loaded
+            if (!warmUp.isReady()) {
+                // a build only completes once BFA has reloaded the causes
+                warmUp.causesLoaded();
+                if (warmUp.buffer(stat)) {
+                    return;
+                }
+            }
+            // update DashBeatsStore and publish only for new stats, job name and build number being unique
+            boolean added = statsStore.add(stat);
+            mark(trace, BuildTrace.Stage.DEDUP);
+            if (added) {
+                // persist the stats store into file
+                long stage = System.nanoTime();
+                saveStore();
+                metrics.histogram(DashBeatsMetrics.PERSIST).recordSince(stage);
+                mark(trace, BuildTrace.Stage.PERSIST);
+                // update the DashBeats store
+                stage = System.nanoTime();
+                store.update(stat, getCauses());
+                // create the stat summary to be published
+                StatsSummary statSummary = store.createSummary();
+                metrics.histogram(DashBeatsMetrics.AGGREGATE).recordSince(stage);
+                mark(trace, BuildTrace.Stage.AGGREGATE);
+                // render, recorded by the json factory, then publish
+                RenderedSummary rendered = publisher.render(statSummary);
+                mark(trace, BuildTrace.Stage.RENDER);
+                stage = System.nanoTime();
+                publisher.publish(rendered);
+                metrics.histogram(DashBeatsMetrics.PUBLISH).recordSince(stage);
+                mark(trace, BuildTrace.Stage.PUBLISH);
+            }
+        } catch (Exception e) {
+            metrics.errors(DashBeatsMetrics.INGEST).increment();
+            throw e;
+        } finally {
+            metrics.histogram(DashBeatsMetrics.INGEST).recordSince(start);
+            tracer.finish(trace);
         }
-        // use job name and build number as unique key
-        String key = stat.getProjectName() + "#" + stat.getBuildNumber();
-        // update DashBeatsStore and publish only for new stats
-        if (!statsStore.containsKey(key)) {
-            statsStore.put(key, stat);
-            // persist the stats store into file
-            saveStore();
-            // update the DashBeats store
-            store.update(stat, getCauses());
-            // create the stat summary to be published
-            StatsSummary statSummary = store.createSummary();
-            // publish
-            publisher.publish(statSummary);
+    }
+
+    /**
+     * Mark the end of a stage of a trace, if tracing
+     *
+     * @param trace the trace, null if tracing is disabled
+     * @param stage
+     */
+    private static void mark(BuildTrace trace, BuildTrace.Stage stage) {
+        if (trace != null) {
+            trace.mark(stage);
         }
     }
 
     /**
-     * This method returns all stats from the store. The filter is ignored.
+     * This method returns the stats from the store matching the filter, up to the limit.
      *
      * @param filter
      * @param limit
@@ -225,16 +511,98 @@ public class DashBeatsKnowledgeBase extends LocalFileKnowledgeBase {
     @Override
     public List<Statistics> getStatistics(GraphFilterBuilder filter, int limit)
             throws Exception {
-        List<Statistics> list = new ArrayList<Statistics>();
-        for (Statistics stat : statsStore.values()) {
-            if (list.size() >= limit) {
-                break;
-            }
-            if(StatsFilterUtil.isIncluded(stat, filter)) {
-                list.add(stat);
-            }
-        }
-        return list;
+        // compile the filter once for all the stats, looked up by the indexes of the store
+        return statsStore.query(StatsQuery.compile(filter), limit);
+    }
+
+    /**
+     * Get a page of the stats matching the filter, newest first
+     *
+     * @param filter
+     * @param token the token of the page, as given by the previous one, null for the first page
+     * @param size number of stats, up to {@link StatsIndex#MAX_PAGE_SIZE}
+     * @return page
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    public StatsPage getStatisticsPage(GraphFilterBuilder filter, String token, int size) {
+        return getStatisticsPage(StatsQuery.compile(filter), token, size);
+    }
+
+    /**
+     * Get a page of the stats matching a compiled query, newest first
+     *
+     * @param query
+     * @param token the token of the page, as given by the previous one, null for the first page
+     * @param size number of stats, up to {@link StatsIndex#MAX_PAGE_SIZE}
+     * @return page
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    public StatsPage getStatisticsPage(StatsQuery query, String token, int size) {
+        return statsStore.page(query, token, size);
+    }
+
+    /**
+     * Iterate the stats matching the filter, newest first, fetching them page by page,
+     * e.g. to export the whole history without holding it in memory
+     *
+     * @param filter
+     * @param pageSize number of stats fetched at once
+     * @return iterator
+     */
+    public Iterator<Statistics> iterateStatistics(GraphFilterBuilder filter, int pageSize) {
+        return new StatsCursor(statsStore, StatsQuery.compile(filter), pageSize);
+    }
+
+    /**
+     * Count the occurrences of every failure cause in the stats matching the filter,
+     * answered from the counters of the store instead of the stats themselves.
+     *
+     * @param filter
+     * @return number of occurrences by failure cause id
+     */
+    public Map<String, Integer> getFailureCauseCounts(GraphFilterBuilder filter) {
+        return statsStore.count(StatsQuery.compile(filter), StatsRollup.Dimension.CAUSE);
+    }
+
+    /**
+     * Count the stats matching the filter per project, e.g. the failed builds with a filter on the result
+     *
+     * @param filter
+     * @return number of builds by project name
+     */
+    public Map<String, Integer> getProjectCounts(GraphFilterBuilder filter) {
+        return statsStore.count(StatsQuery.compile(filter), StatsRollup.Dimension.PROJECT);
+    }
+
+    /**
+     * Count the stats matching the filter per node
+     *
+     * @param filter
+     * @return number of builds by slave host name
+     */
+    public Map<String, Integer> getNodeCounts(GraphFilterBuilder filter) {
+        return statsStore.count(StatsQuery.compile(filter), StatsRollup.Dimension.NODE);
+    }
+
+    /**
+     * Count the stats matching the filter per period of time
+     *
+     * @param filter
+     * @param period the calendar field of the periods, e.g. {@link Calendar#HOUR_OF_DAY} or {@link Calendar#DATE}
+     * @return number of builds by start of period
+     */
+    public SortedMap<Date, Integer> getCountsPerPeriod(GraphFilterBuilder filter, int period) {
+        return statsStore.countPerPeriod(StatsQuery.compile(filter), period);
+    }
+
+    /**
+     * Get the cache of the stats query results, e.g. for its hit and miss counters
+     *
+     * @return cache, null if not started
+     */
+    public StatsQueryCache getQueryCache() {
+        StatsIndex index = statsStore;
+        return index == null ? null : index.getCache();
     }
 
     /**
@@ -280,6 +648,26 @@ public class DashBeatsKnowledgeBase extends LocalFileKnowledgeBase {
          * @return {@link hudson.util.FormValidation#ok()} if everything is well.
          */
         public FormValidation doCheckUrl(@QueryParameter("value") String value) {
+            return checkUrl(value);
+        }
+
+        /**
+         * Checks that the authorization token is not empty and does not contain space.
+         *
+         * @param value the pattern to check.
+         * @return {@link hudson.util.FormValidation#ok()} if everything is well.
+         */
+        public FormValidation doCheckAuthToken(@QueryParameter("value") String value) {
+            return checkAuthToken(value);
+        }
+
+        /**
+         * Checks that the url is not empty and does not contain space.
+         *
+         * @param value the url to check.
+         * @return {@link hudson.util.FormValidation#ok()} if everything is well.
+         */
+        static FormValidation checkUrl(String value) {
             if (Util.fixEmpty(value) == null) {
                 return FormValidation.error("Please provide a host name!");
             } else {
@@ -294,10 +682,10 @@ public class DashBeatsKnowledgeBase extends LocalFileKnowledgeBase {
         /**
          * Checks that the authorization token is not empty and does not contain space.
          *
-         * @param value the pattern to check.
+         * @param value the token to check.
          * @return {@link hudson.util.FormValidation#ok()} if everything is well.
          */
-        public FormValidation doCheckAuthToken(@QueryParameter("value") String value) {
+        static FormValidation checkAuthToken(String value) {
             if (Util.fixEmpty(value) == null) {
                 return FormValidation.error("Please provide an authorization token!");
             } else {
@@ -334,6 +722,41 @@ public class DashBeatsKnowledgeBase extends LocalFileKnowledgeBase {
         }
     }
 
+    /**
+     * Create the publisher of a DashBeats server, with its circuit breaker and outbox.
+     *
+     * @param targetUrl
+     * @param targetAuthToken
+     * @param widgets
+     * @param compression
+     * @param outboxFilename
+     * @return the target publisher
+     */
+    private TargetPublisher createTargetPublisher(final String targetUrl, String targetAuthToken,
+                                                  List<DashBeatsWidget> widgets, boolean compression,
+                                                  String outboxFilename) {
+        final DashBeatsClient dashBeatsClient = new DashBeatsClient(compression);
+        if (compression) {
+            // probe whether the server accepts compressed payloads, without holding the start up
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    dashBeatsClient.ping(targetUrl);
+                }
+            });
+        }
+        CircuitBreakerClient client = new CircuitBreakerClient(dashBeatsClient, targetUrl, scheduler);
+        DashBeatsOutbox outbox = new DashBeatsOutbox(client, new File(getJenkinsRootDir(), outboxFilename));
+        outbox.load();
+        DashBeatsPublisher targetPublisher = new DashBeatsPublisher(targetUrl, client,
+                new JsonFactory(targetAuthToken), widgets);
+        targetPublisher.setOutbox(outbox);
+        TargetPublisher target = new TargetPublisher(targetPublisher);
+        // re-publish from the worker of the target, not from the scheduler probing every server
+        client.addStateListener(target);
+        return target;
+    }
+
     /**
      * Get the jenkins root dir
      *
@@ -344,24 +767,212 @@ public class DashBeatsKnowledgeBase extends LocalFileKnowledgeBase {
     }
 
     /**
-     * Load all stats from the store, if existed, at start up
+     * Load all stats from the store file into the stores, then apply the stats saved meanwhile
+     * and publish the summary. Run in the background once started.
+     * <p/>
+     * When starting up, the causes list is not yet reloaded by BFA, so the builds info and fault
+     * causes are only compiled once Jenkins has completed its initialization or a first build has
+     * completed, whichever comes first. A stats object failing to be compiled is logged and skipped.
+     * <p/>
+     * The warm-up always ends: should the loading fail, the stats saved meanwhile are still applied,
+     * and should the replay fail, the stats left buffered are dropped, the next ones being saved as usual.
+     *
+     * @param loading
+     * @param index
+     * @param aggregates
+     * @param target
+     */
+    private void loadStore(StoreWarmUp loading, StatsIndex index, DashBeatsStore aggregates, FanOutPublisher target) {
+        loading.start();
+        try {
+            boolean loaded;
+            try {
+                loaded = load(loading, index, aggregates);
+            } catch (RuntimeException e) {
+                DashBeatsMetrics.getInstance().errors(DashBeatsMetrics.PERSIST).increment();
+                LOGGER.error("Failed to load DashBeats store, going on with the stats loaded so far : {}", e);
+                loaded = true;
+            }
+            if (loaded) {
+                replay(loading, index, aggregates, target);
+            }
+        } catch (RuntimeException e) {
+            DashBeatsMetrics.getInstance().errors(DashBeatsMetrics.INGEST).increment();
+            LOGGER.error("Failed to apply the stats saved while loading DashBeats store : {}", e);
+        } finally {
+            int dropped = loading.end();
+            if (dropped > 0) {
+                LOGGER.error("DashBeats store warm-up ended, {} stats saved meanwhile dropped", dropped);
+            }
+        }
+    }
+
+    /**
+     * Load all stats from the store file into the stores
      *
+     * @param loading
+     * @param index
+     * @param aggregates
+     * @return true once loaded, false if the knowledge base has restarted or stopped meanwhile
+     */
+    private boolean load(StoreWarmUp loading, StatsIndex index, DashBeatsStore aggregates) {
+        Map<String, Statistics> stored = readStore();
+        loading.setTotal(stored.size());
+        index.addAll(stored.values());
+        try {
+            if (!awaitCauses(loading)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            LOGGER.info("DashBeats store loading interrupted, the knowledge base has stopped");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        loading.aggregating();
+        // update build info, failed builds and fault cause stores from statsStore
+        Collection<FailureCause> causes = getCausesOrEmpty();
+        for (Statistics stats : stored.values()) {
+            aggregate(aggregates, stats, causes);
+            loading.loaded();
+        }
+        return true;
+    }
+
+    /**
+     * Apply the stats saved while loading and publish the summary, until no more stats are buffered
+     *
+     * @param loading
+     * @param index
+     * @param aggregates
+     * @param target
+     */
+    private void replay(StoreWarmUp loading, StatsIndex index, DashBeatsStore aggregates, FanOutPublisher target) {
+        boolean changed = index.size() > 0;
+        int replayed = 0;
+        do {
+            if (loading != warmUp) {
+                LOGGER.info("DashBeats store loading abandoned, the knowledge base has restarted");
+                return;
+            }
+            List<Statistics> buffered = loading.drain();
+            if (!buffered.isEmpty()) {
+                boolean added = false;
+                Collection<FailureCause> causes = getCausesOrEmpty();
+                for (Statistics stat : buffered) {
+                    if (index.add(stat)) {
+                        aggregate(aggregates, stat, causes);
+                        added = true;
+                    }
+                }
+                replayed += buffered.size();
+                if (added) {
+                    saveStore();
+                    changed = true;
+                }
+            }
+            if (changed) {
+                publishSummary(aggregates, target);
+                changed = false;
+            }
+        } while (!loading.complete());
+        LOGGER.info("DashBeats store loaded in {} ms : {} stats, {} saved meanwhile",
+                new Object[] {loading.getDuration(), loading.getLoaded(), replayed});
+    }
+
+    /**
+     * Publish the summary of the builds info and fault causes, logging a failure
+     * so that the stats saved meanwhile are still applied
+     *
+     * @param aggregates
+     * @param target
+     */
+    private static void publishSummary(DashBeatsStore aggregates, FanOutPublisher target) {
+        try {
+            target.publish(aggregates.createSummary());
+        } catch (RuntimeException e) {
+            DashBeatsMetrics.getInstance().errors(DashBeatsMetrics.PUBLISH).increment();
+            LOGGER.error("Failed to publish the summary of DashBeats store : {}", e);
+        }
+    }
+
+    /**
+     * Wait until the causes are reloaded by BFA: Jenkins has completed its initialization,
+     * or a build has completed
+     *
+     * @param loading
+     * @return true once reloaded, false if the knowledge base has restarted meanwhile
+     * @throws InterruptedException if the knowledge base has stopped
+     */
+    private boolean awaitCauses(StoreWarmUp loading) throws InterruptedException {
+        while (true) {
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins != null && jenkins.getInitLevel() == InitMilestone.COMPLETED) {
+                loading.causesLoaded();
+            }
+            if (loading.awaitCauses(1, TimeUnit.SECONDS)) {
+                return true;
+            }
+            if (loading != warmUp) {
+                LOGGER.info("DashBeats store loading abandoned, the knowledge base has restarted");
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Get the causes, none if they cannot be read, the fault causes being then named by their id
+     *
+     * @return causes
+     */
+    private Collection<FailureCause> getCausesOrEmpty() {
+        try {
+            return getCauses();
+        } catch (Exception e) {
+            LOGGER.error("Failed to get the failure causes : {}", e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Compile a stats object into the builds info and fault causes, logging a failure
+     * so that one bad stats object does not prevent the others from being compiled
+     *
+     * @param aggregates
+     * @param stat
      * @param causes
      */
-    private void loadStore(final Collection<FailureCause> causes) {
+    private static void aggregate(DashBeatsStore aggregates, Statistics stat, Collection<FailureCause> causes) {
+        try {
+            aggregates.update(stat, causes);
+        } catch (RuntimeException e) {
+            DashBeatsMetrics.getInstance().errors(DashBeatsMetrics.AGGREGATE).increment();
+            LOGGER.error("Failed to compile the stats of {} #{} : {}",
+                    new Object[] {stat.getProjectName(), stat.getBuildNumber(), e});
+        }
+    }
+
+    /**
+     * Read all stats from the store file, if existed
+     *
+     * @return stats by key, empty if no store
+     */
+    private Map<String, Statistics> readStore() {
         File storeFile = new File(getJenkinsRootDir(), DASHBEATS_STORE_FILENAME);
         LOGGER.info("Read DashBeats store from file : {}", storeFile.getAbsolutePath());
+        Map<String, Statistics> stored = Collections.emptyMap();
         if (storeFile.exists()) {
             try {
-                statsStore = (Map<String, Statistics>) new XmlFile(XSTREAM, storeFile).read();
+                stored = (Map<String, Statistics>) new XmlFile(XSTREAM, storeFile).read();
             } catch (IOException e) {
+                DashBeatsMetrics.getInstance().errors(DashBeatsMetrics.PERSIST).increment();
+                LOGGER.error("Failed to read DashBeats store from file : {}", e);
+            } catch (RuntimeException e) {
+                // e.g. a corrupted file, starting with an empty store rather than buffering the stats forever
+                DashBeatsMetrics.getInstance().errors(DashBeatsMetrics.PERSIST).increment();
                 LOGGER.error("Failed to read DashBeats store from file : {}", e);
             }
         }
-        // update build info, failed builds and fault cause stores from statsStore
-        for (Statistics stats : statsStore.values()) {
-            store.update(stats, causes);
-        }
+        return stored;
     }
 
     /**
@@ -370,8 +981,9 @@ public class DashBeatsKnowledgeBase extends LocalFileKnowledgeBase {
     private void saveStore() {
         File storeFile = new File(getJenkinsRootDir(), DASHBEATS_STORE_FILENAME);
         try {
-            new XmlFile(XSTREAM, storeFile).write(statsStore);
+            new XmlFile(XSTREAM, storeFile).write(statsStore.toMap());
         } catch (IOException e) {
+            DashBeatsMetrics.getInstance().errors(DashBeatsMetrics.PERSIST).increment();
             LOGGER.error("Failed to write DashBeats store to file : {}", e);
         }
     }
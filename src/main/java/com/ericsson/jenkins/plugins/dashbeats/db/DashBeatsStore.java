@@ -23,6 +23,7 @@
  */
 package com.ericsson.jenkins.plugins.dashbeats.db;
 
+import com.ericsson.jenkins.plugins.dashbeats.metrics.PrometheusWriter;
 import com.ericsson.jenkins.plugins.dashbeats.model.BuildInfo;
 import com.ericsson.jenkins.plugins.dashbeats.model.FaultCauseInfo;
 import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
@@ -41,6 +42,8 @@ import java.util.*;
  * are information compiled from the BFA statistics. Whenever a statistic object is stored,
  * the builds info and the fault causes are updated.
  * <p/>
+ * Thread safe, so that the counters can be exposed on demand while builds are saved.
+ * <p/>
  * Created by ekongto on 2014-09-11.
  */
 public class DashBeatsStore {
@@ -56,6 +59,8 @@ public class DashBeatsStore {
 
     private Date startDate;
     private Date lastDate;
+    /* Incremented on every change, starting from the creation time so that versions are not reused after a restart */
+    private long version = System.currentTimeMillis();
 
     /**
      * Default constructor, instantiates statsStore, buildInfoStore and faultCauseInfoStore collections
@@ -73,17 +78,27 @@ public class DashBeatsStore {
      *
      * @return
      */
-    public int size() {
+    public synchronized int size() {
         return buildInfoStore.size();
     }
 
+    /**
+     * Get the version of the store, incremented on every change
+     *
+     * @return version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
     /**
      * Clear all stores of builds and common fault causes
      */
-    public void clear() {
+    public synchronized void clear() {
         buildInfoStore.clear();
         latestFailedBuildStore.clear();
         faultCauseInfoStore.clear();
+        version++;
     }
 
     /**
@@ -92,7 +107,7 @@ public class DashBeatsStore {
      *
      * @param stats
      */
-    public void update(final Statistics stats, final Collection<FailureCause> causes) {
+    public synchronized void update(final Statistics stats, final Collection<FailureCause> causes) {
         updateBuildInfoStore(stats);
         updateLatestFailedBuildStore(stats);
         updateFaultCauseInfoStore(stats, causes);
@@ -103,6 +118,7 @@ public class DashBeatsStore {
         if (lastDate.before(date)) {
             lastDate = date;
         }
+        version++;
     }
 
     /**
@@ -110,7 +126,7 @@ public class DashBeatsStore {
      *
      * @return
      */
-    public StatsSummary createSummary() {
+    public synchronized StatsSummary createSummary() {
         Welcome welcome = new Welcome(StatsSummary.PRODUCT_NAME, startDate, lastDate);
         StatsSummary summary = new StatsSummary(startDate, lastDate, buildInfoStore.size());
         summary.setCommonFailureCauses(getCommonFaultCauses());
@@ -118,6 +134,7 @@ public class DashBeatsStore {
         summary.setLatestBuilds(getLatestBuilds());
         summary.setTopFailedJobs(getTopFailedJobs());
         summary.setWelcome(welcome);
+        summary.setVersion(version);
         return summary;
     }
 
@@ -188,19 +205,26 @@ public class DashBeatsStore {
                 String causeId = fcs.getId();
                 FailureCause cause = findFailureCause(causeId, causes);
                 // if already existed, then increment counter and update date if more recent
-                // update the name and categories, they may have changed
+                // update the name and categories, they may have changed, unless the cause is unknown
                 if (faultCauseInfoStore.containsKey(causeId)) {
                     commonFaultCause = faultCauseInfoStore.get(causeId);
-                    commonFaultCause.setCauseName(cause.getName());
-                    commonFaultCause.setCategories(cause.getCategories());
+                    if (cause != null) {
+                        commonFaultCause.setCauseName(cause.getName());
+                        commonFaultCause.setCategories(cause.getCategories());
+                    }
                     commonFaultCause.setFailures(commonFaultCause.getFailures() + 1);
                     if (date.after(commonFaultCause.getDate())) {
                         faultCauseInfoStore.put(causeId, commonFaultCause);
                     }
                 } else {
                     commonFaultCause = new FaultCauseInfo(date, causeId);
-                    commonFaultCause.setCauseName(cause.getName());
-                    commonFaultCause.setCategories(cause.getCategories());
+                    // a cause removed from the knowledge base, or not loaded yet, is named by its id
+                    if (cause != null) {
+                        commonFaultCause.setCauseName(cause.getName());
+                        commonFaultCause.setCategories(cause.getCategories());
+                    } else {
+                        commonFaultCause.setCauseName(causeId);
+                    }
                     faultCauseInfoStore.put(causeId, commonFaultCause);
                 }
                 LOGGER.info("Added a common fault : {}", commonFaultCause);
@@ -314,6 +338,17 @@ public class DashBeatsStore {
         return list;
     }
 
+    /**
+     * Write the Prometheus exposition of the counters of every job and fault cause, as they are now.
+     * Written on demand, e.g. by a scrape, so that saving a build does not pay for it.
+     *
+     * @return the encoded exposition
+     */
+    public synchronized byte[] writeExposition() {
+        return PrometheusWriter.writeAggregates(new TreeMap<String, BuildInfo>(buildInfoStore).values(),
+                new TreeMap<String, FaultCauseInfo>(faultCauseInfoStore).values(), version, lastDate);
+    }
+
     /**
      * Find the Failure Cause by Id from BFA Failure Causes
      *
@@ -0,0 +1,179 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.ericsson.jenkins.plugins.dashbeats.widget.DashBeatsWidget;
+import com.ericsson.jenkins.plugins.dashbeats.widget.WidgetRegistry;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * An additional DashBeats server to publish to, with its own url, authorization token
+ * and the widgets it displays.
+ */
+public class DashBeatsTarget extends AbstractDescribableImpl<DashBeatsTarget> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DashBeatsTarget.class.getName());
+
+    /* URL of the DashBeats server */
+    private final String url;
+    /* DashBeats authorization token */
+    private final String authToken;
+    /* Names of the widgets published to, separated by commas, all if empty */
+    private final String widgets;
+    /* Whether payloads are compressed when the server accepts it */
+    private final boolean compression;
+
+    /**
+     * Constructor of a target
+     *
+     * @param url
+     * @param authToken
+     * @param widgets
+     */
+    public DashBeatsTarget(String url, String authToken, String widgets) {
+        this(url, authToken, widgets, false);
+    }
+
+    /**
+     * Constructor of a target
+     *
+     * @param url
+     * @param authToken
+     * @param widgets
+     * @param compression
+     */
+    @DataBoundConstructor
+    public DashBeatsTarget(String url, String authToken, String widgets, boolean compression) {
+        this.url = url;
+        this.authToken = authToken;
+        this.widgets = widgets;
+        this.compression = compression;
+    }
+
+    /**
+     * Get the DashBeats URL
+     *
+     * @return
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Get the DashBeats auth_token
+     *
+     * @return
+     */
+    public String getAuthToken() {
+        return authToken;
+    }
+
+    /**
+     * Get the widgets published to, as configured
+     *
+     * @return
+     */
+    public String getWidgets() {
+        return widgets;
+    }
+
+    /**
+     * Check whether payloads are compressed when the server accepts it
+     *
+     * @return true if compression is enabled
+     */
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * Get the widgets published to, all of them if not valid
+     *
+     * @return widgets
+     */
+    public List<DashBeatsWidget> getSelectedWidgets() {
+        try {
+            return WidgetRegistry.parse(widgets);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid widgets for DashBeats target {} : {}", url, widgets);
+            return WidgetRegistry.all();
+        }
+    }
+
+    /**
+     * Descriptor for {@link DashBeatsTarget}.
+     */
+    @Extension
+    public static class DescriptorImpl extends Descriptor<DashBeatsTarget> {
+
+        @Override
+        public String getDisplayName() {
+            return "DashBeats target";
+        }
+
+        /**
+         * Checks that the url is not empty and does not contain space.
+         *
+         * @param value the url to check.
+         * @return {@link hudson.util.FormValidation#ok()} if everything is well.
+         */
+        public FormValidation doCheckUrl(@QueryParameter("value") String value) {
+            return DashBeatsKnowledgeBase.DashBeatsDescriptor.checkUrl(value);
+        }
+
+        /**
+         * Checks that the authorization token is not empty and does not contain space.
+         *
+         * @param value the token to check.
+         * @return {@link hudson.util.FormValidation#ok()} if everything is well.
+         */
+        public FormValidation doCheckAuthToken(@QueryParameter("value") String value) {
+            return DashBeatsKnowledgeBase.DashBeatsDescriptor.checkAuthToken(value);
+        }
+
+        /**
+         * Checks that the widgets are known widgets.
+         *
+         * @param value the widgets to check.
+         * @return {@link hudson.util.FormValidation#ok()} if everything is well.
+         */
+        public FormValidation doCheckWidgets(@QueryParameter("value") String value) {
+            try {
+                WidgetRegistry.parse(value);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error("Unknown widget, expecting some of " + WidgetRegistry.all());
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.util.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans many statistics for a query with several threads, for the queries the indexes cannot
+ * narrow down and whose regular expressions make every statistics expensive to match.
+ * <p/>
+ * The statistics, ordered newest first, are split into consecutive chunks scanned in parallel,
+ * each for up to the limit. The results of the chunks are merged in order, so the result is the
+ * one of a sequential scan: the newest matching statistics, up to the limit. Once the chunks
+ * merged reach the limit, the chunks still scanned are cancelled.
+ * <p/>
+ * The scans run on a pool of their own, capped by the parallelism, so they do not take the
+ * threads of Jenkins. The parallelism defaults to half the processors, at most 4, and can be set
+ * with the system property <code>com.ericsson.jenkins.plugins.dashbeats.db.ParallelStatsScanner.parallelism</code>.
+ * Idle threads of the pool stop after a minute.
+ */
+public class ParallelStatsScanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelStatsScanner.class.getName());
+
+    public static final int DEFAULT_PARALLELISM = Integer.getInteger(
+            ParallelStatsScanner.class.getName() + ".parallelism",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    /* Number of statistics from which a scan is worth being run in parallel */
+    public static final int DEFAULT_THRESHOLD = 20000;
+    /* Smallest number of statistics scanned by a task */
+    private static final int MIN_CHUNK_SIZE = 1024;
+    /* Number of chunks per thread, for the threads to stay busy until the end */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /* Number of statistics scanned between two checks of cancellation */
+    private static final int CANCELLATION_CHECK = 256;
+    /* Delay in seconds after which an idle thread stops */
+    private static final long KEEP_ALIVE = 60;
+
+    private final int parallelism;
+    private final int threshold;
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Constructor of a scanner with the default parallelism and threshold
+     */
+    public ParallelStatsScanner() {
+        this(DEFAULT_PARALLELISM, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructor of a scanner
+     *
+     * @param parallelism maximum number of threads scanning
+     * @param threshold number of statistics from which a scan runs in parallel
+     */
+    public ParallelStatsScanner(int parallelism, int threshold) {
+        this.parallelism = Math.max(1, parallelism);
+        this.threshold = threshold;
+        this.pool = new ThreadPoolExecutor(this.parallelism, this.parallelism, KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Check whether scanning a number of statistics in parallel is worth it
+     *
+     * @param size number of statistics to scan
+     * @return true if to be scanned in parallel
+     */
+    public boolean isWorthIt(int size) {
+        return parallelism > 1 && size >= threshold;
+    }
+
+    /**
+     * Get the statistics matching a query, up to a limit, in the order they are given
+     *
+     * @param ordered the statistics, newest first
+     * @param end the index of the first statistics not to scan
+     * @param query
+     * @param limit
+     * @return statistics
+     * @throws CancellationException if the calling thread is interrupted, the result being then incomplete
+     */
+    public List<Statistics> scan(final Statistics[] ordered, int end, final StatsQuery query, final int limit) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (end + parallelism * CHUNKS_PER_THREAD - 1)
+                / (parallelism * CHUNKS_PER_THREAD));
+        List<Future<List<Statistics>>> chunks = new ArrayList<Future<List<Statistics>>>();
+        for (int from = 0; from < end; from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(end, from + chunkSize);
+            chunks.add(pool.submit(new Callable<List<Statistics>>() {
+                @Override
+                public List<Statistics> call() {
+                    return scan(ordered, chunkFrom, chunkTo, query, limit);
+                }
+            }));
+        }
+        List<Statistics> list = new ArrayList<Statistics>();
+        try {
+            for (Future<List<Statistics>> chunk : chunks) {
+                for (Statistics stat : chunk.get()) {
+                    if (list.size() >= limit) {
+                        break;
+                    }
+                    list.add(stat);
+                }
+                if (list.size() >= limit) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // a partial result must not be taken, e.g. cached, as the answer
+            Thread.currentThread().interrupt();
+            LOGGER.debug("Parallel scan interrupted");
+            throw new CancellationException("Scan of the statistics interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to scan the statistics", e.getCause());
+        } finally {
+            for (Future<List<Statistics>> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Stop the threads of the scanner
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Get the statistics of a range matching a query, up to a limit
+     *
+     * @param ordered
+     * @param from index of the first statistics to scan
+     * @param to index of the first statistics not to scan
+     * @param query
+     * @param limit
+     * @return statistics, possibly fewer than matching if the scan was cancelled
+     */
+    static List<Statistics> scan(Statistics[] ordered, int from, int to, StatsQuery query, int limit) {
+        List<Statistics> list = new ArrayList<Statistics>();
+        for (int i = from; i < to && list.size() < limit; i++) {
+            if ((i - from) % CANCELLATION_CHECK == 0 && Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if (query.matches(ordered[i])) {
+                list.add(ordered[i]);
+            }
+        }
+        return list;
+    }
+}
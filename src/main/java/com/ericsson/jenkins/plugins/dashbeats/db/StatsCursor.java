@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the statistics matching a query, newest first, fetching them page by page from the
+ * index, so that a whole history is walked with one page in memory at a time.
+ * The statistics added while iterating are not iterated, being newer than the first page.
+ */
+public class StatsCursor implements Iterator<Statistics> {
+
+    private final StatsIndex index;
+    private final StatsQuery query;
+    private final int pageSize;
+    private StatsPage page;
+    private Iterator<Statistics> current;
+
+    /**
+     * Constructor of a cursor
+     *
+     * @param index
+     * @param query
+     * @param pageSize number of statistics fetched at once
+     */
+    public StatsCursor(StatsIndex index, StatsQuery query, int pageSize) {
+        this.index = index;
+        this.query = query;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            if (page != null && !page.hasNext()) {
+                return false;
+            }
+            page = index.page(query, page == null ? null : page.getNextToken(), pageSize);
+            current = page.getStatistics().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public Statistics next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Statistics are never removed");
+    }
+}
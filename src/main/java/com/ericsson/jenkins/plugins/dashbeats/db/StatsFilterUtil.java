@@ -3,11 +3,6 @@ package com.ericsson.jenkins.plugins.dashbeats.db;
 import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
 import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.regex.Pattern;
-
 /**
  * Created by ekongto on 2014-09-18.
  */
@@ -26,12 +21,8 @@ public class StatsFilterUtil {
      * @return
      */
     public static boolean isMatched(String matcher, String text) {
-        if (matcher == null) {
-            return true;
-        }
-        Pattern pattern;
-        pattern = Pattern.compile(".*" + matcher + ".*");
-        return pattern.matcher(text).find();
+        StatsQuery.TextMatcher compiled = StatsQuery.TextMatcher.compile(matcher);
+        return compiled == null || compiled.matches(text);
     }
 
     /**
@@ -49,33 +40,14 @@ public class StatsFilterUtil {
     }
 
     /**
-     * Check if the stats is to be included regarding the filter
+     * Check if the stats is to be included regarding the filter.
+     * To match many stats, compile the filter once with {@link StatsQuery#compile(GraphFilterBuilder)}.
      *
      * @param stat
      * @param filter
      * @return
      */
     public static boolean isIncluded(Statistics stat, GraphFilterBuilder filter) {
-        // exclude matching result
-        if (isExcluded(stat, filter)) {
-            return false;
-        }
-        // matching criteria
-        List<Boolean> matches = new ArrayList<Boolean>();
-        matches.add(isMatched(filter.getProjectName(), stat.getProjectName()));
-        matches.add(isMatched(filter.getResult(), stat.getResult()));
-        matches.add(isMatched(filter.getMasterName(), stat.getMaster()));
-        matches.add(isMatched(filter.getSlaveName(), stat.getSlaveHostName()));
-        matches.add(!(filter.getBuildNumbers() != null && !filter.getBuildNumbers().contains(stat.getBuildNumber())));
-        matches.add(!(filter.getSince() != null && !filter.getSince().before(stat.getStartingTime())));
-
-        Iterator<Boolean> it = matches.iterator();
-        while (it.hasNext()) {
-            Boolean match = it.next();
-            if (!match) {
-                return false;
-            }
-        }
-        return true;
+        return StatsQuery.compile(filter).matches(stat);
     }
 }
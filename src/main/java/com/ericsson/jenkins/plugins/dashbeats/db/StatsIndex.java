@@ -0,0 +1,565 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.statistics.FailureCauseStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+/**
+ * The statistics saved by BFA, indexed on the fields the graph filters are about: project name,
+ * result, master and slave host, and the build numbers of every project.
+ * <p/>
+ * The text criteria of a filter are substrings or regular expressions, so an index is used by
+ * matching the criterion against its distinct values, much fewer than the statistics, and taking
+ * the statistics of the matching values only. A query is answered from the most selective index
+ * its criteria allow, the statistics found being then checked against the whole filter.
+ * <p/>
+ * Statistics are also kept ordered by starting time, and queries are answered newest first:
+ * when no index is more selective, the statistics are scanned from the newest, and the scan
+ * stops once the limit is reached or the statistics get older than the date filtered on.
+ * Large scans for regular expressions run in parallel, see {@link ParallelStatsScanner}.
+ * Scans run on a snapshot of the statistics taken under the lock, and outside of it, so that
+ * statistics can be added meanwhile; a result is cached only if none was added during the scan.
+ * The results are cached, see {@link StatsQueryCache}. The aggregate queries of the graphs
+ * are answered from counters, see {@link StatsRollup}, counted from the statistics on the first
+ * aggregate query only, and maintained as statistics are added from then on. Thread safe.
+ */
+public class StatsIndex {
+
+    /**
+     * Orders statistics by starting time, newest first, then by project and build number
+     */
+    static final Comparator<Statistics> NEWEST_FIRST = new Comparator<Statistics>() {
+        @Override
+        public int compare(Statistics a, Statistics b) {
+            long timeA = getTime(a);
+            long timeB = getTime(b);
+            if (timeA != timeB) {
+                return timeA > timeB ? -1 : 1;
+            }
+            String projectA = a.getProjectName() == null ? "" : a.getProjectName();
+            String projectB = b.getProjectName() == null ? "" : b.getProjectName();
+            int byProject = projectA.compareTo(projectB);
+            if (byProject != 0) {
+                return byProject;
+            }
+            return a.getBuildNumber() < b.getBuildNumber() ? 1 : (a.getBuildNumber() == b.getBuildNumber() ? 0 : -1);
+        }
+    };
+
+    /* Largest number of statistics in a page */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /* Largest number of statistics looked at for a page, for the lock to be held for a bounded time */
+    private static final int MAX_PAGE_SCAN = 50000;
+
+    /* Statistics by key, see getKey */
+    private final Map<String, Statistics> stats = new HashMap<String, Statistics>();
+    /* Statistics by field value */
+    private final Map<String, List<Statistics>> byProject = new HashMap<String, List<Statistics>>();
+    private final Map<String, List<Statistics>> byResult = new HashMap<String, List<Statistics>>();
+    private final Map<String, List<Statistics>> byMaster = new HashMap<String, List<Statistics>>();
+    private final Map<String, List<Statistics>> bySlave = new HashMap<String, List<Statistics>>();
+    /* Statistics by build number, per project */
+    private final Map<String, Map<Integer, Statistics>> builds = new HashMap<String, Map<Integer, Statistics>>();
+    /* Statistics by starting time, newest first */
+    private final NavigableSet<Statistics> byTime = new TreeSet<Statistics>(NEWEST_FIRST);
+    /* The same, as an array for scans, null until needed after an addition */
+    private Statistics[] timeOrdered;
+    /* Incremented on every addition */
+    private long version;
+    /* Results of the latest queries */
+    private final StatsQueryCache cache = new StatsQueryCache();
+    /* Counters of the statistics, null until an aggregate query needs them */
+    private StatsRollup rollup;
+    /* Scanner of large ranges of statistics */
+    private final ParallelStatsScanner scanner;
+
+    /**
+     * Constructor of an empty index
+     */
+    public StatsIndex() {
+        this(new ParallelStatsScanner());
+    }
+
+    /**
+     * Constructor of an empty index
+     *
+     * @param scanner the scanner of large ranges of statistics
+     */
+    public StatsIndex(ParallelStatsScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Get the key of a statistics, unique per build: the project name and the build number
+     *
+     * @param stat
+     * @return key
+     */
+    public static String getKey(Statistics stat) {
+        return stat.getProjectName() + "#" + stat.getBuildNumber();
+    }
+
+    /**
+     * Add a statistics, unless one of the same build is already there
+     *
+     * @param stat
+     * @return true if added
+     */
+    public synchronized boolean add(Statistics stat) {
+        String key = getKey(stat);
+        if (stats.containsKey(key)) {
+            return false;
+        }
+        stats.put(key, stat);
+        byTime.add(stat);
+        timeOrdered = null;
+        version++;
+        cache.invalidate(stat);
+        if (rollup != null) {
+            rollup.add(stat);
+        }
+        index(byProject, stat.getProjectName(), stat);
+        index(byResult, stat.getResult(), stat);
+        index(byMaster, stat.getMaster(), stat);
+        index(bySlave, stat.getSlaveHostName(), stat);
+        Map<Integer, Statistics> projectBuilds = builds.get(stat.getProjectName());
+        if (projectBuilds == null) {
+            projectBuilds = new HashMap<Integer, Statistics>();
+            builds.put(stat.getProjectName(), projectBuilds);
+        }
+        projectBuilds.put(stat.getBuildNumber(), stat);
+        return true;
+    }
+
+    /**
+     * Add statistics, skipping those of builds already there
+     *
+     * @param statistics
+     */
+    public synchronized void addAll(Collection<Statistics> statistics) {
+        for (Statistics stat : statistics) {
+            add(stat);
+        }
+    }
+
+    /**
+     * Get the number of statistics
+     *
+     * @return size
+     */
+    public synchronized int size() {
+        return stats.size();
+    }
+
+    /**
+     * Get a copy of the statistics by key, as persisted
+     *
+     * @return statistics by key
+     */
+    public synchronized Map<String, Statistics> toMap() {
+        return new HashMap<String, Statistics>(stats);
+    }
+
+    /**
+     * Get the statistics matching a query, newest first, up to a limit
+     *
+     * @param query
+     * @param limit
+     * @return statistics
+     * @throws java.util.concurrent.CancellationException if interrupted while scanning in parallel, nothing being cached
+     */
+    public List<Statistics> query(StatsQuery query, int limit) {
+        Scan scan;
+        synchronized (this) {
+            List<Statistics> cached = cache.get(query, limit);
+            if (cached != null) {
+                return cached;
+            }
+            scan = prepare(query);
+        }
+        List<Statistics> list = scan.run(limit);
+        synchronized (this) {
+            // statistics added during the scan may be missing from the result
+            if (scan.version == version) {
+                cache.put(query, limit, list);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get a page of the statistics matching a query, newest first.
+     * A page may have fewer statistics than its size while not the last one, when many
+     * statistics not matching were looked at.
+     *
+     * @param query
+     * @param token the token of the page, null for the first one
+     * @param size number of statistics, up to {@link #MAX_PAGE_SIZE}
+     * @return page
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    public synchronized StatsPage page(StatsQuery query, String token, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Collection<Statistics> ordered = token == null ? byTime : byTime.tailSet(StatsPage.parseToken(token), false);
+        Date since = query.getSince();
+        List<Statistics> list = new ArrayList<Statistics>();
+        Statistics last = null;
+        int scanned = 0;
+        for (Statistics stat : ordered) {
+            if (since != null && getTime(stat) <= since.getTime()) {
+                break;
+            }
+            if (list.size() >= limit || scanned >= MAX_PAGE_SCAN) {
+                // more to look at, from the last statistics looked at
+                return new StatsPage(list, StatsPage.createToken(last));
+            }
+            scanned++;
+            last = stat;
+            if (query.matches(stat)) {
+                list.add(stat);
+            }
+        }
+        return new StatsPage(list, null);
+    }
+
+    /**
+     * Count the statistics matching a query by a dimension, e.g. the failures per cause
+     *
+     * @param query
+     * @param dimension
+     * @return number by value of the dimension
+     */
+    public Map<String, Integer> count(StatsQuery query, StatsRollup.Dimension dimension) {
+        Scan scan;
+        synchronized (this) {
+            if (StatsRollup.canAnswer(query)) {
+                return getRollup().count(query, dimension, getBoundary(query.getSince()));
+            }
+            scan = prepare(query);
+        }
+        return StatsRollup.count(scan.run(Integer.MAX_VALUE), dimension);
+    }
+
+    /**
+     * Count the statistics matching a query by period of time, in the default time zone
+     *
+     * @param query
+     * @param period the calendar field of the periods, e.g. {@link java.util.Calendar#DATE}
+     * @return number by start of period
+     */
+    public SortedMap<Date, Integer> countPerPeriod(StatsQuery query, int period) {
+        Scan scan;
+        synchronized (this) {
+            if (StatsRollup.canAnswer(query) && StatsRollup.canCountPerPeriod(TimeZone.getDefault())) {
+                return getRollup().countPerPeriod(query, period, getBoundary(query.getSince()));
+            }
+            scan = prepare(query);
+        }
+        return StatsRollup.countPerPeriod(scan.run(Integer.MAX_VALUE), period);
+    }
+
+    /**
+     * Get the counters of the statistics, counting them on the first call
+     *
+     * @return rollup
+     */
+    synchronized StatsRollup getRollup() {
+        if (rollup == null) {
+            rollup = new StatsRollup();
+            for (Statistics stat : byTime) {
+                rollup.add(stat);
+            }
+        }
+        return rollup;
+    }
+
+    /**
+     * Get the cache of the query results
+     *
+     * @return cache
+     */
+    public StatsQueryCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Scan the statistics matching a query, newest first, up to a limit, without holding the lock
+     *
+     * @param query
+     * @param limit
+     * @return statistics
+     */
+    List<Statistics> scan(StatsQuery query, int limit) {
+        Scan scan;
+        synchronized (this) {
+            scan = prepare(query);
+        }
+        return scan.run(limit);
+    }
+
+    /**
+     * Take the snapshot of the statistics to scan for a query: the candidates of the most selective
+     * index, or all the statistics newer than the date of the query. Called with the lock held.
+     *
+     * @param query
+     * @return the scan, to be run without the lock
+     */
+    private Scan prepare(StatsQuery query) {
+        Collection<Statistics> candidates = getCandidates(query);
+        if (candidates != null) {
+            return new Scan(query, candidates.toArray(new Statistics[candidates.size()]), -1, false, version);
+        }
+        Statistics[] snapshot = getTimeOrdered();
+        Date since = query.getSince();
+        int end = since == null ? snapshot.length : indexOfOlder(snapshot, since.getTime());
+        return new Scan(query, snapshot, end, query.hasPattern() && scanner.isWorthIt(end), version);
+    }
+
+    /**
+     * Get the statistics which may match a query, from the most selective index
+     *
+     * @param query
+     * @return candidates, null if no index applies
+     */
+    Collection<Statistics> getCandidates(StatsQuery query) {
+        Collection<Statistics> all = stats.values();
+        Collection<Statistics> candidates = all;
+        candidates = select(candidates, byProject, query.getProjectName());
+        candidates = select(candidates, byResult, query.getResult());
+        candidates = select(candidates, byMaster, query.getMasterName());
+        candidates = select(candidates, bySlave, query.getSlaveName());
+        Set<Integer> numbers = query.getBuildNumbers();
+        if (numbers != null) {
+            List<Statistics> numbered = new ArrayList<Statistics>();
+            for (Map.Entry<String, Map<Integer, Statistics>> project : builds.entrySet()) {
+                if (query.getProjectName() == null || query.getProjectName().matches(project.getKey())) {
+                    for (Integer number : numbers) {
+                        Statistics stat = project.getValue().get(number);
+                        if (stat != null) {
+                            numbered.add(stat);
+                        }
+                    }
+                }
+            }
+            if (numbered.size() < candidates.size()) {
+                candidates = numbered;
+            }
+        }
+        return candidates == all ? null : candidates;
+    }
+
+    /**
+     * Select the statistics of an index matching a criterion, if fewer than the current candidates
+     *
+     * @param candidates
+     * @param index
+     * @param criterion null if none
+     * @return the fewest statistics
+     */
+    private static Collection<Statistics> select(Collection<Statistics> candidates,
+                                                 Map<String, List<Statistics>> index,
+                                                 StatsQuery.TextMatcher criterion) {
+        if (criterion == null) {
+            return candidates;
+        }
+        List<List<Statistics>> matching = new ArrayList<List<Statistics>>();
+        int size = 0;
+        for (Map.Entry<String, List<Statistics>> value : index.entrySet()) {
+            if (criterion.matches(value.getKey())) {
+                matching.add(value.getValue());
+                size += value.getValue().size();
+            }
+        }
+        if (size >= candidates.size()) {
+            return candidates;
+        }
+        if (matching.size() == 1) {
+            return Collections.unmodifiableList(matching.get(0));
+        }
+        List<Statistics> selected = new ArrayList<Statistics>(size);
+        for (List<Statistics> bucket : matching) {
+            selected.addAll(bucket);
+        }
+        return selected;
+    }
+
+    /**
+     * Get the statistics ordered newest first, as an array
+     *
+     * @return statistics
+     */
+    private Statistics[] getTimeOrdered() {
+        if (timeOrdered == null) {
+            timeOrdered = byTime.toArray(new Statistics[byTime.size()]);
+        }
+        return timeOrdered;
+    }
+
+    /**
+     * Get the statistics started after a date, in the slice of the date, not counted by the rollup.
+     * A view of the range of the slice, valid while the lock is held.
+     *
+     * @param since
+     * @return statistics, none without date
+     */
+    private Collection<Statistics> getBoundary(Date since) {
+        if (since == null) {
+            return Collections.emptyList();
+        }
+        return byTime.subSet(probe(StatsRollup.getSliceEnd(since) - 1), true, probe(since.getTime()), false);
+    }
+
+    /**
+     * Create a statistics ordered before all those started at a time, and after the newer ones,
+     * to look up the statistics started at or before the time
+     *
+     * @param time
+     * @return statistics
+     */
+    private static Statistics probe(long time) {
+        return new Statistics("", Integer.MAX_VALUE, new Date(time), 0L, Collections.<String>emptyList(),
+                null, null, 0, null, null, Collections.<FailureCauseStatistics>emptyList());
+    }
+
+    /**
+     * A scan of a snapshot of the statistics for a query, run without holding the lock of the index
+     */
+    private final class Scan {
+        private final StatsQuery query;
+        /* Statistics newest first up to the end, or candidates in no order if the end is negative */
+        private final Statistics[] statistics;
+        private final int end;
+        private final boolean parallel;
+        /* Version of the index the snapshot was taken at */
+        private final long version;
+
+        private Scan(StatsQuery query, Statistics[] statistics, int end, boolean parallel, long version) {
+            this.query = query;
+            this.statistics = statistics;
+            this.end = end;
+            this.parallel = parallel;
+            this.version = version;
+        }
+
+        /**
+         * Get the statistics matching the query, newest first, up to a limit
+         *
+         * @param limit
+         * @return statistics
+         * @throws java.util.concurrent.CancellationException if interrupted while scanning in parallel
+         */
+        List<Statistics> run(int limit) {
+            if (parallel) {
+                return scanner.scan(statistics, end, query, limit);
+            }
+            Statistics[] ordered = statistics;
+            int to = end;
+            if (to < 0) {
+                // candidates are a snapshot of their own, sorted outside of the lock
+                Arrays.sort(ordered, NEWEST_FIRST);
+                to = ordered.length;
+            }
+            Date since = query.getSince();
+            List<Statistics> list = new ArrayList<Statistics>();
+            for (int i = 0; i < to && list.size() < limit; i++) {
+                Statistics stat = ordered[i];
+                if (since != null && getTime(stat) <= since.getTime()) {
+                    // the next ones are older
+                    break;
+                }
+                if (query.matches(stat)) {
+                    list.add(stat);
+                }
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Find the first statistics started at or before a time
+     *
+     * @param ordered statistics, newest first
+     * @param time
+     * @return its index, the length if none
+     */
+    private static int indexOfOlder(Statistics[] ordered, long time) {
+        int low = 0;
+        int high = ordered.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getTime(ordered[middle]) <= time) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the starting time of a statistics
+     *
+     * @param stat
+     * @return time in milliseconds, 0 if unknown
+     */
+    private static long getTime(Statistics stat) {
+        Date start = stat.getStartingTime();
+        return start == null ? 0 : start.getTime();
+    }
+
+    /**
+     * Index a statistics under a field value, if any
+     *
+     * @param index
+     * @param value
+     * @param stat
+     */
+    private static void index(Map<String, List<Statistics>> index, String value, Statistics stat) {
+        if (value == null) {
+            return;
+        }
+        List<Statistics> bucket = index.get(value);
+        if (bucket == null) {
+            bucket = new ArrayList<Statistics>();
+            index.put(value, bucket);
+        }
+        bucket.add(stat);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.statistics.FailureCauseStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A page of the statistics matching a query, newest first, with the token of the next page.
+ * <p/>
+ * The token is the position of the last statistics looked at, in the order of the statistics
+ * by starting time, project and build number. It stays valid while statistics are added, the
+ * statistics of new builds coming before it, so that a whole history can be walked page by page.
+ * The token is opaque and safe in a url: the position is encrypted and authenticated with keys drawn
+ * at start, since the statistics looked at may be of a job the reader of the page is not allowed to see.
+ * The tokens are therefore only valid until Jenkins restarts.
+ */
+public class StatsPage {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String CIPHER = "AES/CBC/PKCS5Padding";
+    private static final String MAC = "HmacSHA256";
+    /* Length in bytes of the initialization vector, of a cipher block, and of the authentication code kept */
+    private static final int BLOCK_LENGTH = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final SecretKeySpec CIPHER_KEY = new SecretKeySpec(randomBytes(BLOCK_LENGTH), "AES");
+    private static final SecretKeySpec MAC_KEY = new SecretKeySpec(randomBytes(32), MAC);
+
+    private final List<Statistics> statistics;
+    private final String nextToken;
+
+    /**
+     * Constructor of a page
+     *
+     * @param statistics
+     * @param nextToken the token of the next page, null if this is the last one
+     */
+    public StatsPage(List<Statistics> statistics, String nextToken) {
+        this.statistics = Collections.unmodifiableList(statistics);
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * Get the statistics of the page, possibly fewer than the page size, or none, when not the last one
+     *
+     * @return statistics
+     */
+    public List<Statistics> getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Get the token of the next page
+     *
+     * @return token, null if this is the last page
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * Check whether there are more pages
+     *
+     * @return true if there is a next page
+     */
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    /**
+     * Create the token of the position following a statistics
+     *
+     * @param stat
+     * @return token
+     */
+    static String createToken(Statistics stat) {
+        Date start = stat.getStartingTime();
+        String project = stat.getProjectName() == null ? "" : stat.getProjectName();
+        String position = (start == null ? 0 : start.getTime()) + "." + stat.getBuildNumber() + "." + project;
+        byte[] bytes = seal(position.getBytes(UTF8));
+        char[] token = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            token[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            token[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(token);
+    }
+
+    /**
+     * Parse a token into a statistics at its position, to look up the statistics following it
+     *
+     * @param token
+     * @return a statistics with the starting time, project and build number of the position
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    static Statistics parseToken(String token) {
+        if (token.length() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid page token " + token);
+        }
+        byte[] bytes = new byte[token.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(token.charAt(2 * i), 16);
+            int low = Character.digit(token.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid page token " + token);
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        byte[] opened = open(bytes);
+        if (opened == null) {
+            throw new IllegalArgumentException("Invalid page token " + token);
+        }
+        String[] position = new String(opened, UTF8).split("\\.", 3);
+        if (position.length != 3) {
+            throw new IllegalArgumentException("Invalid page token " + token);
+        }
+        try {
+            return new Statistics(position[2], Integer.parseInt(position[1]), new Date(Long.parseLong(position[0])),
+                    0L, Collections.<String>emptyList(), null, null, 0, null, null,
+                    Collections.<FailureCauseStatistics>emptyList());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token " + token, e);
+        }
+    }
+
+    /**
+     * Encrypt a position, then append the authentication code of the initialization vector and cipher text
+     *
+     * @param position
+     * @return initialization vector, cipher text and authentication code
+     */
+    private static byte[] seal(byte[] position) {
+        try {
+            byte[] iv = randomBytes(BLOCK_LENGTH);
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.ENCRYPT_MODE, CIPHER_KEY, new IvParameterSpec(iv));
+            byte[] encrypted = cipher.doFinal(position);
+            byte[] sealed = new byte[BLOCK_LENGTH + encrypted.length + BLOCK_LENGTH];
+            System.arraycopy(iv, 0, sealed, 0, BLOCK_LENGTH);
+            System.arraycopy(encrypted, 0, sealed, BLOCK_LENGTH, encrypted.length);
+            byte[] code = authenticate(sealed, sealed.length - BLOCK_LENGTH);
+            System.arraycopy(code, 0, sealed, sealed.length - BLOCK_LENGTH, BLOCK_LENGTH);
+            return sealed;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot encrypt the page token", e);
+        }
+    }
+
+    /**
+     * Check the authentication code of a sealed position, then decrypt it
+     *
+     * @param sealed
+     * @return the position, null if not sealed with the keys of this instance
+     */
+    private static byte[] open(byte[] sealed) {
+        int length = sealed.length - BLOCK_LENGTH;
+        if (length < 2 * BLOCK_LENGTH || length % BLOCK_LENGTH != 0) {
+            return null;
+        }
+        try {
+            byte[] code = Arrays.copyOf(authenticate(sealed, length), BLOCK_LENGTH);
+            // checked before decrypting, so that a forged token tells nothing about the padding
+            if (!MessageDigest.isEqual(code, Arrays.copyOfRange(sealed, length, sealed.length))) {
+                return null;
+            }
+            Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, CIPHER_KEY, new IvParameterSpec(sealed, 0, BLOCK_LENGTH));
+            return cipher.doFinal(sealed, BLOCK_LENGTH, length - BLOCK_LENGTH);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compute the authentication code of the start of bytes
+     *
+     * @param bytes
+     * @param length
+     * @return code
+     * @throws GeneralSecurityException
+     */
+    private static byte[] authenticate(byte[] bytes, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(MAC);
+        mac.init(MAC_KEY);
+        mac.update(bytes, 0, length);
+        return mac.doFinal();
+    }
+
+    /**
+     * Draw random bytes
+     *
+     * @param length
+     * @return bytes
+     */
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * A graph filter compiled once to be matched against many statistics, with the semantics of
+ * {@link StatsFilterUtil#isIncluded(Statistics, GraphFilterBuilder)}.
+ * <p/>
+ * The text criteria are compiled once: a criterion without regular expression metacharacters
+ * is matched as a plain substring, the others with a pattern taken from a cache shared by all
+ * queries. The criteria are evaluated cheapest first and the evaluation stops at the first
+ * criterion not met. Queries of equivalent filters have the same {@link #getKey() key}.
+ * A query {@link #compileLiteral(GraphFilterBuilder) compiled literally}, e.g. from the parameters of
+ * a request, matches all its criteria as plain substrings, so that no pattern given by a user is ever run.
+ * A query is immutable and thread safe.
+ */
+public final class StatsQuery {
+
+    /* Characters having a meaning in a regular expression */
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+    /* Number of patterns kept in the cache */
+    private static final int PATTERN_CACHE_SIZE = 128;
+    /* Compiled patterns by criterion, least recently used first */
+    private static final Map<String, Pattern> PATTERNS = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > PATTERN_CACHE_SIZE;
+        }
+    };
+
+    /* Query matching every statistics */
+    private static final StatsQuery ALL = new StatsQuery(null, false);
+
+    private final TextMatcher excludeResult;
+    private final TextMatcher projectName;
+    private final TextMatcher result;
+    private final TextMatcher masterName;
+    private final TextMatcher slaveName;
+    private final Set<Integer> buildNumbers;
+    private final Date since;
+    /* The normalized criteria */
+    private final String key;
+
+    /**
+     * Constructor of a query
+     *
+     * @param filter the filter, null to match everything
+     * @param literal true to match the text criteria as plain substrings, even with metacharacters
+     */
+    private StatsQuery(GraphFilterBuilder filter, boolean literal) {
+        if (filter == null) {
+            excludeResult = null;
+            projectName = null;
+            result = null;
+            masterName = null;
+            slaveName = null;
+            buildNumbers = null;
+            since = null;
+        } else {
+            excludeResult = TextMatcher.compile(filter.getExcludeResult(), literal);
+            projectName = TextMatcher.compile(filter.getProjectName(), literal);
+            result = TextMatcher.compile(filter.getResult(), literal);
+            masterName = TextMatcher.compile(filter.getMasterName(), literal);
+            slaveName = TextMatcher.compile(filter.getSlaveName(), literal);
+            List<Integer> numbers = filter.getBuildNumbers();
+            buildNumbers = numbers == null ? null : new HashSet<Integer>(numbers);
+            since = filter.getSince() == null ? null : new Date(filter.getSince().getTime());
+        }
+        key = createKey(literal);
+    }
+
+    /**
+     * Compile a filter
+     *
+     * @param filter the filter, null to match everything
+     * @return the query
+     * @throws java.util.regex.PatternSyntaxException if a criterion is not a valid regular expression
+     */
+    public static StatsQuery compile(GraphFilterBuilder filter) {
+        return filter == null ? ALL : new StatsQuery(filter, false);
+    }
+
+    /**
+     * Compile a filter whose text criteria are plain texts, metacharacters included
+     *
+     * @param filter the filter, null to match everything
+     * @return the query
+     */
+    public static StatsQuery compileLiteral(GraphFilterBuilder filter) {
+        return filter == null ? ALL : new StatsQuery(filter, true);
+    }
+
+    /**
+     * Check whether a statistics meets the criteria
+     *
+     * @param stat
+     * @return true if included
+     */
+    public boolean matches(Statistics stat) {
+        if (since != null && (stat.getStartingTime() == null || !since.before(stat.getStartingTime()))) {
+            return false;
+        }
+        if (buildNumbers != null && !buildNumbers.contains(stat.getBuildNumber())) {
+            return false;
+        }
+        return matches(stat.getProjectName(), stat.getResult(), stat.getMaster(), stat.getSlaveHostName());
+    }
+
+    /**
+     * Check whether fields match the text criteria of the query, the date and build numbers left aside
+     *
+     * @param project
+     * @param statResult
+     * @param master
+     * @param slave
+     * @return true if matching
+     */
+    boolean matches(String project, String statResult, String master, String slave) {
+        if (excludeResult != null && excludeResult.matches(statResult)) {
+            return false;
+        }
+        return matches(result, statResult)
+                && matches(projectName, project)
+                && matches(masterName, master)
+                && matches(slaveName, slave);
+    }
+
+    /**
+     * Get the key of the query, the same for queries of equivalent filters
+     *
+     * @return key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Check whether a criterion is a regular expression, expensive to match
+     *
+     * @return true if any
+     */
+    boolean hasPattern() {
+        for (TextMatcher matcher : new TextMatcher[] {excludeResult, projectName, result, masterName, slaveName}) {
+            if (matcher != null && matcher.getLiteral() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the criterion on the project name
+     *
+     * @return criterion, null if none
+     */
+    TextMatcher getProjectName() {
+        return projectName;
+    }
+
+    /**
+     * Get the criterion on the result
+     *
+     * @return criterion, null if none
+     */
+    TextMatcher getResult() {
+        return result;
+    }
+
+    /**
+     * Get the criterion on the master name
+     *
+     * @return criterion, null if none
+     */
+    TextMatcher getMasterName() {
+        return masterName;
+    }
+
+    /**
+     * Get the criterion on the slave host name
+     *
+     * @return criterion, null if none
+     */
+    TextMatcher getSlaveName() {
+        return slaveName;
+    }
+
+    /**
+     * Get the build numbers
+     *
+     * @return build numbers, null if any
+     */
+    Set<Integer> getBuildNumbers() {
+        return buildNumbers;
+    }
+
+    /**
+     * Get the date the builds must have started after
+     *
+     * @return date, null if any
+     */
+    Date getSince() {
+        return since;
+    }
+
+    /**
+     * Check whether a text meets a criterion
+     *
+     * @param matcher the criterion, null if none
+     * @param text
+     * @return true if no criterion or matching
+     */
+    private static boolean matches(TextMatcher matcher, String text) {
+        return matcher == null || matcher.matches(text);
+    }
+
+    /**
+     * Create the key of the query from its normalized criteria, e.g. sorted build numbers
+     *
+     * @param literal true if the text criteria are plain texts
+     * @return key
+     */
+    private String createKey(boolean literal) {
+        StringBuilder builder = new StringBuilder();
+        if (literal) {
+            // "a.b" as a plain text is not the same criterion as "a.b" as a pattern
+            builder.append("l;");
+        }
+        appendKey(builder, "x", excludeResult);
+        appendKey(builder, "p", projectName);
+        appendKey(builder, "r", result);
+        appendKey(builder, "m", masterName);
+        appendKey(builder, "s", slaveName);
+        if (buildNumbers != null) {
+            builder.append("b").append(new TreeSet<Integer>(buildNumbers)).append(';');
+        }
+        if (since != null) {
+            builder.append("t").append(since.getTime()).append(';');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Append a criterion to a key, prefixed with its length so that any text can be told apart
+     *
+     * @param builder
+     * @param name
+     * @param matcher
+     */
+    private static void appendKey(StringBuilder builder, String name, TextMatcher matcher) {
+        if (matcher != null) {
+            String criterion = matcher.getCriterion();
+            builder.append(name).append(criterion.length()).append(':').append(criterion).append(';');
+        }
+    }
+
+    /**
+     * Get the compiled pattern of a criterion, from the cache if compiled before
+     *
+     * @param criterion
+     * @return pattern
+     */
+    private static Pattern getPattern(String criterion) {
+        synchronized (PATTERNS) {
+            Pattern pattern = PATTERNS.get(criterion);
+            if (pattern == null) {
+                pattern = Pattern.compile(".*" + criterion + ".*");
+                PATTERNS.put(criterion, pattern);
+            }
+            return pattern;
+        }
+    }
+
+    /**
+     * A text criterion: found anywhere in the text, as a substring or as a regular expression
+     */
+    static final class TextMatcher {
+
+        private final String criterion;
+        private final String literal;
+        private final Pattern pattern;
+
+        private TextMatcher(String criterion, String literal, Pattern pattern) {
+            this.criterion = criterion;
+            this.literal = literal;
+            this.pattern = pattern;
+        }
+
+        /**
+         * Compile a criterion
+         *
+         * @param criterion
+         * @return matcher, null if no criterion
+         */
+        static TextMatcher compile(String criterion) {
+            return compile(criterion, false);
+        }
+
+        /**
+         * Compile a criterion, as a plain text whatever its characters if asked to
+         *
+         * @param criterion
+         * @param literal true to match the criterion as a plain text
+         * @return matcher, null if no criterion
+         */
+        static TextMatcher compile(String criterion, boolean literal) {
+            if (criterion == null) {
+                return null;
+            }
+            if (literal || isLiteral(criterion)) {
+                return new TextMatcher(criterion, criterion, null);
+            }
+            return new TextMatcher(criterion, null, getPattern(criterion));
+        }
+
+        /**
+         * Check whether the criterion is found in a text
+         *
+         * @param text
+         * @return true if found, false if no text
+         */
+        boolean matches(String text) {
+            if (text == null) {
+                return false;
+            }
+            if (literal != null) {
+                return text.contains(literal);
+            }
+            return pattern.matcher(text).find();
+        }
+
+        /**
+         * Get the criterion as given
+         *
+         * @return criterion
+         */
+        String getCriterion() {
+            return criterion;
+        }
+
+        /**
+         * Get the criterion as a plain text
+         *
+         * @return the text, null if a regular expression
+         */
+        String getLiteral() {
+            return literal;
+        }
+
+        /**
+         * Check whether a criterion has no regular expression metacharacter
+         *
+         * @param criterion
+         * @return true if to be matched as a plain text
+         */
+        private static boolean isLiteral(String criterion) {
+            for (int i = 0; i < criterion.length(); i++) {
+                if (METACHARACTERS.indexOf(criterion.charAt(i)) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the results of stats queries, the graph pages asking for the same stats whenever
+ * they are viewed. Results are kept by query {@link StatsQuery#getKey() key} and limit, the
+ * least recently used being dropped beyond a maximum number of entries.
+ * <p/>
+ * The cache is invalidated incrementally: new stats only drop the results of the queries they
+ * match, the results of the others being unchanged. Hits and misses are counted.
+ * Not thread safe but for the counters, the {@link StatsIndex} owning it synchronizes access.
+ */
+public class StatsQueryCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    /**
+     * A cached result, along with the query it answers
+     */
+    private static final class CachedResult {
+        private final StatsQuery query;
+        private final List<Statistics> result;
+
+        private CachedResult(StatsQuery query, List<Statistics> result) {
+            this.query = query;
+            this.result = result;
+        }
+    }
+
+    /* Cached results by query key and limit, least recently used first */
+    private final Map<String, CachedResult> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructor of a cache with the default maximum number of entries
+     */
+    public StatsQueryCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor of a cache
+     *
+     * @param maxEntries maximum number of results kept
+     */
+    public StatsQueryCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the cached result of a query
+     *
+     * @param query
+     * @param limit
+     * @return a copy of the result, null if not cached
+     */
+    public List<Statistics> get(StatsQuery query, int limit) {
+        CachedResult entry = entries.get(getKey(query, limit));
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new ArrayList<Statistics>(entry.result);
+    }
+
+    /**
+     * Cache the result of a query
+     *
+     * @param query
+     * @param limit
+     * @param result
+     */
+    public void put(StatsQuery query, int limit, List<Statistics> result) {
+        entries.put(getKey(query, limit),
+                new CachedResult(query, Collections.unmodifiableList(new ArrayList<Statistics>(result))));
+    }
+
+    /**
+     * Drop the results of the queries matching new stats
+     *
+     * @param stat
+     */
+    public void invalidate(Statistics stat) {
+        Iterator<CachedResult> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().query.matches(stat)) {
+                it.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drop all the results
+     */
+    public void clear() {
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    /**
+     * Get the number of results cached
+     *
+     * @return size
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of queries answered from the cache
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of queries not found in the cache
+     *
+     * @return misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of results dropped because of new stats
+     *
+     * @return invalidations
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", misses=" + getMisses() + ", invalidations=" + getInvalidations();
+    }
+
+    /**
+     * Get the key of a result
+     *
+     * @param query
+     * @param limit
+     * @return key
+     */
+    private static String getKey(StatsQuery query, int limit) {
+        return limit + "|" + query.getKey();
+    }
+}
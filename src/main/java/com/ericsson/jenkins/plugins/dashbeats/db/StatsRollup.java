@@ -0,0 +1,382 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.statistics.FailureCauseStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedMap;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Counters of the statistics, maintained as they are added, answering the aggregate queries of
+ * the graphs without going through the statistics themselves.
+ * <p/>
+ * The statistics are counted per hour, project, result, master and slave, along with their
+ * failure causes. A query is answered from the counters of the hours after its date, and from
+ * the statistics of the hour of its date only, since part of them is older than the date.
+ * The criteria on text fields apply to the counters as they do to statistics. A query on build
+ * numbers cannot be answered from the counters and needs the statistics, see {@link #canAnswer(StatsQuery)}.
+ * The slices are hours of UTC, so they can be counted per local period only in a time zone whose offsets
+ * are whole hours, see {@link #canCountPerPeriod(TimeZone)}.
+ * <p/>
+ * Not thread safe, guarded by the {@link StatsIndex} owning it.
+ */
+public class StatsRollup {
+
+    /**
+     * Dimensions the statistics are counted by
+     */
+    public enum Dimension {
+        /* Occurrences of every failure cause, by id */
+        CAUSE,
+        /* Builds of every project */
+        PROJECT,
+        /* Builds of every node, by slave host name */
+        NODE
+    }
+
+    /* Length of a slice of time in milliseconds */
+    static final long SLICE_LENGTH = 3600000L;
+    /* Slice of the statistics without starting time */
+    private static final long UNDATED = Long.MIN_VALUE;
+
+    /* Counters by slice start, then by project, result, master and slave */
+    private final NavigableMap<Long, Map<String, Counter>> slices = new TreeMap<Long, Map<String, Counter>>();
+    private int size;
+
+    /**
+     * Count a statistics
+     *
+     * @param stat
+     */
+    public void add(Statistics stat) {
+        long slice = getSlice(stat);
+        Map<String, Counter> counters = slices.get(slice);
+        if (counters == null) {
+            counters = new HashMap<String, Counter>();
+            slices.put(slice, counters);
+        }
+        String key = stat.getProjectName() + '\n' + stat.getResult() + '\n' + stat.getMaster()
+                + '\n' + stat.getSlaveHostName();
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = new Counter(stat, slice);
+            counters.put(key, counter);
+            size++;
+        }
+        counter.add(stat);
+    }
+
+    /**
+     * Get the number of counters, much smaller than the number of statistics counted
+     *
+     * @return size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether a query can be answered from the counters
+     *
+     * @param query
+     * @return true unless the query needs the statistics
+     */
+    public static boolean canAnswer(StatsQuery query) {
+        return query.getBuildNumbers() == null;
+    }
+
+    /**
+     * Check whether the counters can be counted per period of a time zone, its offsets being whole slices,
+     * e.g. not in India at +05:30 where the local hours start in the middle of the slices
+     *
+     * @param timeZone
+     * @return true unless the statistics are to be counted one by one
+     */
+    public static boolean canCountPerPeriod(TimeZone timeZone) {
+        return timeZone.getRawOffset() % SLICE_LENGTH == 0 && timeZone.getDSTSavings() % SLICE_LENGTH == 0;
+    }
+
+    /**
+     * Get the end of the slice of a date, the statistics started from then on being counted
+     * in slices newer than the date
+     *
+     * @param date
+     * @return time in milliseconds
+     */
+    public static long getSliceEnd(Date date) {
+        return floor(date.getTime()) + SLICE_LENGTH;
+    }
+
+    /**
+     * Count the statistics matching a query by a dimension
+     *
+     * @param query a query the counters can answer
+     * @param dimension
+     * @param boundary the statistics started after the date of the query and before the end of its slice
+     * @return number by value of the dimension
+     */
+    public Map<String, Integer> count(StatsQuery query, Dimension dimension, Collection<Statistics> boundary) {
+        return count(select(query, boundary), dimension);
+    }
+
+    /**
+     * Count the statistics matching a query by period of time
+     *
+     * @param query a query the counters can answer
+     * @param period the calendar field of the periods, e.g. {@link Calendar#HOUR_OF_DAY} or {@link Calendar#DATE}
+     * @param boundary the statistics started after the date of the query and before the end of its slice
+     * @return number by start of period
+     */
+    public SortedMap<Date, Integer> countPerPeriod(StatsQuery query, int period, Collection<Statistics> boundary) {
+        return countPerPeriod(select(query, boundary), period);
+    }
+
+    /**
+     * Count statistics by a dimension, e.g. when the query needs the statistics
+     *
+     * @param statistics
+     * @param dimension
+     * @return number by value of the dimension
+     */
+    public static Map<String, Integer> count(Collection<Statistics> statistics, Dimension dimension) {
+        return count(toCounters(statistics), dimension);
+    }
+
+    /**
+     * Count statistics by period of time, e.g. when the query needs the statistics
+     *
+     * @param statistics
+     * @param period the calendar field of the periods
+     * @return number by start of period
+     */
+    public static SortedMap<Date, Integer> countPerPeriod(Collection<Statistics> statistics, int period) {
+        return countPerPeriod(toCounters(statistics), period);
+    }
+
+    /**
+     * Select the counters matching a query, completed with the matching statistics of the slice of its date
+     *
+     * @param query
+     * @param boundary
+     * @return counters
+     */
+    private List<Counter> select(StatsQuery query, Collection<Statistics> boundary) {
+        List<Counter> selected = new ArrayList<Counter>();
+        Date since = query.getSince();
+        Map<Long, Map<String, Counter>> range = since == null ? slices : slices.tailMap(getSliceEnd(since), true);
+        for (Map<String, Counter> counters : range.values()) {
+            for (Counter counter : counters.values()) {
+                if (query.matches(counter.project, counter.result, counter.master, counter.slave)) {
+                    selected.add(counter);
+                }
+            }
+        }
+        if (since != null) {
+            for (Statistics stat : boundary) {
+                if (query.matches(stat)) {
+                    selected.add(new Counter(stat, getSlice(stat)).add(stat));
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Sum counters by a dimension
+     *
+     * @param counters
+     * @param dimension
+     * @return number by value of the dimension, those without value left out
+     */
+    private static Map<String, Integer> count(List<Counter> counters, Dimension dimension) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Counter counter : counters) {
+            switch (dimension) {
+            case CAUSE:
+                for (Map.Entry<String, Integer> cause : counter.causes.entrySet()) {
+                    increment(counts, cause.getKey(), cause.getValue());
+                }
+                break;
+            case PROJECT:
+                increment(counts, counter.project, counter.builds);
+                break;
+            default:
+                increment(counts, counter.slave, counter.builds);
+                break;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Sum counters by period of time
+     *
+     * @param counters
+     * @param period
+     * @return number by start of period, the undated counters left out
+     */
+    private static SortedMap<Date, Integer> countPerPeriod(List<Counter> counters, int period) {
+        SortedMap<Date, Integer> counts = new TreeMap<Date, Integer>();
+        Calendar calendar = Calendar.getInstance();
+        for (Counter counter : counters) {
+            if (counter.slice == UNDATED) {
+                continue;
+            }
+            calendar.setTimeInMillis(counter.slice);
+            truncate(calendar, period);
+            Date start = calendar.getTime();
+            Integer count = counts.get(start);
+            counts.put(start, count == null ? counter.builds : count + counter.builds);
+        }
+        return counts;
+    }
+
+    /**
+     * Count statistics one by one
+     *
+     * @param statistics
+     * @return a counter per statistics
+     */
+    private static List<Counter> toCounters(Collection<Statistics> statistics) {
+        List<Counter> counters = new ArrayList<Counter>(statistics.size());
+        for (Statistics stat : statistics) {
+            counters.add(new Counter(stat, getSlice(stat)).add(stat));
+        }
+        return counters;
+    }
+
+    /**
+     * Truncate a calendar to the start of a period, the fields below the period being cleared
+     *
+     * @param calendar
+     * @param period
+     */
+    private static void truncate(Calendar calendar, int period) {
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        if (period == Calendar.HOUR_OF_DAY || period == Calendar.HOUR) {
+            return;
+        }
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        if (period == Calendar.DATE || period == Calendar.DAY_OF_MONTH || period == Calendar.DAY_OF_YEAR) {
+            return;
+        }
+        if (period == Calendar.WEEK_OF_YEAR) {
+            calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+            return;
+        }
+        calendar.set(Calendar.DATE, 1);
+        if (period == Calendar.MONTH) {
+            return;
+        }
+        calendar.set(Calendar.MONTH, Calendar.JANUARY);
+    }
+
+    /**
+     * Add a number to a count, unless there is no key
+     *
+     * @param counts
+     * @param key
+     * @param number
+     */
+    private static void increment(Map<String, Integer> counts, String key, int number) {
+        if (key != null) {
+            Integer count = counts.get(key);
+            counts.put(key, count == null ? number : count + number);
+        }
+    }
+
+    /**
+     * Get the start of the slice of a statistics
+     *
+     * @param stat
+     * @return time in milliseconds, {@link #UNDATED} without starting time
+     */
+    private static long getSlice(Statistics stat) {
+        Date start = stat.getStartingTime();
+        return start == null ? UNDATED : floor(start.getTime());
+    }
+
+    /**
+     * Get the start of the slice of a time
+     *
+     * @param time
+     * @return time in milliseconds
+     */
+    private static long floor(long time) {
+        long remainder = time % SLICE_LENGTH;
+        return remainder < 0 ? time - remainder - SLICE_LENGTH : time - remainder;
+    }
+
+    /**
+     * Number of builds and failure causes of statistics sharing their slice and fields
+     */
+    private static final class Counter {
+        private final String project;
+        private final String result;
+        private final String master;
+        private final String slave;
+        private final long slice;
+        private int builds;
+        /* Occurrences by failure cause id */
+        private final Map<String, Integer> causes = new HashMap<String, Integer>(4);
+
+        private Counter(Statistics stat, long slice) {
+            this.project = stat.getProjectName();
+            this.result = stat.getResult();
+            this.master = stat.getMaster();
+            this.slave = stat.getSlaveHostName();
+            this.slice = slice;
+        }
+
+        /**
+         * Count a statistics
+         *
+         * @param stat
+         * @return this counter
+         */
+        private Counter add(Statistics stat) {
+            builds++;
+            List<FailureCauseStatistics> found = stat.getFailureCauseStatisticsList();
+            if (found != null) {
+                for (FailureCauseStatistics cause : found) {
+                    increment(causes, cause.getId(), 1);
+                }
+            }
+            return this;
+        }
+    }
+}
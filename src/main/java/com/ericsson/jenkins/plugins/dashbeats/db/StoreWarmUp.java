@@ -0,0 +1,304 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The progress of the loading of the stats store in the background, once the knowledge base has started.
+ * <p/>
+ * The stats saved while the store is loading are buffered, to be applied once it is loaded,
+ * so that builds completing right after a restart do not wait for the loading. The loading
+ * is complete only once the buffer is empty: a stats object is either buffered before, or
+ * saved as usual after.
+ * <p/>
+ * The buffer is bounded: once full, the stats saved while loading are dropped and counted,
+ * rather than holding the memory of Jenkins should the loading never end.
+ */
+public class StoreWarmUp {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StoreWarmUp.class.getName());
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger(StoreWarmUp.class.getName() + ".capacity", 10000);
+
+    /**
+     * State of the warm-up
+     */
+    public enum State {
+        PENDING,
+        LOADING,
+        WAITING_FOR_CAUSES,
+        AGGREGATING,
+        REPLAYING,
+        READY
+    }
+
+    private volatile State state = State.PENDING;
+    /* Number of stats in the store file, and number loaded so far */
+    private volatile int total;
+    private final AtomicInteger loaded = new AtomicInteger();
+    /* Stats saved while loading, in the order they were saved */
+    private final List<Statistics> buffer = new ArrayList<Statistics>();
+    /* Largest number of stats buffered, and number dropped beyond */
+    private final int capacity;
+    private int dropped;
+    private final CountDownLatch ready = new CountDownLatch(1);
+    /* Released once the causes are reloaded by BFA, the stats being compiled only then */
+    private final CountDownLatch causes = new CountDownLatch(1);
+    private volatile long startTime;
+    private volatile long endTime;
+
+    /**
+     * Default constructor, buffering up to the default capacity
+     */
+    public StoreWarmUp() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity largest number of stats buffered while loading
+     */
+    public StoreWarmUp(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Check whether the store is loaded, stats being saved as usual
+     *
+     * @return true if loaded
+     */
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    /**
+     * Get the number of stats in the store file
+     *
+     * @return total, 0 until the file is read
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Get the number of stats loaded so far
+     *
+     * @return loaded
+     */
+    public int getLoaded() {
+        return loaded.get();
+    }
+
+    /**
+     * Get the number of stats saved while loading, not applied yet
+     *
+     * @return buffered
+     */
+    public synchronized int getBuffered() {
+        return buffer.size();
+    }
+
+    /**
+     * Get the number of stats saved while loading and dropped, the buffer being full
+     * or the warm-up having failed
+     *
+     * @return dropped
+     */
+    public synchronized int getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Get the progress of the loading
+     *
+     * @return percentage, 100 once ready
+     */
+    public int getProgress() {
+        if (isReady()) {
+            return 100;
+        }
+        int expected = total;
+        return expected == 0 ? 0 : (int) Math.min(99, 100L * loaded.get() / expected);
+    }
+
+    /**
+     * Get the time the warm-up took
+     *
+     * @return milliseconds, so far if not ready
+     */
+    public long getDuration() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return (isReady() ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    /**
+     * Wait until the store is loaded
+     *
+     * @param timeout
+     * @param unit
+     * @return true if loaded, false if the timeout elapsed
+     * @throws InterruptedException
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /**
+     * Buffer stats saved while loading
+     *
+     * @param stat
+     * @return true if buffered or dropped, the buffer being full, false if the store is loaded
+     * and the stats must be saved as usual
+     */
+    public synchronized boolean buffer(Statistics stat) {
+        if (state == State.READY) {
+            return false;
+        }
+        if (buffer.size() >= capacity) {
+            if (dropped++ == 0) {
+                LOGGER.error("DashBeats store still loading, {} stats buffered : dropping the stats of {} #{}"
+                        + " and the next ones until loaded", new Object[] {capacity, stat.getProjectName(),
+                        stat.getBuildNumber()});
+            }
+            return true;
+        }
+        buffer.add(stat);
+        return true;
+    }
+
+    /**
+     * Start the loading of the store
+     */
+    void start() {
+        startTime = System.currentTimeMillis();
+        state = State.LOADING;
+    }
+
+    /**
+     * Tell the causes are reloaded, the loaded stats can be compiled
+     */
+    void causesLoaded() {
+        causes.countDown();
+    }
+
+    /**
+     * Wait until the causes are reloaded
+     *
+     * @param timeout
+     * @param unit
+     * @return true if reloaded, false if the timeout elapsed
+     * @throws InterruptedException
+     */
+    boolean awaitCauses(long timeout, TimeUnit unit) throws InterruptedException {
+        if (causes.getCount() > 0) {
+            state = State.WAITING_FOR_CAUSES;
+        }
+        return causes.await(timeout, unit);
+    }
+
+    /**
+     * Start compiling the loaded stats
+     */
+    void aggregating() {
+        state = State.AGGREGATING;
+    }
+
+    /**
+     * Set the number of stats to be loaded
+     *
+     * @param total
+     */
+    void setTotal(int total) {
+        this.total = total;
+    }
+
+    /**
+     * Count a stats object loaded
+     */
+    void loaded() {
+        loaded.incrementAndGet();
+    }
+
+    /**
+     * Take the stats buffered so far, once the store is loaded
+     *
+     * @return stats buffered, in order
+     */
+    synchronized List<Statistics> drain() {
+        state = State.REPLAYING;
+        List<Statistics> drained = new ArrayList<Statistics>(buffer);
+        buffer.clear();
+        return drained;
+    }
+
+    /**
+     * Complete the warm-up, unless stats were buffered since the last drain
+     *
+     * @return true if complete, false if stats are left to be drained
+     */
+    synchronized boolean complete() {
+        if (!buffer.isEmpty()) {
+            return false;
+        }
+        endTime = System.currentTimeMillis();
+        state = State.READY;
+        ready.countDown();
+        return true;
+    }
+
+    /**
+     * End the warm-up whatever its outcome, e.g. the loading failed, the stats left buffered
+     * being dropped so that the stats are saved as usual from now on
+     *
+     * @return number of stats dropped, 0 if already complete
+     */
+    synchronized int end() {
+        if (state == State.READY) {
+            return 0;
+        }
+        int left = buffer.size();
+        dropped += left;
+        buffer.clear();
+        endTime = System.currentTimeMillis();
+        state = State.READY;
+        ready.countDown();
+        return left;
+    }
+}
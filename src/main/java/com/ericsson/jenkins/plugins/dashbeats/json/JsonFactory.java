@@ -23,7 +23,11 @@
  */
 package com.ericsson.jenkins.plugins.dashbeats.json;
 
+import com.ericsson.jenkins.plugins.dashbeats.metrics.DashBeatsMetrics;
 import com.ericsson.jenkins.plugins.dashbeats.model.*;
+import com.ericsson.jenkins.plugins.dashbeats.widget.DashBeatsWidget;
+import com.ericsson.jenkins.plugins.dashbeats.widget.WidgetRenderer;
+import com.ericsson.jenkins.plugins.dashbeats.widget.WidgetRegistry;
 
 import net.sf.json.JSONObject;
 
@@ -32,12 +36,22 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import jenkins.model.Jenkins;
 
 /**
  * JsonFactory creates json objects by extracting data from a stat summary.
+ * Items of the list widgets do not carry the authorization token, only the
+ * widget content created with {@link #createJson()} does.
+ * <p/>
+ * Besides the json objects, the factory streams the same content with a {@link JsonWriter}:
+ * {@link #render(StatsSummary)} encodes the content of every widget once, and
+ * {@link #writePayload(JsonWriter, byte[])} completes it with the authorization token
+ * into a reusable buffer, ready to be posted. Every widget is rendered by its own
+ * {@link WidgetRenderer}, from the row writers below for the built-in widgets.
  *
  * Created by ekongto on 2014-09-10.
  */
@@ -47,6 +61,15 @@ public class JsonFactory {
 
     /* The DashBeats authorization token */
     private String authToken;
+    /* Writer reused to render summaries */
+    private final JsonWriter writer = new JsonWriter();
+
+    /* The widgets rendered, all the registered ones if null until first needed */
+    private List<DashBeatsWidget> widgets;
+    /* The renderer of every widget, kept from one summary to the next */
+    private Map<DashBeatsWidget, WidgetRenderer> renderers;
+    /* The summary last rendered */
+    private RenderedSummary previous;
 
     /**
      * Constructor, instantiate a json factory.
@@ -54,7 +77,30 @@ public class JsonFactory {
      * @param authToken
      */
     public JsonFactory(String authToken) {
+        this(authToken, null);
+    }
+
+    /**
+     * Constructor of a json factory rendering some widgets.
+     *
+     * @param authToken
+     * @param widgets the widgets rendered, all the registered ones if null
+     */
+    public JsonFactory(String authToken, List<DashBeatsWidget> widgets) {
         this.authToken = authToken;
+        this.widgets = widgets;
+    }
+
+    /**
+     * Get the widgets rendered
+     *
+     * @return widgets
+     */
+    public synchronized List<DashBeatsWidget> getWidgets() {
+        if (widgets == null) {
+            widgets = WidgetRegistry.all();
+        }
+        return widgets;
     }
 
     /**
@@ -68,19 +114,248 @@ public class JsonFactory {
         return jsonObject;
     }
 
+    /**
+     * Render the content of all widgets from a summary, without authorization token,
+     * to be shared by all the DashBeats servers it is published to. The renderers keep
+     * what they rendered, e.g. only the rows of the items which changed since the previous
+     * summary are rendered again. A widget failing to render keeps its previous content,
+     * so that a faulty widget contributed by another plugin does not stop the others.
+     *
+     * @param summary
+     * @return the rendered summary
+     */
+    public synchronized RenderedSummary render(StatsSummary summary) {
+        String rootUrl = getRootUrl();
+        if (renderers == null) {
+            renderers = new LinkedHashMap<DashBeatsWidget, WidgetRenderer>();
+            for (DashBeatsWidget widget : getWidgets()) {
+                renderers.put(widget, widget.createRenderer(this));
+            }
+        }
+        DashBeatsMetrics metrics = DashBeatsMetrics.getInstance();
+        long start = System.nanoTime();
+        Map<DashBeatsWidget, byte[]> contents = new LinkedHashMap<DashBeatsWidget, byte[]>();
+        for (Map.Entry<DashBeatsWidget, WidgetRenderer> renderer : renderers.entrySet()) {
+            DashBeatsWidget widget = renderer.getKey();
+            long widgetStart = System.nanoTime();
+            try {
+                contents.put(widget, renderer.getValue().render(summary, rootUrl, writer));
+            } catch (RuntimeException e) {
+                metrics.errors(DashBeatsMetrics.RENDER).increment();
+                LOGGER.warn("Failed to render the DashBeats widget " + widget.getName(), e);
+                byte[] content = previous == null ? null : previous.getContent(widget);
+                contents.put(widget, content == null ? new byte[0] : content);
+            }
+            metrics.histogram(DashBeatsMetrics.RENDER + "." + widget.getId()).recordSince(widgetStart);
+        }
+        metrics.histogram(DashBeatsMetrics.RENDER).recordSince(start);
+        previous = new RenderedSummary(summary, contents);
+        return previous;
+    }
+
+    /**
+     * Render the content of the welcome widget, without authorization token
+     *
+     * @return the encoded members of the welcome widget
+     */
+    public synchronized byte[] renderWelcome() {
+        return renderWelcome(createWelcomeText());
+    }
+
+    /**
+     * Write the payload of a widget: its content completed with the authorization token.
+     * The writer is reset first.
+     *
+     * @param payloadWriter
+     * @param members encoded members of the widget content
+     */
+    public void writePayload(JsonWriter payloadWriter, byte[] members) {
+        payloadWriter.reset()
+                .beginObject()
+                .name("auth_token").value(authToken)
+                .members(members)
+                .endObject();
+    }
+
+    /**
+     * Write the members of the welcome widget
+     *
+     * @param out
+     * @param welcome the text
+     */
+    public void writeWelcome(JsonWriter out, String welcome) {
+        out.name("text").value(welcome);
+    }
+
+    /**
+     * Write a row of the 'common fault causes' widget
+     *
+     * @param out
+     * @param data
+     */
+    public void writeCommonFaultCause(JsonWriter out, FaultCauseInfo data) {
+        out.beginObject().name("label").beginString()
+                .append(data.getCauseName()).append("  ")
+                .append(" (");
+        appendCategories(out, data.getCategories());
+        out.append(")")
+                .append(" failures(").append(data.getFailures()).append(")")
+                .endString().endObject();
+    }
+
+    /**
+     * Write a row of the 'latest failed builds' widget
+     *
+     * @param out
+     * @param data
+     * @param rootUrl
+     */
+    public void writeLatestFailedBuild(JsonWriter out, BuildInfo data, String rootUrl) {
+        out.beginObject()
+                .name("col1").value(data.getJob())
+                .name("col2").beginString().append("#").append(data.getBuildNumber()).endString()
+                .name("url").beginString().append(rootUrl).append("/job/").append(data.getJob())
+                .append("/").append(data.getBuildNumber()).endString()
+                .endObject();
+    }
+
+    /**
+     * Write a row of the 'latest builds' widget
+     *
+     * @param out
+     * @param data
+     * @param rootUrl
+     */
+    public void writeLatestBuild(JsonWriter out, BuildInfo data, String rootUrl) {
+        out.beginObject()
+                .name("col1").beginString()
+                .append(data.getJob())
+                .append("  #").append(data.getBuildNumber())
+                .append("  ").append(data.getResult())
+                .append("  total(").append(data.getTotal()).append(")")
+                .append("  successes(").append(data.getSuccesses()).append(")")
+                .append("  failures(").append(data.getFailures()).append(")")
+                .append("  unstables(").append(data.getUnstables()).append(")")
+                .append("  aborts(").append(data.getAborts()).append(")")
+                .append("  fail rate(").append(data.getRateOfFailure()).append("%)")
+                .endString()
+                .name("col2").value("")
+                .name("url").beginString().append(rootUrl).append("/job/").append(data.getJob())
+                .append("/").append(data.getBuildNumber()).endString()
+                .endObject();
+    }
+
+    /**
+     * Write a row of the 'top failed jobs' widget
+     *
+     * @param out
+     * @param data
+     * @param rootUrl
+     */
+    public void writeTopFailedJob(JsonWriter out, BuildInfo data, String rootUrl) {
+        out.beginObject()
+                .name("col1").value(data.getJob())
+                .name("col2").beginString().append("failures(").append(data.getFailures()).append(")").endString()
+                .name("url").beginString().append(rootUrl).append("/job/").append(data.getJob())
+                .append("/").endString()
+                .endObject();
+    }
+
+    /**
+     * Write the members of the 'configure failure causes' link widget
+     *
+     * @param out
+     * @param rootUrl
+     */
+    public void writeConfigureFailureCauses(JsonWriter out, String rootUrl) {
+        out.name("url").beginString().append(rootUrl).append("/failure-cause-management/").endString()
+                .name("text").value("Configure Failure Causes");
+    }
+
+    /**
+     * Get the Jenkins root url, used in the links of the widgets
+     *
+     * @return root url
+     */
+    protected String getRootUrl() {
+        return Jenkins.getInstance().getRootUrl();
+    }
+
+    /**
+     * Append the categories separated by '/' as {@link FaultCauseInfo#getCategoriesAsString()} does
+     *
+     * @param out
+     * @param categories
+     */
+    private void appendCategories(JsonWriter out, List<String> categories) {
+        if (categories == null || categories.isEmpty()) {
+            out.append((String) null);
+            return;
+        }
+        boolean first = true;
+        for (String item : categories) {
+            if (!first) {
+                out.append("/");
+            }
+            out.append(item);
+            first = false;
+        }
+    }
+
+    /**
+     * Render the members of the welcome widget
+     *
+     * @param welcome
+     * @return encoded members
+     */
+    private byte[] renderWelcome(String welcome) {
+        writeWelcome(writer.reset(), welcome);
+        return writer.toByteArray();
+    }
+
     /**
      * create a welcome json object to be published to DashBeats server
      *
      * @return
      */
     public JSONObject createWelcome() {
-        String welcome = "DashBeats statistics update at " + new Date();
+        return createWelcome(createWelcomeText());
+    }
+
+    /**
+     * create a welcome json object with the given text
+     *
+     * @param welcome
+     * @return
+     */
+    public JSONObject createWelcome(String welcome) {
         JSONObject jsonObject = createJson();
         jsonObject.put("text", welcome);
         LOGGER.debug("Created a welcome content : {}", jsonObject);
         return jsonObject;
     }
 
+    /**
+     * create the 'configure failure causes' link json object, without authorization token
+     *
+     * @return
+     */
+    public JSONObject createConfigureFailureCauses() {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("url", getRootUrl() + "/failure-cause-management/");
+        jsonObject.put("text", "Configure Failure Causes");
+        return jsonObject;
+    }
+
+    /**
+     * create the text of the welcome widget
+     *
+     * @return
+     */
+    public String createWelcomeText() {
+        return "DashBeats statistics update at " + new Date();
+    }
+
     /**
      * create a 'common fault causes' json object to be published to DashBeats server
      *
@@ -90,7 +365,7 @@ public class JsonFactory {
         List<JSONObject> list = new ArrayList<JSONObject>();
         JSONObject jsonObject;
         for (FaultCauseInfo data : summary.getCommonFaultCauses()) {
-            jsonObject = createJson();
+            jsonObject = new JSONObject();
             StringBuilder jsonContent = new StringBuilder("")
             .append(data.getCauseName()).append("  ")
             .append(" (").append(data.getCategoriesAsString()).append(")")
@@ -109,12 +384,13 @@ public class JsonFactory {
      */
     public List<JSONObject> createLatestFailedBuilds(StatsSummary summary) {
         List<JSONObject> list = new ArrayList<JSONObject>();
+        String rootUrl = getRootUrl();
         JSONObject jsonObject;
         for (BuildInfo data : summary.getLatestFailedBuilds()) {
-            jsonObject = createJson();
+            jsonObject = new JSONObject();
             jsonObject.put("col1", data.getJob());
             jsonObject.put("col2", "#" + data.getBuildNumber());
-            jsonObject.put("url", Jenkins.getInstance().getRootUrl() + "/job/" + data.getJob() + "/" + data.getBuildNumber());
+            jsonObject.put("url", rootUrl + "/job/" + data.getJob() + "/" + data.getBuildNumber());
             list.add(jsonObject);
             LOGGER.debug("Created a latest failed build content : {}", jsonObject);
         }
@@ -128,9 +404,10 @@ public class JsonFactory {
      */
     public List<JSONObject> createLatestBuilds(StatsSummary summary) {
         List<JSONObject> list = new ArrayList<JSONObject>();
+        String rootUrl = getRootUrl();
         JSONObject jsonObject;
         for (BuildInfo data : summary.getLatestBuilds()) {
-            jsonObject = createJson();
+            jsonObject = new JSONObject();
             StringBuilder jsonContent = new StringBuilder("")
             .append(data.getJob())
             .append("  #").append(data.getBuildNumber())
@@ -143,7 +420,7 @@ public class JsonFactory {
             .append("  fail rate(").append(data.getRateOfFailure()).append("%)");
             jsonObject.put("col1", jsonContent.toString());
             jsonObject.put("col2", "");
-            jsonObject.put("url", Jenkins.getInstance().getRootUrl() + "/job/" + data.getJob() + "/" + data.getBuildNumber());
+            jsonObject.put("url", rootUrl + "/job/" + data.getJob() + "/" + data.getBuildNumber());
             list.add(jsonObject);
             LOGGER.debug("Created a latest build content : {}", jsonObject);
         }
@@ -158,12 +435,13 @@ public class JsonFactory {
      */
     public List<JSONObject> createTopFailedJobs(StatsSummary summary) {
         List<JSONObject> list = new ArrayList<JSONObject>();
+        String rootUrl = getRootUrl();
         JSONObject jsonObject;
         for (BuildInfo data : summary.getTopFailedJobs()) {
-            jsonObject = createJson();
+            jsonObject = new JSONObject();
             jsonObject.put("col1", data.getJob());
             jsonObject.put("col2", "failures(" + data.getFailures() + ")");
-            jsonObject.put("url", Jenkins.getInstance().getRootUrl() + "/job/" + data.getJob() + "/");
+            jsonObject.put("url", rootUrl + "/job/" + data.getJob() + "/");
             list.add(jsonObject);
             LOGGER.debug("Created a top failed build content : {}", jsonObject);
         }
@@ -0,0 +1,446 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.json;
+
+import java.util.Arrays;
+
+/**
+ * A streaming json writer encoding directly to UTF-8 into a growable byte buffer.
+ * <p/>
+ * The writer is meant to be reused: {@link #reset()} keeps the buffer, so once it has grown
+ * to the size of the largest payload, writing a payload allocates nothing. String values
+ * can be composed from several parts with {@link #beginString()}, {@link #append(String)}
+ * and {@link #endString()}, without building the string first.
+ * <p/>
+ * The writer does not validate the structure, it only takes care of separators and escaping.
+ * It is not thread safe.
+ */
+public class JsonWriter {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_DEPTH = 32;
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    /* Largest magnitude for which a double is printed by Double.toString without exponent */
+    private static final double PLAIN_DOUBLE_LIMIT = 1e7;
+
+    private byte[] buf;
+    private int count;
+    /* Whether a value has been written at the given depth, i.e. a comma is needed before the next one */
+    private final boolean[] hasValue = new boolean[MAX_DEPTH];
+    private int depth;
+    /* Set after a name, the value following needs no comma */
+    private boolean afterName;
+    /* Digits of a number being written, in reverse order */
+    private final byte[] digits = new byte[20];
+
+    /**
+     * Constructor of a writer with a default capacity
+     */
+    public JsonWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor of a writer
+     *
+     * @param capacity initial size of the buffer
+     */
+    public JsonWriter(int capacity) {
+        this.buf = new byte[capacity];
+    }
+
+    /**
+     * Clear the content, keeping the buffer
+     *
+     * @return this writer
+     */
+    public JsonWriter reset() {
+        count = 0;
+        depth = 0;
+        hasValue[0] = false;
+        afterName = false;
+        return this;
+    }
+
+    /**
+     * Get the number of bytes written
+     *
+     * @return size
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the buffer, valid up to {@link #size()}. The buffer is reused by next writes.
+     *
+     * @return the internal buffer
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    /**
+     * Copy the content
+     *
+     * @return a copy of the bytes written
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    /**
+     * Start an object
+     *
+     * @return this writer
+     */
+    public JsonWriter beginObject() {
+        beforeValue();
+        write('{');
+        push();
+        return this;
+    }
+
+    /**
+     * End an object
+     *
+     * @return this writer
+     */
+    public JsonWriter endObject() {
+        depth--;
+        write('}');
+        return this;
+    }
+
+    /**
+     * Start an array
+     *
+     * @return this writer
+     */
+    public JsonWriter beginArray() {
+        beforeValue();
+        write('[');
+        push();
+        return this;
+    }
+
+    /**
+     * End an array
+     *
+     * @return this writer
+     */
+    public JsonWriter endArray() {
+        depth--;
+        write(']');
+        return this;
+    }
+
+    /**
+     * Write the name of a member
+     *
+     * @param name
+     * @return this writer
+     */
+    public JsonWriter name(String name) {
+        beforeValue();
+        write('"');
+        escape(name);
+        write('"');
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Write a string value, or null
+     *
+     * @param value
+     * @return this writer
+     */
+    public JsonWriter value(String value) {
+        if (value == null) {
+            beforeValue();
+            write(NULL, 0, NULL.length);
+            return this;
+        }
+        return beginString().append(value).endString();
+    }
+
+    /**
+     * Write a number value
+     *
+     * @param value
+     * @return this writer
+     */
+    public JsonWriter value(long value) {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * Start a string value, to be composed with the append methods
+     *
+     * @return this writer
+     */
+    public JsonWriter beginString() {
+        beforeValue();
+        write('"');
+        return this;
+    }
+
+    /**
+     * Append text to the string being written, null being appended as "null" like a StringBuilder does
+     *
+     * @param text
+     * @return this writer
+     */
+    public JsonWriter append(String text) {
+        if (text == null) {
+            write(NULL, 0, NULL.length);
+        } else {
+            escape(text);
+        }
+        return this;
+    }
+
+    /**
+     * Append a number to the string being written
+     *
+     * @param number
+     * @return this writer
+     */
+    public JsonWriter append(long number) {
+        writeLong(number);
+        return this;
+    }
+
+    /**
+     * Append a number to the string being written, formatted as Double.toString does
+     *
+     * @param number
+     * @return this writer
+     */
+    public JsonWriter append(double number) {
+        if (number == Math.rint(number) && Math.abs(number) < PLAIN_DOUBLE_LIMIT) {
+            if (number == 0 && 1 / number < 0) {
+                write('-');
+            }
+            writeLong((long) number);
+            write('.');
+            write('0');
+        } else {
+            escape(Double.toString(number));
+        }
+        return this;
+    }
+
+    /**
+     * End the string being written
+     *
+     * @return this writer
+     */
+    public JsonWriter endString() {
+        write('"');
+        return this;
+    }
+
+    /**
+     * Write a value already encoded, e.g. an element of an array rendered earlier
+     *
+     * @param encoded the encoded value
+     * @return this writer
+     */
+    public JsonWriter value(byte[] encoded) {
+        beforeValue();
+        write(encoded, 0, encoded.length);
+        return this;
+    }
+
+    /**
+     * Write members already encoded, e.g. <code>"items":[...]</code>, into the current object
+     *
+     * @param members encoded members
+     * @return this writer
+     */
+    public JsonWriter members(byte[] members) {
+        if (members.length > 0) {
+            beforeValue();
+            write(members, 0, members.length);
+        }
+        return this;
+    }
+
+    /**
+     * Write a separator if a value precedes at the current depth
+     */
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+        } else if (hasValue[depth]) {
+            write(',');
+        }
+        hasValue[depth] = true;
+    }
+
+    /**
+     * Enter an object or an array
+     */
+    private void push() {
+        depth++;
+        hasValue[depth] = false;
+    }
+
+    /**
+     * Write a number in decimal
+     *
+     * @param value
+     */
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            escape(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensureCapacity(n);
+        while (n > 0) {
+            buf[count++] = digits[--n];
+        }
+    }
+
+    /**
+     * Write a text escaped for a json string, encoded in UTF-8
+     *
+     * @param text
+     */
+    private void escape(String text) {
+        int length = text.length();
+        // worst case is 6 bytes per char, e.g. an escaped control character
+        ensureCapacity(length * 6);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                buf[count++] = '\\';
+                buf[count++] = (byte) c;
+            } else if (c < 0x20) {
+                escapeControl(c);
+            } else if (c < 0x80) {
+                buf[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[count++] = (byte) (0xc0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buf[count++] = (byte) (0xf0 | (codePoint >> 18));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buf[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buf[count++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // lone surrogate, not encodable in UTF-8
+                buf[count++] = '?';
+            } else {
+                buf[count++] = (byte) (0xe0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * Write an escaped control character
+     *
+     * @param c
+     */
+    private void escapeControl(char c) {
+        buf[count++] = '\\';
+        switch (c) {
+        case '\n':
+            buf[count++] = 'n';
+            break;
+        case '\r':
+            buf[count++] = 'r';
+            break;
+        case '\t':
+            buf[count++] = 't';
+            break;
+        case '\b':
+            buf[count++] = 'b';
+            break;
+        case '\f':
+            buf[count++] = 'f';
+            break;
+        default:
+            buf[count++] = 'u';
+            buf[count++] = '0';
+            buf[count++] = '0';
+            buf[count++] = HEX[c >> 4];
+            buf[count++] = HEX[c & 0xf];
+            break;
+        }
+    }
+
+    /**
+     * Write a single ascii character
+     *
+     * @param c
+     */
+    private void write(char c) {
+        ensureCapacity(1);
+        buf[count++] = (byte) c;
+    }
+
+    /**
+     * Write bytes as is
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     */
+    private void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+    }
+
+    /**
+     * Grow the buffer if needed
+     *
+     * @param extra number of bytes about to be written
+     */
+    private void ensureCapacity(int extra) {
+        int required = count + extra;
+        if (required > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(required, buf.length * 2));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.json;
+
+import com.ericsson.jenkins.plugins.dashbeats.client.WidgetType;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import com.ericsson.jenkins.plugins.dashbeats.widget.DashBeatsWidget;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The content of every widget rendered from a stats summary. The content does not
+ * depend on the DashBeats server it is sent to, e.g. it has no authorization token,
+ * so that a summary is rendered once and shared by all the servers it is published to.
+ * <p/>
+ * The content of a widget is its json members encoded in UTF-8, e.g. <code>"items":[...]</code>,
+ * see {@link JsonFactory#writePayload(JsonWriter, byte[])}. The arrays are shared and must not be modified.
+ * A widget whose content has not changed since the previous summary has the same array.
+ */
+public class RenderedSummary {
+
+    private final StatsSummary summary;
+    /* Content by widget, in the order they were rendered */
+    private final Map<DashBeatsWidget, byte[]> contents;
+
+    /**
+     * Constructor of a rendered summary
+     *
+     * @param summary
+     * @param contents the content of every widget
+     */
+    public RenderedSummary(StatsSummary summary, Map<DashBeatsWidget, byte[]> contents) {
+        this.summary = summary;
+        this.contents = Collections.unmodifiableMap(new LinkedHashMap<DashBeatsWidget, byte[]>(contents));
+    }
+
+    /**
+     * Constructor of a rendered summary of the built-in widgets
+     *
+     * @param summary
+     * @param welcome
+     * @param commonFaultCauses
+     * @param latestFailedBuilds
+     * @param latestBuilds
+     * @param topFailedJobs
+     * @param configureFailureCauses
+     */
+    public RenderedSummary(StatsSummary summary, byte[] welcome, byte[] commonFaultCauses,
+                           byte[] latestFailedBuilds, byte[] latestBuilds,
+                           byte[] topFailedJobs, byte[] configureFailureCauses) {
+        this(summary, builtins(welcome, commonFaultCauses, latestFailedBuilds, latestBuilds,
+                topFailedJobs, configureFailureCauses));
+    }
+
+    /**
+     * Get the summary this content is rendered from
+     * @return
+     */
+    public StatsSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Get the content of every widget rendered
+     * @return
+     */
+    public Map<DashBeatsWidget, byte[]> getContents() {
+        return contents;
+    }
+
+    /**
+     * Get the content of a widget
+     * @param widget
+     * @return the content, null if the widget was not rendered
+     */
+    public byte[] getContent(DashBeatsWidget widget) {
+        return contents.get(widget);
+    }
+
+    /**
+     * Get the content of the welcome widget
+     * @return
+     */
+    public byte[] getWelcome() {
+        return getContent(WidgetType.WELCOME.getWidget());
+    }
+
+    /**
+     * Get the items of the common fault causes widget
+     * @return
+     */
+    public byte[] getCommonFaultCauses() {
+        return getContent(WidgetType.COMMON_FAULT_CAUSES.getWidget());
+    }
+
+    /**
+     * Get the items of the latest failed builds widget
+     * @return
+     */
+    public byte[] getLatestFailedBuilds() {
+        return getContent(WidgetType.LATEST_FAILED_BUILDS.getWidget());
+    }
+
+    /**
+     * Get the items of the latest builds widget
+     * @return
+     */
+    public byte[] getLatestBuilds() {
+        return getContent(WidgetType.LATEST_BUILD.getWidget());
+    }
+
+    /**
+     * Get the items of the top failed jobs widget
+     * @return
+     */
+    public byte[] getTopFailedJobs() {
+        return getContent(WidgetType.TOP_FAILED_JOBS.getWidget());
+    }
+
+    /**
+     * Get the content of the configure link widget
+     * @return
+     */
+    public byte[] getConfigureFailureCauses() {
+        return getContent(WidgetType.CONFIGURE_FAILURE_CAUSES.getWidget());
+    }
+
+    /**
+     * Map the content of the built-in widgets
+     *
+     * @param contents the content of every widget type, in order
+     * @return content by widget
+     */
+    private static Map<DashBeatsWidget, byte[]> builtins(byte[]... contents) {
+        Map<DashBeatsWidget, byte[]> map = new LinkedHashMap<DashBeatsWidget, byte[]>();
+        for (WidgetType type : WidgetType.values()) {
+            map.put(type.getWidget(), contents[type.ordinal()]);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.json;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the rendered content of a list widget, i.e. its <code>"items":[...]</code> member.
+ * <p/>
+ * Every row is kept encoded along with the version of the item it was rendered from, so a row is
+ * rendered again only when its item has changed, and the whole content is assembled again only
+ * when a row or the order of the rows has changed. Rows of items no longer listed are dropped,
+ * and everything is dropped when the root url of Jenkins changes, as links depend on it.
+ * <p/>
+ * Items are matched by identity, the stores keep updating the same instances. Not thread safe.
+ * See {@link com.ericsson.jenkins.plugins.dashbeats.widget.ListWidget}.
+ *
+ * @param <T> the type of the items
+ */
+public abstract class RowCache<T> {
+
+    /**
+     * A row as rendered from a version of an item
+     */
+    private static final class Row {
+        private final int version;
+        private final byte[] bytes;
+
+        private Row(int version, byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+
+    private Map<T, Row> rows = new IdentityHashMap<T, Row>();
+    /* The rows of the content last assembled, in order */
+    private byte[][] lastRows = new byte[0][];
+    private byte[] content;
+    private String rootUrl;
+
+    /**
+     * Get the content rendered from the items, rendering only what changed since last time.
+     *
+     * @param items
+     * @param rootUrl
+     * @param out writer used to render, reset first
+     * @return the encoded members of the widget, to be shared and not modified
+     */
+    public byte[] render(List<T> items, String rootUrl, JsonWriter out) {
+        if (rootUrl == null ? this.rootUrl != null : !rootUrl.equals(this.rootUrl)) {
+            rows.clear();
+            content = null;
+            this.rootUrl = rootUrl;
+        }
+        Map<T, Row> current = new IdentityHashMap<T, Row>(items.size());
+        byte[][] currentRows = new byte[items.size()][];
+        boolean changed = content == null || lastRows.length != currentRows.length;
+        for (int i = 0; i < currentRows.length; i++) {
+            T item = items.get(i);
+            // read the version first, a change while rendering is then caught next time
+            int version = getVersion(item);
+            Row row = rows.get(item);
+            if (row == null || row.version != version) {
+                writeRow(out.reset(), item, rootUrl);
+                row = new Row(version, out.toByteArray());
+            }
+            current.put(item, row);
+            currentRows[i] = row.bytes;
+            changed = changed || lastRows[i] != row.bytes;
+        }
+        rows = current;
+        if (changed) {
+            out.reset().name("items").beginArray();
+            for (byte[] row : currentRows) {
+                out.value(row);
+            }
+            out.endArray();
+            content = out.toByteArray();
+            lastRows = currentRows;
+        }
+        return content;
+    }
+
+    /**
+     * Get the version of an item, changing whenever the item changes
+     *
+     * @param item
+     * @return version
+     */
+    protected abstract int getVersion(T item);
+
+    /**
+     * Write the row of an item, as a json object
+     *
+     * @param out
+     * @param item
+     * @param rootUrl
+     */
+    protected abstract void writeRow(JsonWriter out, T item, String rootUrl);
+}
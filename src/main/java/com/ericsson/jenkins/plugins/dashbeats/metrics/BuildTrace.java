@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.metrics;
+
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * The trace of a statistics object through the stages of saveStatistics, from the dedup
+ * check to the queuing of the rendered summary for the DashBeats servers.
+ * <p/>
+ * A trace is marked by the thread saving the statistics only, it is then handed to the
+ * {@link BuildTracer} and not modified anymore.
+ */
+public class BuildTrace {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Stages traced, in order
+     */
+    public enum Stage {
+        DEDUP,
+        PERSIST,
+        AGGREGATE,
+        RENDER,
+        PUBLISH;
+
+        /**
+         * Get the name of the stage as shown, e.g. dedup
+         *
+         * @return name
+         */
+        public String getName() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private final String project;
+    private final int buildNumber;
+    private final long startTime;
+    private final long startNanos;
+    /* Time spent in every stage, in nanoseconds, by stage ordinal */
+    private final long[] durations = new long[Stage.values().length];
+    /* Time the previous stage ended */
+    private long lastNanos;
+    private long totalNanos;
+
+    /**
+     * Constructor of a trace starting now
+     *
+     * @param project
+     * @param buildNumber
+     */
+    public BuildTrace(String project, int buildNumber) {
+        this.project = project;
+        this.buildNumber = buildNumber;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.lastNanos = startNanos;
+    }
+
+    /**
+     * Mark the end of a stage, which started when the previous one ended
+     *
+     * @param stage
+     */
+    public void mark(Stage stage) {
+        long now = System.nanoTime();
+        durations[stage.ordinal()] += now - lastNanos;
+        lastNanos = now;
+    }
+
+    /**
+     * Mark the end of the trace
+     */
+    void finish() {
+        totalNanos = System.nanoTime() - startNanos;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    /**
+     * Get the time the trace started
+     *
+     * @return date
+     */
+    public Date getStartTime() {
+        return new Date(startTime);
+    }
+
+    /**
+     * Get the time spent in a stage
+     *
+     * @param stage
+     * @return nanoseconds, 0 if the stage was not reached
+     */
+    public long getDuration(Stage stage) {
+        return durations[stage.ordinal()];
+    }
+
+    /**
+     * Get the time spent in every stage, in order
+     *
+     * @return milliseconds by stage ordinal
+     */
+    public double[] getStageMillis() {
+        double[] millis = new double[durations.length];
+        for (int i = 0; i < durations.length; i++) {
+            millis[i] = durations[i] / NANOS_PER_MILLI;
+        }
+        return millis;
+    }
+
+    /**
+     * Get the time from the start to the end of the trace
+     *
+     * @return nanoseconds
+     */
+    public long getTotal() {
+        return totalNanos;
+    }
+
+    public double getTotalMillis() {
+        return totalNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Print the trace with the breakdown of the stages
+     *
+     * @return text
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder()
+                .append(project).append(" #").append(buildNumber)
+                .append(" took ").append(format(totalNanos)).append(" ms (");
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(stage.getName()).append(' ').append(format(durations[stage.ordinal()]));
+        }
+        return sb.append(')').toString();
+    }
+
+    private static String format(long nanos) {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Opt-in tracing of every statistics object saved, to chase the slow ones that the histograms
+ * of {@link DashBeatsMetrics} only show as a tail.
+ * <p/>
+ * The latest traces are kept in a ring buffer written without locking, the oldest being
+ * overwritten. A trace longer than the threshold is logged with the time spent in every stage.
+ * Tracing is disabled unless the system property
+ * <code>com.ericsson.jenkins.plugins.dashbeats.metrics.BuildTracer.enabled</code> is true, or it
+ * is enabled with {@link #setEnabled(boolean)}, e.g. from the script console. The number of traces
+ * kept and the threshold in milliseconds are set with the system properties ending with
+ * <code>.capacity</code> and <code>.threshold</code>.
+ */
+public class BuildTracer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildTracer.class.getName());
+
+    public static final int DEFAULT_CAPACITY = Integer.getInteger(BuildTracer.class.getName() + ".capacity", 256);
+    public static final long DEFAULT_THRESHOLD = Long.getLong(BuildTracer.class.getName() + ".threshold", 1000L);
+
+    private static final BuildTracer INSTANCE = new BuildTracer(
+            Boolean.getBoolean(BuildTracer.class.getName() + ".enabled"), DEFAULT_CAPACITY, DEFAULT_THRESHOLD);
+
+    private volatile boolean enabled;
+    /* Slow trace threshold in nanoseconds */
+    private volatile long threshold;
+    private final AtomicReferenceArray<BuildTrace> traces;
+    /* Sequence of the next trace, its slot being the sequence modulo the capacity */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Constructor of a tracer
+     *
+     * @param enabled
+     * @param capacity number of traces kept
+     * @param threshold in milliseconds, from which a trace is logged
+     */
+    BuildTracer(boolean enabled, int capacity, long threshold) {
+        this.enabled = enabled;
+        this.traces = new AtomicReferenceArray<BuildTrace>(Math.max(1, capacity));
+        setThreshold(threshold);
+    }
+
+    /**
+     * Get the tracer of the plugin
+     *
+     * @return tracer
+     */
+    public static BuildTracer getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Get the threshold from which a trace is logged
+     *
+     * @return milliseconds
+     */
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(threshold);
+    }
+
+    /**
+     * Set the threshold from which a trace is logged
+     *
+     * @param threshold in milliseconds
+     */
+    public void setThreshold(long threshold) {
+        this.threshold = TimeUnit.MILLISECONDS.toNanos(threshold);
+    }
+
+    /**
+     * Start the trace of a statistics object, if tracing is enabled
+     *
+     * @param project
+     * @param buildNumber
+     * @return the trace, null if tracing is disabled
+     */
+    public BuildTrace start(String project, int buildNumber) {
+        return enabled ? new BuildTrace(project, buildNumber) : null;
+    }
+
+    /**
+     * End a trace, keeping it and logging it if slow
+     *
+     * @param trace the trace, null doing nothing
+     */
+    public void finish(BuildTrace trace) {
+        if (trace == null) {
+            return;
+        }
+        trace.finish();
+        traces.set((int) (sequence.getAndIncrement() % traces.length()), trace);
+        if (trace.getTotal() >= threshold) {
+            LOGGER.warn("Slow DashBeats statistics : {}", trace);
+        }
+    }
+
+    /**
+     * Get the traces kept, newest first. Traces finished meanwhile may replace some of them.
+     *
+     * @return traces
+     */
+    public List<BuildTrace> getTraces() {
+        long last = sequence.get();
+        int capacity = traces.length();
+        List<BuildTrace> list = new ArrayList<BuildTrace>(capacity);
+        for (long i = last - 1; i >= 0 && i >= last - capacity; i--) {
+            BuildTrace trace = traces.get((int) (i % capacity));
+            if (trace != null) {
+                list.add(trace);
+            }
+        }
+        return list;
+    }
+}
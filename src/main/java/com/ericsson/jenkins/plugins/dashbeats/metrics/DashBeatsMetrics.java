@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The metrics of the plugin: latency histograms of every stage a build goes through, from
+ * ingest to publish, counters of errors and gauges of queue depths.
+ * <p/>
+ * Metrics are created on first use by name, e.g. <code>publish.latest_builds</code>, and
+ * registered as MBeans in the domain {@link #DOMAIN}, by type and name. They are shown on
+ * the management page of DashBeats, see {@link DashBeatsMetricsLink}.
+ */
+public final class DashBeatsMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DashBeatsMetrics.class.getName());
+
+    public static final String DOMAIN = "com.ericsson.jenkins.plugins.dashbeats";
+    /* Stages, a build being ingested by saveStatistics */
+    public static final String INGEST = "ingest";
+    public static final String PERSIST = "persist";
+    public static final String AGGREGATE = "aggregate";
+    public static final String RENDER = "render";
+    public static final String PUBLISH = "publish";
+    /* Suffix of the error counter of a stage */
+    public static final String ERRORS = ".errors";
+
+    private static final DashBeatsMetrics INSTANCE = new DashBeatsMetrics(true);
+
+    private final boolean jmx;
+    private final ConcurrentSkipListMap<String, Histogram> histograms = new ConcurrentSkipListMap<String, Histogram>();
+    private final ConcurrentSkipListMap<String, Counter> counters = new ConcurrentSkipListMap<String, Counter>();
+    private final ConcurrentSkipListMap<String, Gauge> gauges = new ConcurrentSkipListMap<String, Gauge>();
+
+    /**
+     * Constructor of metrics
+     *
+     * @param jmx whether the metrics are registered as MBeans
+     */
+    DashBeatsMetrics(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    /**
+     * Get the metrics of the plugin
+     *
+     * @return metrics
+     */
+    public static DashBeatsMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get a histogram, created if needed
+     *
+     * @param name
+     * @return histogram
+     */
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+                register("Histogram", name, created);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Get a counter, created if needed
+     *
+     * @param name
+     * @return counter
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+                register("Counter", name, created);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Get the error counter of a stage
+     *
+     * @param stage
+     * @return counter
+     */
+    public Counter errors(String stage) {
+        return counter(stage + ERRORS);
+    }
+
+    /**
+     * Register a gauge, replacing the one of the same name, e.g. of a knowledge base restarted
+     *
+     * @param name
+     * @param gauge
+     */
+    public void gauge(String name, Gauge gauge) {
+        if (gauges.put(name, gauge) != null) {
+            unregister("Gauge", name);
+        }
+        register("Gauge", name, gauge);
+    }
+
+    public SortedMap<String, Histogram> getHistograms() {
+        return Collections.unmodifiableSortedMap(histograms);
+    }
+
+    public SortedMap<String, Counter> getCounters() {
+        return Collections.unmodifiableSortedMap(counters);
+    }
+
+    public SortedMap<String, Gauge> getGauges() {
+        return Collections.unmodifiableSortedMap(gauges);
+    }
+
+    /**
+     * Register a metric as an MBean, failures being only logged, metrics being optional
+     *
+     * @param type
+     * @param name
+     * @param metric
+     */
+    private void register(String type, String name, Object metric) {
+        if (!jmx) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(type, name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(metric, objectName);
+        } catch (JMException e) {
+            LOGGER.debug("Failed to register the DashBeats metric {} : {}", name, e.toString());
+        }
+    }
+
+    /**
+     * Unregister the MBean of a metric, if registered
+     *
+     * @param type
+     * @param name
+     */
+    private void unregister(String type, String name) {
+        if (!jmx) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(type, name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.debug("Failed to unregister the DashBeats metric {} : {}", name, e.toString());
+        }
+    }
+
+    private static ObjectName getObjectName(String type, String name) throws JMException {
+        return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.metrics;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+import java.util.Locale;
+
+/**
+ * The management page showing the metrics of DashBeats, see {@link DashBeatsMetrics}.
+ */
+@Extension
+public class DashBeatsMetricsLink extends ManagementLink {
+
+    public static final String URL_NAME = "dashbeats-metrics";
+
+    @Override
+    public String getIconFileName() {
+        return "monitor.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "DashBeats Metrics";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Latencies, errors and queue depths of the statistics published to DashBeats.";
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Get the metrics shown
+     *
+     * @return metrics
+     */
+    public DashBeatsMetrics getMetrics() {
+        return DashBeatsMetrics.getInstance();
+    }
+
+    /**
+     * Get the tracer of the statistics, whose latest traces are shown when enabled
+     *
+     * @return tracer
+     */
+    public BuildTracer getTracer() {
+        return BuildTracer.getInstance();
+    }
+
+    /**
+     * Get the stages of the traces, in order
+     *
+     * @return stages
+     */
+    public BuildTrace.Stage[] getTraceStages() {
+        return BuildTrace.Stage.values();
+    }
+
+    /**
+     * Format a latency for the page
+     *
+     * @param millis
+     * @return text
+     */
+    public String format(double millis) {
+        return String.format(Locale.ENGLISH, "%.3f", millis);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.metrics;
+
+import com.ericsson.jenkins.plugins.dashbeats.model.BuildInfo;
+import com.ericsson.jenkins.plugins.dashbeats.model.FaultCauseInfo;
+import hudson.model.Result;
+
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Writes the Prometheus text exposition format, version 0.0.4, of the dashboard aggregates
+ * and of the metrics of the plugin.
+ * <p/>
+ * The aggregates are written from the counters of the store, on demand, so that what is written
+ * at a version of the store can be kept and served again until the next build. The metrics
+ * of the plugin are a fixed set whatever the number of jobs, they are written on every scrape.
+ */
+public final class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String PREFIX = "dashbeats_";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final String[] RESULTS = {
+            Result.SUCCESS.toString(), Result.FAILURE.toString(),
+            Result.UNSTABLE.toString(), Result.ABORTED.toString()};
+
+    private PrometheusWriter() {
+    }
+
+    /**
+     * Write the aggregates: the builds of every job by result and the failures by cause
+     *
+     * @param jobs the counters of every job
+     * @param causes the failures of every fault cause
+     * @param version the version of the store the counters are taken from
+     * @param lastDate the start time of the latest build
+     * @return the encoded exposition
+     */
+    public static byte[] writeAggregates(Collection<BuildInfo> jobs, Collection<FaultCauseInfo> causes,
+                                         long version, Date lastDate) {
+        StringBuilder out = new StringBuilder();
+        family(out, "builds_total", "counter", "Builds of a job by result");
+        for (BuildInfo job : jobs) {
+            long[] counts = {job.getSuccesses(), job.getFailures(), job.getUnstables(), job.getAborts()};
+            for (int i = 0; i < RESULTS.length; i++) {
+                out.append(PREFIX).append("builds_total{job=\"");
+                escape(out, job.getJob());
+                out.append("\",result=\"").append(RESULTS[i]).append("\"} ").append(counts[i]).append('\n');
+            }
+        }
+        family(out, "failure_causes_total", "counter", "Failed builds by failure cause");
+        for (FaultCauseInfo cause : causes) {
+            out.append(PREFIX).append("failure_causes_total{cause_id=\"");
+            escape(out, cause.getCauseId());
+            out.append("\",cause=\"");
+            escape(out, cause.getCauseName());
+            out.append("\"} ").append(cause.getFailures()).append('\n');
+        }
+        family(out, "jobs", "gauge", "Jobs with builds in the summary");
+        out.append(PREFIX).append("jobs ").append(jobs.size()).append('\n');
+        family(out, "summary_version", "gauge", "Version of the summary, changing with every build");
+        out.append(PREFIX).append("summary_version ").append(version).append('\n');
+        family(out, "last_build_timestamp_seconds", "gauge", "Start time of the latest build");
+        out.append(PREFIX).append("last_build_timestamp_seconds ")
+                .append(lastDate.getTime() / 1000).append('\n');
+        return out.toString().getBytes(UTF8);
+    }
+
+    /**
+     * Write the metrics of the plugin: the latencies of every stage, the errors and the gauges
+     *
+     * @param metrics
+     * @return the encoded exposition
+     */
+    public static byte[] writeMetrics(DashBeatsMetrics metrics) {
+        StringBuilder out = new StringBuilder();
+        family(out, "stage_duration_seconds", "histogram", "Latency of the stages of a build, by widget if any");
+        for (Map.Entry<String, Histogram> entry : metrics.getHistograms().entrySet()) {
+            writeHistogram(out, entry.getKey(), entry.getValue());
+        }
+        family(out, "stage_errors_total", "counter", "Errors of the stages of a build");
+        for (Map.Entry<String, Counter> entry : metrics.getCounters().entrySet()) {
+            String name = entry.getKey();
+            if (name.endsWith(DashBeatsMetrics.ERRORS)) {
+                out.append(PREFIX).append("stage_errors_total{stage=\"");
+                escape(out, name.substring(0, name.length() - DashBeatsMetrics.ERRORS.length()));
+                out.append("\"} ").append(entry.getValue().getCount()).append('\n');
+            }
+        }
+        for (Map.Entry<String, Counter> entry : metrics.getCounters().entrySet()) {
+            if (!entry.getKey().endsWith(DashBeatsMetrics.ERRORS)) {
+                String name = sanitize(entry.getKey()) + "_total";
+                family(out, name, "counter", entry.getKey());
+                out.append(PREFIX).append(name).append(' ').append(entry.getValue().getCount()).append('\n');
+            }
+        }
+        for (Map.Entry<String, Gauge> entry : metrics.getGauges().entrySet()) {
+            String name = sanitize(entry.getKey());
+            family(out, name, "gauge", entry.getKey());
+            out.append(PREFIX).append(name).append(' ').append(entry.getValue().getValue()).append('\n');
+        }
+        return out.toString().getBytes(UTF8);
+    }
+
+    /**
+     * Write the cumulative buckets, sum and count of a histogram named stage or stage.widget
+     *
+     * @param out
+     * @param name
+     * @param histogram
+     */
+    private static void writeHistogram(StringBuilder out, String name, Histogram histogram) {
+        StringBuilder labels = new StringBuilder("stage=\"");
+        int dot = name.indexOf('.');
+        if (dot < 0) {
+            escape(labels, name);
+        } else {
+            escape(labels, name.substring(0, dot));
+            labels.append("\",widget=\"");
+            escape(labels, name.substring(dot + 1));
+        }
+        labels.append('"');
+        // the count is the sum of the buckets read at once, so that it matches the last bucket
+        long[] buckets = histogram.getBuckets();
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            count += buckets[i];
+            out.append(PREFIX).append("stage_duration_seconds_bucket{").append(labels).append(",le=\"");
+            if (i == buckets.length - 1) {
+                out.append("+Inf");
+            } else {
+                out.append(Histogram.getUpperBound(i) / NANOS_PER_SECOND);
+            }
+            out.append("\"} ").append(count).append('\n');
+        }
+        out.append(PREFIX).append("stage_duration_seconds_sum{").append(labels).append("} ")
+                .append(histogram.getSum() / NANOS_PER_SECOND).append('\n');
+        out.append(PREFIX).append("stage_duration_seconds_count{").append(labels).append("} ")
+                .append(count).append('\n');
+    }
+
+    /**
+     * Write the help and type of a metric family
+     *
+     * @param out
+     * @param name without prefix
+     * @param type
+     * @param help
+     */
+    private static void family(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ');
+        for (int i = 0; i < help.length(); i++) {
+            char c = help.charAt(i);
+            if (c == '\\') {
+                out.append("\\\\");
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Escape a label value, null being written as empty
+     *
+     * @param out
+     * @param value
+     */
+    static void escape(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                out.append("\\\\");
+            } else if (c == '"') {
+                out.append("\\\"");
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Turn a metric name into a valid Prometheus name, e.g. publish.pending into publish_pending
+     *
+     * @param name
+     * @return name
+     */
+    static String sanitize(String name) {
+        StringBuilder sanitized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'
+                    || (c >= '0' && c <= '9');
+            sanitized.append(valid ? c : '_');
+        }
+        return sanitized.toString();
+    }
+}
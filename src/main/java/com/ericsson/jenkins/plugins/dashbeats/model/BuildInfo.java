@@ -41,6 +41,8 @@ public class BuildInfo {
     private int failures;
     private int unstables;
     private int aborts;
+    /* Incremented on every change, tells whether what was rendered from it is up to date */
+    private int version;
 
     /**
      * Constructor of build info
@@ -71,6 +73,7 @@ public class BuildInfo {
      */
     public void setDate(Date date) {
         this.date = (Date)date.clone();
+        version++;
     }
 
     /**
@@ -95,6 +98,7 @@ public class BuildInfo {
      */
     public void setBuildNumber(int buildNumber) {
         this.buildNumber = buildNumber;
+        version++;
     }
 
     /**
@@ -111,6 +115,7 @@ public class BuildInfo {
      */
     public void setResult(String result) {
         this.result = result;
+        version++;
     }
 
     /**
@@ -127,6 +132,7 @@ public class BuildInfo {
      */
     public void setSuccesses(int successes) {
         this.successes = successes;
+        version++;
     }
 
     /**
@@ -143,6 +149,7 @@ public class BuildInfo {
      */
     public void setFailures(int failures) {
         this.failures = failures;
+        version++;
     }
 
     /**
@@ -159,6 +166,7 @@ public class BuildInfo {
      */
     public void setUnstables(int unstables) {
         this.unstables = unstables;
+        version++;
     }
 
     /**
@@ -175,6 +183,7 @@ public class BuildInfo {
      */
     public void setAborts(int aborts) {
         this.aborts = aborts;
+        version++;
     }
 
     /**
@@ -195,6 +204,14 @@ public class BuildInfo {
         return Math.round(100 * fails / total);
     }
 
+    /**
+     * Get the version of the content, incremented on every change
+     * @return
+     */
+    public int getVersion() {
+        return version;
+    }
+
     /**
      * Increment the counter of the build info respectively according the build result
      *
@@ -36,6 +36,8 @@ public class FaultCauseInfo {
     private String causeName;
     private List<String> categories;
     private int failures = 0;
+    /* Incremented on every change, tells whether what was rendered from it is up to date */
+    private int version;
 
     /**
      * Constructor of fault cause info
@@ -66,6 +68,7 @@ public class FaultCauseInfo {
      */
     public void setDate(Date date) {
         this.date = (Date)date.clone();
+        version++;
     }
 
     /**
@@ -90,6 +93,7 @@ public class FaultCauseInfo {
      */
     public void setCauseName(String causeName) {
         this.causeName = causeName;
+        version++;
     }
 
     /** Get the causes categories
@@ -107,6 +111,7 @@ public class FaultCauseInfo {
      */
     public void setCategories(List<String> categories) {
         this.categories = categories;
+        version++;
     }
 
     /**
@@ -123,6 +128,15 @@ public class FaultCauseInfo {
      */
     public void setFailures(int failures) {
         this.failures = failures;
+        version++;
+    }
+
+    /**
+     * Get the version of the content, incremented on every change
+     * @return
+     */
+    public int getVersion() {
+        return version;
     }
 
     /**
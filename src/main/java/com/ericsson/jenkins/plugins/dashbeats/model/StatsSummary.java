@@ -46,6 +46,8 @@ public class StatsSummary {
     private Date startDate;
     private Date lastDate;
     private int buildCount = 0;
+    /* Version of the store the summary was created from */
+    private long version;
 
     private Welcome welcome;
     private List<FaultCauseInfo> commonFailureCauses;
@@ -113,6 +115,22 @@ public class StatsSummary {
         this.buildCount = buildCount;
     }
 
+    /**
+     * Get the version of the store the summary was created from, a new version meaning new content
+     * @return
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Set the version of the store the summary was created from
+     * @param version
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Get the welcome object to be displayed on the welcome widget
      * @return
@@ -0,0 +1,573 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.web;
+
+import com.ericsson.jenkins.plugins.dashbeats.db.DashBeatsKnowledgeBase;
+import com.ericsson.jenkins.plugins.dashbeats.db.DashBeatsStore;
+import com.ericsson.jenkins.plugins.dashbeats.db.StatsPage;
+import com.ericsson.jenkins.plugins.dashbeats.db.StatsQuery;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonWriter;
+import com.ericsson.jenkins.plugins.dashbeats.json.RenderedSummary;
+import com.ericsson.jenkins.plugins.dashbeats.metrics.DashBeatsMetrics;
+import com.ericsson.jenkins.plugins.dashbeats.metrics.PrometheusWriter;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import com.ericsson.jenkins.plugins.dashbeats.widget.DashBeatsWidget;
+import com.sonyericsson.jenkins.plugins.bfa.PluginImpl;
+import com.sonyericsson.jenkins.plugins.bfa.db.KnowledgeBase;
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.FailureCauseStatistics;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.RootAction;
+import hudson.security.Permission;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the latest summary published to DashBeats, so that clients can pull it from Jenkins
+ * without running Dashing:
+ * <ul>
+ * <li><code>/dashbeats/summary</code> the content of all widgets</li>
+ * <li><code>/dashbeats/widgets/&lt;id&gt;</code> the content of a widget, e.g. latest_failed_builds</li>
+ * <li><code>/dashbeats/events</code> a Server-Sent Events stream of the widgets changed by every summary</li>
+ * <li><code>/dashbeats/statistics</code> a page of the statistics, newest first, see {@link #doStatistics}</li>
+ * <li><code>/dashbeats/prometheus</code> the aggregates and the metrics of the plugin for Prometheus to scrape</li>
+ * </ul>
+ * The content is served from the summary as already rendered for DashBeats, without the
+ * authorization token. Responses carry a strong ETag derived from the summary version and
+ * conditional requests are answered with 304 while the summary has not changed.
+ * <p/>
+ * The summary, the widgets, the events and the exposition cover the builds of every job, so they
+ * are served to administrators only. The statistics are served to any reader, without the builds
+ * of the jobs the reader is not allowed to read.
+ */
+@Extension
+public class DashBeatsRootAction implements RootAction {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DashBeatsRootAction.class.getName());
+
+    public static final String URL_NAME = "dashbeats";
+    public static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+    public static final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream;charset=UTF-8";
+    /* Delay in milliseconds after which a comment is sent on an idle stream, keeping proxies from closing it */
+    private static final long HEARTBEAT = 15000L;
+    private static final byte[] HEARTBEAT_COMMENT = {':', '\n', '\n'};
+    /* Number of statistics in a page unless asked otherwise */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    /* The summary document, kept along with the rendered summary it was written from */
+    private RenderedSummary documented;
+    private byte[] document;
+    /* The Prometheus exposition of the aggregates, kept along with the store and version it was written at */
+    private DashBeatsStore exposed;
+    private long exposedVersion;
+    private byte[] exposition;
+
+    @Override
+    public String getIconFileName() {
+        // not listed in the side panel
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "DashBeats";
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Serve the content of all widgets
+     *
+     * @param req
+     * @param rsp
+     * @throws IOException
+     */
+    public void doSummary(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        RenderedSummary rendered = getSnapshot();
+        if (rendered == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No summary published yet");
+            return;
+        }
+        serve(req, rsp, getETag(rendered), getDocument(rendered));
+    }
+
+    /**
+     * Serve the content of the widget named by the rest of the path
+     *
+     * @param req
+     * @param rsp
+     * @throws IOException
+     */
+    public void doWidgets(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        RenderedSummary rendered = getSnapshot();
+        String id = req.getRestOfPath().replaceAll("^/+|/+$", "");
+        byte[] content = rendered == null ? null : getContent(id, rendered);
+        if (content == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        JsonWriter out = new JsonWriter();
+        out.beginObject().members(content).endObject();
+        serve(req, rsp, getETag(rendered), out.toByteArray());
+    }
+
+    /**
+     * Stream the widgets changed by every summary as Server-Sent Events, until the client disconnects.
+     * The whole summary is sent first, unless the Last-Event-ID tells the client already has it.
+     *
+     * @param req
+     * @param rsp
+     * @throws IOException
+     */
+    public void doEvents(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        SummaryBroadcaster broadcaster = getBroadcaster();
+        if (broadcaster == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        SummaryBroadcaster.Subscription subscription = broadcaster.subscribe(req.getHeader("Last-Event-ID"));
+        if (subscription == null) {
+            rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many subscribers");
+            return;
+        }
+        try {
+            rsp.setContentType(EVENT_STREAM_CONTENT_TYPE);
+            rsp.setHeader("Cache-Control", "no-cache");
+            OutputStream out = rsp.getOutputStream();
+            out.flush();
+            while (!subscription.isClosed()) {
+                byte[] event = subscription.poll(HEARTBEAT);
+                out.write(event == null ? HEARTBEAT_COMMENT : event);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.debug("DashBeats stream closed by the client : {}", e.toString());
+        } finally {
+            broadcaster.unsubscribe(subscription);
+        }
+    }
+
+    /**
+     * Serve a page of the statistics, newest first, filtered by the parameters <code>project</code>,
+     * <code>result</code>, <code>excludeResult</code>, <code>master</code>, <code>slave</code>,
+     * <code>since</code> in milliseconds and <code>buildNumbers</code> separated by commas, as the graphs are,
+     * except that the text criteria are plain texts, never regular expressions.
+     * The page has <code>pageSize</code> statistics at most, and the token of the next page, if any,
+     * to be given as <code>pageToken</code> to get it. The statistics of the jobs the caller is not allowed
+     * to read are left out, so a page may have fewer statistics while not being the last one.
+     *
+     * @param req
+     * @param rsp
+     * @throws IOException
+     */
+    public void doStatistics(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        StatsPage page;
+        try {
+            page = getStatisticsPage(createFilter(req), req.getParameter("pageToken"),
+                    parseInt(req.getParameter("pageSize"), DEFAULT_PAGE_SIZE));
+        } catch (IllegalArgumentException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        if (page == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        byte[] body = writePage(page);
+        rsp.setHeader("Cache-Control", "no-cache");
+        rsp.setContentType(CONTENT_TYPE);
+        rsp.setContentLength(body.length);
+        rsp.getOutputStream().write(body);
+    }
+
+    /**
+     * Serve the Prometheus exposition of the builds by job and result, of the failures by cause
+     * and of the metrics of the plugin. The aggregates are written by the first scrape after a build,
+     * so saving a build does not pay for them and a scrape while no build happened only writes
+     * the metrics of the plugin, whose number does not grow with the jobs.
+     *
+     * @param req
+     * @param rsp
+     * @throws IOException
+     */
+    public void doPrometheus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        DashBeatsStore store = getStore();
+        byte[] aggregates = store == null ? new byte[0] : getExposition(store);
+        byte[] metrics = PrometheusWriter.writeMetrics(DashBeatsMetrics.getInstance());
+        rsp.setHeader("Cache-Control", "no-cache");
+        rsp.setContentType(PrometheusWriter.CONTENT_TYPE);
+        rsp.setContentLength(aggregates.length + metrics.length);
+        OutputStream out = rsp.getOutputStream();
+        out.write(aggregates);
+        out.write(metrics);
+    }
+
+    /**
+     * Get a page of the statistics, checking the permission to read them.
+     * The text criteria are matched as plain texts, so that no pattern of a request
+     * is run while the statistics are locked.
+     *
+     * @param filter
+     * @param token
+     * @param size
+     * @return the page, without the statistics of the jobs the caller cannot read,
+     *         null if DashBeats is not the knowledge base in use
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    StatsPage getStatisticsPage(GraphFilterBuilder filter, String token, int size) {
+        DashBeatsKnowledgeBase knowledgeBase = getKnowledgeBase(Jenkins.READ);
+        if (knowledgeBase == null) {
+            return null;
+        }
+        StatsPage page = knowledgeBase.getStatisticsPage(StatsQuery.compileLiteral(filter), token, size);
+        if (Jenkins.getInstance().hasPermission(Jenkins.ADMINISTER)) {
+            return page;
+        }
+        return getReadable(page);
+    }
+
+    /**
+     * Get the latest rendered summary, checking the permission to read the builds of every job
+     *
+     * @return the rendered summary, null if none yet
+     */
+    RenderedSummary getSnapshot() {
+        DashBeatsKnowledgeBase knowledgeBase = getKnowledgeBase(Jenkins.ADMINISTER);
+        return knowledgeBase == null ? null : knowledgeBase.getSnapshot();
+    }
+
+    /**
+     * Get the counters of the builds of every job, checking the permission to read the builds of every job
+     *
+     * @return the store, null if DashBeats is not the knowledge base in use
+     */
+    DashBeatsStore getStore() {
+        DashBeatsKnowledgeBase knowledgeBase = getKnowledgeBase(Jenkins.ADMINISTER);
+        return knowledgeBase == null ? null : knowledgeBase.getStore();
+    }
+
+    /**
+     * Get the broadcaster of the summary changes, checking the permission to read the builds of every job
+     *
+     * @return the broadcaster, null if DashBeats is not the knowledge base in use
+     */
+    SummaryBroadcaster getBroadcaster() {
+        DashBeatsKnowledgeBase knowledgeBase = getKnowledgeBase(Jenkins.ADMINISTER);
+        return knowledgeBase == null ? null : knowledgeBase.getBroadcaster();
+    }
+
+    /**
+     * Get a page without the statistics of the jobs the caller is not allowed to read
+     *
+     * @param page
+     * @return the page of the readable statistics, with the same next token
+     */
+    StatsPage getReadable(StatsPage page) {
+        Map<String, Boolean> readable = new HashMap<String, Boolean>();
+        List<Statistics> statistics = new ArrayList<Statistics>(page.getStatistics().size());
+        for (Statistics stat : page.getStatistics()) {
+            Boolean canRead = readable.get(stat.getProjectName());
+            if (canRead == null) {
+                canRead = canRead(stat.getProjectName());
+                readable.put(stat.getProjectName(), canRead);
+            }
+            if (canRead) {
+                statistics.add(stat);
+            }
+        }
+        return new StatsPage(statistics, page.getNextToken());
+    }
+
+    /**
+     * Check whether the caller is allowed to read a job
+     *
+     * @param projectName the full name of the job
+     * @return true if the job exists and is readable
+     */
+    boolean canRead(String projectName) {
+        if (projectName == null) {
+            return false;
+        }
+        Item item = Jenkins.getInstance().getItemByFullName(projectName);
+        return item != null && item.hasPermission(Item.READ);
+    }
+
+    /**
+     * Get the DashBeats knowledge base, checking a permission
+     *
+     * @param permission
+     * @return the knowledge base, null if DashBeats is not the knowledge base in use
+     */
+    private DashBeatsKnowledgeBase getKnowledgeBase(Permission permission) {
+        Jenkins.getInstance().checkPermission(permission);
+        KnowledgeBase knowledgeBase = PluginImpl.getInstance().getKnowledgeBase();
+        if (knowledgeBase instanceof DashBeatsKnowledgeBase) {
+            return (DashBeatsKnowledgeBase)knowledgeBase;
+        }
+        return null;
+    }
+
+    /**
+     * Get the document of a summary, written once per rendered summary
+     *
+     * @param rendered
+     * @return the encoded document
+     */
+    synchronized byte[] getDocument(RenderedSummary rendered) {
+        if (documented != rendered) {
+            document = writeDocument(rendered);
+            documented = rendered;
+        }
+        return document;
+    }
+
+    /**
+     * Get the Prometheus exposition of the aggregates of a store, written once per version of the store
+     *
+     * @param store
+     * @return the encoded exposition
+     */
+    synchronized byte[] getExposition(DashBeatsStore store) {
+        long version = store.getVersion();
+        if (exposed != store || exposedVersion != version) {
+            // a build saved meanwhile is written too, and written again by the next scrape
+            exposition = store.writeExposition();
+            exposed = store;
+            exposedVersion = version;
+        }
+        return exposition;
+    }
+
+    /**
+     * Serve a body, or 304 if the client already has it
+     *
+     * @param req
+     * @param rsp
+     * @param etag
+     * @param body
+     * @throws IOException
+     */
+    private static void serve(StaplerRequest req, StaplerResponse rsp, String etag, byte[] body) throws IOException {
+        rsp.setHeader("ETag", etag);
+        rsp.setHeader("Cache-Control", "no-cache");
+        if (matches(req.getHeader("If-None-Match"), etag)) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        rsp.setContentType(CONTENT_TYPE);
+        rsp.setContentLength(body.length);
+        rsp.getOutputStream().write(body);
+    }
+
+    /**
+     * Check whether an If-None-Match header matches an entity tag
+     *
+     * @param ifNoneMatch the header, may be null
+     * @param etag
+     * @return true if matching
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the strong entity tag of a rendered summary, from the version of the summary
+     *
+     * @param rendered
+     * @return etag
+     */
+    static String getETag(RenderedSummary rendered) {
+        return "\"" + Long.toHexString(rendered.getSummary().getVersion()) + "\"";
+    }
+
+    /**
+     * Write the document of a summary: its version and counters, and the content of all widgets
+     *
+     * @param rendered
+     * @return the encoded document
+     */
+    static byte[] writeDocument(RenderedSummary rendered) {
+        StatsSummary summary = rendered.getSummary();
+        JsonWriter out = new JsonWriter();
+        out.beginObject()
+                .name("version").value(summary.getVersion())
+                .name("buildCount").value(summary.getBuildCount())
+                .name("startDate").value(summary.getStartDate().getTime())
+                .name("lastDate").value(summary.getLastDate().getTime())
+                .name("widgets").beginObject();
+        for (Map.Entry<DashBeatsWidget, byte[]> widget : rendered.getContents().entrySet()) {
+            out.name(widget.getKey().getId()).beginObject().members(widget.getValue()).endObject();
+        }
+        out.endObject().endObject();
+        return out.toByteArray();
+    }
+
+    /**
+     * Create the filter of the statistics from the parameters of a request
+     *
+     * @param req
+     * @return filter
+     * @throws IllegalArgumentException if a number is not valid
+     */
+    static GraphFilterBuilder createFilter(StaplerRequest req) {
+        GraphFilterBuilder filter = new GraphFilterBuilder();
+        filter.setProjectName(Util.fixEmpty(req.getParameter("project")));
+        filter.setResult(Util.fixEmpty(req.getParameter("result")));
+        filter.setExcludeResult(Util.fixEmpty(req.getParameter("excludeResult")));
+        filter.setMasterName(Util.fixEmpty(req.getParameter("master")));
+        filter.setSlaveName(Util.fixEmpty(req.getParameter("slave")));
+        String since = Util.fixEmpty(req.getParameter("since"));
+        if (since != null) {
+            filter.setSince(new Date(parseLong(since)));
+        }
+        String buildNumbers = Util.fixEmpty(req.getParameter("buildNumbers"));
+        if (buildNumbers != null) {
+            List<Integer> numbers = new ArrayList<Integer>();
+            for (String number : buildNumbers.split(",")) {
+                numbers.add(parseInt(number.trim(), 0));
+            }
+            filter.setBuildNumbers(numbers);
+        }
+        return filter;
+    }
+
+    /**
+     * Write a page of statistics
+     *
+     * @param page
+     * @return the encoded page
+     */
+    static byte[] writePage(StatsPage page) {
+        JsonWriter out = new JsonWriter();
+        out.beginObject().name("statistics").beginArray();
+        for (Statistics stat : page.getStatistics()) {
+            out.beginObject()
+                    .name("projectName").value(stat.getProjectName())
+                    .name("buildNumber").value(stat.getBuildNumber())
+                    .name("startingTime");
+            if (stat.getStartingTime() == null) {
+                out.value((String) null);
+            } else {
+                out.value(stat.getStartingTime().getTime());
+            }
+            out.name("duration").value(stat.getDuration())
+                    .name("result").value(stat.getResult())
+                    .name("master").value(stat.getMaster())
+                    .name("slaveHostName").value(stat.getSlaveHostName())
+                    .name("failureCauses").beginArray();
+            if (stat.getFailureCauseStatisticsList() != null) {
+                for (FailureCauseStatistics cause : stat.getFailureCauseStatisticsList()) {
+                    out.value(cause.getId());
+                }
+            }
+            out.endArray().endObject();
+        }
+        out.endArray();
+        out.name("nextPageToken").value(page.getNextToken());
+        out.endObject();
+        return out.toByteArray();
+    }
+
+    /**
+     * Parse an integer parameter
+     *
+     * @param value
+     * @param defaultValue used when the parameter is not given
+     * @return number
+     * @throws IllegalArgumentException if not a number
+     */
+    private static int parseInt(String value, int defaultValue) {
+        if (Util.fixEmpty(value) == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number " + value, e);
+        }
+    }
+
+    /**
+     * Parse a long parameter
+     *
+     * @param value
+     * @return number
+     * @throws IllegalArgumentException if not a number
+     */
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number " + value, e);
+        }
+    }
+
+    /**
+     * Get the rendered content of a widget
+     *
+     * @param id the id of the widget, as named on DashBeats
+     * @param rendered
+     * @return encoded members, null if no such widget
+     */
+    static byte[] getContent(String id, RenderedSummary rendered) {
+        for (Map.Entry<DashBeatsWidget, byte[]> widget : rendered.getContents().entrySet()) {
+            if (widget.getKey().getId().equals(id)) {
+                return widget.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.web;
+
+import com.ericsson.jenkins.plugins.dashbeats.client.FanOutPublisher;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonWriter;
+import com.ericsson.jenkins.plugins.dashbeats.json.RenderedSummary;
+import com.ericsson.jenkins.plugins.dashbeats.widget.DashBeatsWidget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broadcasts the changes of the summary to the subscribers of the Server-Sent Events stream.
+ * <p/>
+ * Every summary published is turned once into an event holding the widgets whose content
+ * changed, and the same encoded event is queued to every subscriber. The queue of a subscriber
+ * is bounded: a subscriber too slow to keep up is disconnected rather than buffering events,
+ * an EventSource reconnects by itself and then receives the whole summary again.
+ */
+public class SummaryBroadcaster implements FanOutPublisher.Listener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SummaryBroadcaster.class.getName());
+
+    public static final int DEFAULT_BUFFER_SIZE = 16;
+    public static final int DEFAULT_MAX_SUBSCRIBERS = 32;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * A subscriber of the stream, reading the events queued to it.
+     */
+    public static class Subscription {
+
+        private final BlockingQueue<byte[]> events;
+        private volatile boolean closed = false;
+
+        Subscription(int bufferSize) {
+            this.events = new ArrayBlockingQueue<byte[]>(bufferSize);
+        }
+
+        /**
+         * Wait for the next event
+         *
+         * @param timeout in milliseconds
+         * @return the encoded event, null if none within the timeout or if closed
+         * @throws InterruptedException
+         */
+        public byte[] poll(long timeout) throws InterruptedException {
+            if (closed) {
+                return null;
+            }
+            return events.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Check whether the subscription is closed, either cancelled or too slow
+         *
+         * @return true if closed
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        private boolean offer(byte[] event) {
+            return events.offer(event);
+        }
+
+        private void close() {
+            closed = true;
+            events.clear();
+        }
+    }
+
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+    /* The latest summary broadcast, the next event holds what changed since */
+    private RenderedSummary previous;
+
+    /**
+     * Constructor using the default buffer size and maximum of subscribers
+     */
+    public SummaryBroadcaster() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_SUBSCRIBERS);
+    }
+
+    /**
+     * Constructor of the broadcaster
+     *
+     * @param bufferSize number of events queued per subscriber
+     * @param maxSubscribers
+     */
+    public SummaryBroadcaster(int bufferSize, int maxSubscribers) {
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    /**
+     * Subscribe to the stream. The whole latest summary is queued first, unless the subscriber
+     * already has it, e.g. when reconnecting. Synchronized with publishing so that no change is missed.
+     *
+     * @param lastEventId the id of the last event received by the subscriber, may be null
+     * @return the subscription, null if there are too many subscribers already
+     */
+    public synchronized Subscription subscribe(String lastEventId) {
+        if (subscriptions.size() >= maxSubscribers) {
+            return null;
+        }
+        Subscription subscription = new Subscription(bufferSize);
+        if (previous != null && !getId(previous).equals(lastEventId)) {
+            subscription.offer(writeEvent(previous, null));
+        }
+        subscriptions.add(subscription);
+        LOGGER.debug("DashBeats stream subscribed, {} subscribers", subscriptions.size());
+        return subscription;
+    }
+
+    /**
+     * Cancel a subscription
+     *
+     * @param subscription
+     */
+    public void unsubscribe(Subscription subscription) {
+        subscription.close();
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * Get the number of subscribers
+     *
+     * @return subscribers
+     */
+    public int getSubscribers() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Queue the widgets changed by a summary to every subscriber
+     *
+     * @param rendered
+     */
+    @Override
+    public synchronized void onPublish(RenderedSummary rendered) {
+        RenderedSummary changedFrom = previous;
+        previous = rendered;
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        byte[] event = writeEvent(rendered, changedFrom);
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.offer(event)) {
+                LOGGER.info("DashBeats stream subscriber too slow, disconnecting it");
+                unsubscribe(subscription);
+            }
+        }
+    }
+
+    /**
+     * Get the id of the event of a summary
+     *
+     * @param rendered
+     * @return id
+     */
+    static String getId(RenderedSummary rendered) {
+        return Long.toHexString(rendered.getSummary().getVersion());
+    }
+
+    /**
+     * Write the event of a summary, holding the widgets changed since a previous one
+     *
+     * @param rendered
+     * @param changedFrom the previous summary, all widgets if null
+     * @return the encoded event
+     */
+    static byte[] writeEvent(RenderedSummary rendered, RenderedSummary changedFrom) {
+        JsonWriter out = new JsonWriter();
+        out.beginObject()
+                .name("version").value(rendered.getSummary().getVersion())
+                .name("widgets").beginObject();
+        for (Map.Entry<DashBeatsWidget, byte[]> widget : rendered.getContents().entrySet()) {
+            byte[] content = widget.getValue();
+            // unchanged widgets share the same rendered content
+            if (changedFrom == null || content != changedFrom.getContent(widget.getKey())) {
+                out.name(widget.getKey().getId()).beginObject().members(content).endObject();
+            }
+        }
+        out.endObject().endObject();
+        String header = "id: " + getId(rendered) + "\nevent: summary\ndata: ";
+        byte[] head = header.getBytes(UTF8);
+        byte[] event = new byte[head.length + out.size() + 2];
+        System.arraycopy(head, 0, event, 0, head.length);
+        System.arraycopy(out.array(), 0, event, head.length, out.size());
+        event[event.length - 2] = '\n';
+        event[event.length - 1] = '\n';
+        return event;
+    }
+}
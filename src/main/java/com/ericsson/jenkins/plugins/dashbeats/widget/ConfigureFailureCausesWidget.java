@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.widget;
+
+import com.ericsson.jenkins.plugins.dashbeats.client.DashBeatsPublisher;
+import com.ericsson.jenkins.plugins.dashbeats.client.WidgetType;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonWriter;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+
+/**
+ * The link to the failure cause management page. It only depends on the Jenkins root url.
+ */
+final class ConfigureFailureCausesWidget extends DashBeatsWidget {
+
+    @Override
+    public String getName() {
+        return WidgetType.CONFIGURE_FAILURE_CAUSES.name();
+    }
+
+    @Override
+    public String getPath() {
+        return DashBeatsPublisher.CONFIGURE_FAILURE_CAUSES_URL;
+    }
+
+    @Override
+    public Priority getPriority() {
+        return Priority.LOW;
+    }
+
+    @Override
+    public WidgetRenderer createRenderer(final JsonFactory factory) {
+        return new WidgetRenderer() {
+            /* The rendered link, and the root url it was rendered with */
+            private byte[] content;
+            private String contentRootUrl;
+
+            @Override
+            public byte[] render(StatsSummary summary, String rootUrl, JsonWriter writer) {
+                if (content == null
+                        || (rootUrl == null ? contentRootUrl != null : !rootUrl.equals(contentRootUrl))) {
+                    factory.writeConfigureFailureCauses(writer.reset(), rootUrl);
+                    content = writer.toByteArray();
+                    contentRootUrl = rootUrl;
+                }
+                return content;
+            }
+        };
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.widget;
+
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import hudson.ExtensionPoint;
+
+/**
+ * A widget of DashBeats, fed from the stats summary.
+ * <p/>
+ * A widget declares where it is published, its path on the DashBeats server, and how urgent
+ * its updates are, its {@link Priority}. Its content is rendered by the {@link WidgetRenderer}
+ * it creates, from the part of the summary it depends on. Renderers are expected to return
+ * the same content instance while that part has not changed, which is how the publishers
+ * tell the widgets which changed and skip the others.
+ * <p/>
+ * The built-in widgets are listed by {@link WidgetRegistry}, other plugins may contribute
+ * widgets by extending this class with the {@link hudson.Extension} annotation.
+ */
+public abstract class DashBeatsWidget implements ExtensionPoint {
+
+    /**
+     * Priority of the updates of a widget, highest first
+     */
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW
+    }
+
+    /**
+     * Get the name of the widget, used to select the widgets of a DashBeats server, e.g. LATEST_FAILED_BUILDS
+     *
+     * @return name
+     */
+    public abstract String getName();
+
+    /**
+     * Get the path of the widget on the DashBeats server, e.g. /widgets/latest_failed_builds
+     *
+     * @return path
+     */
+    public abstract String getPath();
+
+    /**
+     * Create the renderer of the widget for a json factory. A renderer is only used by one
+     * thread at a time and may keep what it rendered from one summary to the next.
+     *
+     * @param factory
+     * @return renderer
+     */
+    public abstract WidgetRenderer createRenderer(JsonFactory factory);
+
+    /**
+     * Get the priority of the updates of the widget
+     *
+     * @return priority, normal by default
+     */
+    public Priority getPriority() {
+        return Priority.NORMAL;
+    }
+
+    /**
+     * Get the id of the widget, as named on DashBeats: the last segment of its path
+     *
+     * @return id
+     */
+    public String getId() {
+        String path = getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
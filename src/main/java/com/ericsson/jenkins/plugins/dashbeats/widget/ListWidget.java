@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.widget;
+
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonWriter;
+import com.ericsson.jenkins.plugins.dashbeats.json.RowCache;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+
+import java.util.List;
+
+/**
+ * A widget listing items of the summary, one row per item. Rows are cached, only the rows
+ * of the items which changed are rendered again, see {@link RowCache}.
+ *
+ * @param <T> the type of the items
+ */
+public abstract class ListWidget<T> extends DashBeatsWidget {
+
+    /**
+     * Get the items listed, the part of the summary the widget depends on
+     *
+     * @param summary
+     * @return items
+     */
+    protected abstract List<T> getItems(StatsSummary summary);
+
+    /**
+     * Get the version of an item, changing whenever the item changes
+     *
+     * @param item
+     * @return version
+     */
+    protected abstract int getVersion(T item);
+
+    /**
+     * Write the row of an item, as a json object
+     *
+     * @param factory
+     * @param out
+     * @param item
+     * @param rootUrl
+     */
+    protected abstract void writeRow(JsonFactory factory, JsonWriter out, T item, String rootUrl);
+
+    @Override
+    public WidgetRenderer createRenderer(final JsonFactory factory) {
+        final RowCache<T> rows = new RowCache<T>() {
+            @Override
+            protected int getVersion(T item) {
+                return ListWidget.this.getVersion(item);
+            }
+
+            @Override
+            protected void writeRow(JsonWriter out, T item, String rootUrl) {
+                ListWidget.this.writeRow(factory, out, item, rootUrl);
+            }
+        };
+        return new WidgetRenderer() {
+            @Override
+            public byte[] render(StatsSummary summary, String rootUrl, JsonWriter writer) {
+                return rows.render(getItems(summary), rootUrl, writer);
+            }
+        };
+    }
+}
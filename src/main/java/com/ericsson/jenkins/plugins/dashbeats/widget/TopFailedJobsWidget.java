@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.widget;
+
+import com.ericsson.jenkins.plugins.dashbeats.client.DashBeatsPublisher;
+import com.ericsson.jenkins.plugins.dashbeats.client.WidgetType;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonWriter;
+import com.ericsson.jenkins.plugins.dashbeats.model.BuildInfo;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+
+import java.util.List;
+
+/**
+ * The jobs failing the most.
+ */
+final class TopFailedJobsWidget extends ListWidget<BuildInfo> {
+
+    @Override
+    public String getName() {
+        return WidgetType.TOP_FAILED_JOBS.name();
+    }
+
+    @Override
+    public String getPath() {
+        return DashBeatsPublisher.TOP_FAILED_JOBS_PATH;
+    }
+
+    @Override
+    protected List<BuildInfo> getItems(StatsSummary summary) {
+        return summary.getTopFailedJobs();
+    }
+
+    @Override
+    protected int getVersion(BuildInfo item) {
+        return item.getVersion();
+    }
+
+    @Override
+    protected void writeRow(JsonFactory factory, JsonWriter out, BuildInfo item, String rootUrl) {
+        factory.writeTopFailedJob(out, item, rootUrl);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.widget;
+
+import com.ericsson.jenkins.plugins.dashbeats.client.WidgetType;
+import jenkins.model.Jenkins;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The widgets known to DashBeats: the built-in widgets, one per {@link WidgetType}, followed by
+ * the widgets contributed by other plugins as extensions of {@link DashBeatsWidget}.
+ */
+public final class WidgetRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WidgetRegistry.class.getName());
+
+    /* The built-in widgets, in the order of the widget types */
+    private static final List<DashBeatsWidget> BUILTINS = Collections.unmodifiableList(Arrays.<DashBeatsWidget>asList(
+            new WelcomeWidget(),
+            new CommonFaultCausesWidget(),
+            new LatestFailedBuildsWidget(),
+            new LatestBuildsWidget(),
+            new TopFailedJobsWidget(),
+            new ConfigureFailureCausesWidget()));
+
+    private WidgetRegistry() {
+    }
+
+    /**
+     * Get the built-in widgets
+     *
+     * @return widgets
+     */
+    public static List<DashBeatsWidget> getBuiltins() {
+        return BUILTINS;
+    }
+
+    /**
+     * Get the built-in widget of a widget type
+     *
+     * @param type
+     * @return widget
+     */
+    public static DashBeatsWidget getBuiltin(WidgetType type) {
+        return BUILTINS.get(type.ordinal());
+    }
+
+    /**
+     * Get all widgets, the built-in ones first. Extensions are only looked up while Jenkins runs,
+     * and one named as a widget listed before it is ignored.
+     *
+     * @return widgets
+     */
+    public static List<DashBeatsWidget> all() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return BUILTINS;
+        }
+        List<DashBeatsWidget> widgets = new ArrayList<DashBeatsWidget>(BUILTINS);
+        for (DashBeatsWidget extension : jenkins.getExtensionList(DashBeatsWidget.class)) {
+            if (find(widgets, extension.getName()) == null) {
+                widgets.add(extension);
+            } else {
+                LOGGER.warn("DashBeats widget {} ignored, a widget has the same name", extension.getClass().getName());
+            }
+        }
+        return Collections.unmodifiableList(widgets);
+    }
+
+    /**
+     * Get a widget by name, case insensitive
+     *
+     * @param name
+     * @return widget, null if unknown
+     */
+    public static DashBeatsWidget get(String name) {
+        return find(all(), name);
+    }
+
+    /**
+     * Parse a list of widget names separated by commas or spaces, case insensitive.
+     * An empty list means all widgets.
+     *
+     * @param names
+     * @return the widgets, in the order of the registry
+     * @throws IllegalArgumentException if a name is not a known widget
+     */
+    public static List<DashBeatsWidget> parse(String names) {
+        List<DashBeatsWidget> all = all();
+        if (names == null || names.trim().length() == 0) {
+            return all;
+        }
+        List<DashBeatsWidget> selected = new ArrayList<DashBeatsWidget>();
+        for (String name : names.trim().split("[,\\s]+")) {
+            if (name.length() > 0) {
+                DashBeatsWidget widget = find(all, name);
+                if (widget == null) {
+                    throw new IllegalArgumentException("Unknown widget " + name);
+                }
+                selected.add(widget);
+            }
+        }
+        List<DashBeatsWidget> widgets = new ArrayList<DashBeatsWidget>();
+        for (DashBeatsWidget widget : all) {
+            if (selected.contains(widget)) {
+                widgets.add(widget);
+            }
+        }
+        return widgets;
+    }
+
+    /**
+     * Find a widget by name, case insensitive
+     *
+     * @param widgets
+     * @param name
+     * @return widget, null if not found
+     */
+    private static DashBeatsWidget find(List<DashBeatsWidget> widgets, String name) {
+        String upperName = name.toUpperCase(Locale.ENGLISH);
+        for (DashBeatsWidget widget : widgets) {
+            if (widget.getName().toUpperCase(Locale.ENGLISH).equals(upperName)) {
+                return widget;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of the circuit breaker, the scheduler is mocked and probes are triggered by hand.
+ */
+public class CircuitBreakerClientTest {
+
+    private String url;
+    private String welcomeUrl;
+    private JSONObject json;
+    private DashingClient delegate;
+    private ScheduledExecutorService scheduler;
+    private CircuitBreakerClient.StateListener listener;
+    private CircuitBreakerClient client;
+
+    @Before
+    public void setUp() {
+        url = DashBeatsPublisher.DEFAULT_URL;
+        welcomeUrl = url + DashBeatsPublisher.WELCOME_PATH;
+        json = new JSONObject();
+        json.put("auth_token", DashBeatsPublisher.DEFAULT_AUTH_TOKEN);
+        delegate = Mockito.mock(DashingClient.class);
+        scheduler = Mockito.mock(ScheduledExecutorService.class);
+        listener = Mockito.mock(CircuitBreakerClient.StateListener.class);
+        client = new CircuitBreakerClient(delegate, url, 2, 1000L, 4000L, scheduler);
+        client.addStateListener(listener);
+    }
+
+    /**
+     * GIVEN a DashBeats server which is down
+     * WHEN posting as many times as the failure threshold
+     * THEN the circuit opens
+     * and next posts are short-circuited without reaching the server
+     * and a probe is scheduled
+     */
+    @Test
+    public void shouldOpenAfterConsecutiveFailures() {
+        Mockito.when(delegate.post(welcomeUrl, json)).thenReturn(400);
+        client.post(welcomeUrl, json);
+        client.post(welcomeUrl, json);
+
+        Assert.assertTrue(client.isOpen());
+        Assert.assertEquals(CircuitBreakerClient.SERVICE_UNAVAILABLE, client.post(welcomeUrl, json));
+        Mockito.verify(delegate, Mockito.times(2)).post(welcomeUrl, json);
+        Mockito.verify(listener).onOpen();
+        Mockito.verify(scheduler).schedule(Mockito.any(Runnable.class), Mockito.eq(1000L),
+                Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * GIVEN a DashBeats server failing from time to time
+     * WHEN a success comes between failures
+     * THEN the circuit stays closed
+     */
+    @Test
+    public void shouldStayClosedWhenFailuresAreNotConsecutive() {
+        Mockito.when(delegate.post(welcomeUrl, json)).thenReturn(400, 204, 400);
+        client.post(welcomeUrl, json);
+        client.post(welcomeUrl, json);
+        client.post(welcomeUrl, json);
+
+        Assert.assertFalse(client.isOpen());
+        Mockito.verify(listener, Mockito.never()).onOpen();
+    }
+
+    /**
+     * GIVEN an open circuit
+     * WHEN the probe fails
+     * THEN the next probe is scheduled with a doubled delay
+     */
+    @Test
+    public void shouldBackOffWhenProbeFails() {
+        Mockito.when(delegate.post(welcomeUrl, json)).thenReturn(400);
+        Mockito.when(delegate.ping(url)).thenReturn(400);
+        client.post(welcomeUrl, json);
+        client.post(welcomeUrl, json);
+
+        client.probe();
+
+        Assert.assertTrue(client.isOpen());
+        Mockito.verify(scheduler).schedule(Mockito.any(Runnable.class), Mockito.eq(2000L),
+                Mockito.eq(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * GIVEN an open circuit
+     * WHEN the probe succeeds
+     * THEN the circuit closes
+     * and the listeners are notified
+     */
+    @Test
+    public void shouldCloseWhenProbeSucceeds() {
+        Mockito.when(delegate.post(welcomeUrl, json)).thenReturn(400);
+        Mockito.when(delegate.ping(url)).thenReturn(200);
+        client.post(welcomeUrl, json);
+        client.post(welcomeUrl, json);
+
+        client.probe();
+
+        Assert.assertFalse(client.isOpen());
+        Mockito.verify(listener).onClose();
+    }
+}
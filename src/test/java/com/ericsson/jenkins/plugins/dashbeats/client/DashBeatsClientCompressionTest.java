@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Tests of the compression of payloads, against a local stub of DashBeats.
+ */
+public class DashBeatsClientCompressionTest {
+
+    private static final String PAYLOAD = "{\"auth_token\":\"YOUR_AUTH_TOKEN\",\"text\":\"Welcome\"}";
+
+    private DashBeatsStubServer server;
+    private String welcomeUrl;
+    private byte[] payload;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new DashBeatsStubServer().start();
+        welcomeUrl = server.getUrl() + DashBeatsPublisher.WELCOME_PATH;
+        payload = PAYLOAD.getBytes(Charset.forName("UTF-8"));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * GIVEN a server accepting compressed payloads
+     * WHEN posting with compression
+     * THEN the payload is received compressed
+     * and compression stays on
+     */
+    @Test
+    public void shouldPostCompressedPayload() {
+        //GIVEN
+        DashBeatsClient client = new DashBeatsClient(true);
+        //WHEN
+        int code = client.post(welcomeUrl, payload, payload.length);
+        //THEN
+        Assert.assertEquals(204, code);
+        List<DashBeatsStubServer.Request> requests = server.getRequests();
+        Assert.assertEquals(1, requests.size());
+        Assert.assertEquals("gzip", requests.get(0).getContentEncoding());
+        Assert.assertEquals(PAYLOAD, requests.get(0).getBody());
+        Assert.assertTrue(client.isCompressing());
+    }
+
+    /**
+     * GIVEN a server rejecting compressed payloads
+     * WHEN posting with compression
+     * THEN the payload is sent again uncompressed
+     * and compression is turned off for the next posts
+     */
+    @Test
+    public void shouldTurnOffCompressionWhenRejected() {
+        //GIVEN
+        server.setAcceptGzip(false);
+        DashBeatsClient client = new DashBeatsClient(true);
+        //WHEN
+        int code = client.post(welcomeUrl, payload, payload.length);
+        //THEN
+        Assert.assertEquals(204, code);
+        Assert.assertFalse(client.isCompressing());
+        client.post(welcomeUrl, payload, payload.length);
+        List<DashBeatsStubServer.Request> requests = server.getRequests();
+        Assert.assertEquals(2, requests.size());
+        for (DashBeatsStubServer.Request request : requests) {
+            Assert.assertNull(request.getContentEncoding());
+            Assert.assertEquals(PAYLOAD, request.getBody());
+        }
+    }
+
+    /**
+     * GIVEN a server telling it does not accept compressed payloads
+     * WHEN pinging it
+     * THEN compression is turned off before any post
+     * and turned on again once the server accepts gzip
+     */
+    @Test
+    public void shouldProbeCompressionWithPing() {
+        //GIVEN
+        server.setAcceptEncoding("identity");
+        DashBeatsClient client = new DashBeatsClient(true);
+        //WHEN
+        Assert.assertEquals(200, client.ping(server.getUrl()));
+        //THEN
+        Assert.assertFalse(client.isCompressing());
+        server.setAcceptEncoding("gzip, identity");
+        client.ping(server.getUrl());
+        Assert.assertTrue(client.isCompressing());
+    }
+
+    /**
+     * GIVEN a client without compression
+     * WHEN pinging a server accepting gzip
+     * THEN payloads are still posted uncompressed
+     */
+    @Test
+    public void shouldNotCompressWhenNotEnabled() {
+        //GIVEN
+        server.setAcceptEncoding("gzip");
+        DashBeatsClient client = new DashBeatsClient();
+        //WHEN
+        client.ping(server.getUrl());
+        client.post(welcomeUrl, payload, payload.length);
+        //THEN
+        Assert.assertFalse(client.isCompressing());
+        Assert.assertNull(server.getRequests().get(1).getContentEncoding());
+    }
+}
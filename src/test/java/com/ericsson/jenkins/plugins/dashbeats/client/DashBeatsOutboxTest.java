@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.AdditionalMatchers;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.nio.charset.Charset;
+
+/**
+ * Tests of the outbox of undelivered widget payloads.
+ */
+public class DashBeatsOutboxTest {
+
+    private String welcomeUrl;
+    private DashingClient client;
+    private File file;
+    private DashBeatsOutbox outbox;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        welcomeUrl = DashBeatsPublisher.DEFAULT_URL + DashBeatsPublisher.WELCOME_PATH;
+        client = Mockito.mock(DashingClient.class);
+        file = new File(folder.getRoot(), "outbox.xml");
+        outbox = new DashBeatsOutbox(client, file);
+    }
+
+    /**
+     * GIVEN several payloads which could not be delivered to the same widget
+     * WHEN recording them in the outbox
+     * THEN only the latest one is kept
+     */
+    @Test
+    public void shouldKeepLatestPayloadPerWidget() {
+        record(createWelcome("first"), 400);
+        record(createWelcome("second"), 503);
+        Assert.assertEquals(1, outbox.size());
+
+        outbox.drain();
+        byte[] second = createWelcome("second");
+        Mockito.verify(client).post(Matchers.eq(welcomeUrl), AdditionalMatchers.aryEq(second),
+                Matchers.eq(second.length));
+    }
+
+    /**
+     * GIVEN a pending payload
+     * WHEN a newer payload is delivered to the same widget
+     * THEN the pending payload is dropped
+     */
+    @Test
+    public void shouldClearPayloadWhenDelivered() {
+        record(createWelcome("first"), 400);
+        record(createWelcome("second"), 204);
+        Assert.assertEquals(0, outbox.size());
+    }
+
+    /**
+     * GIVEN a pending payload persisted to file
+     * WHEN loading a new outbox from the same file, e.g. after a restart
+     * AND the server is reachable again
+     * THEN the payload is delivered and the outbox is empty
+     */
+    @Test
+    public void shouldDeliverPersistedPayloadAfterRestart() {
+        record(createWelcome("first"), 400);
+        outbox.flush();
+        Assert.assertTrue(file.exists());
+
+        DashBeatsOutbox reloaded = new DashBeatsOutbox(client, file);
+        reloaded.load();
+        Assert.assertEquals(1, reloaded.size());
+
+        byte[] first = createWelcome("first");
+        Mockito.when(client.post(Matchers.eq(welcomeUrl), AdditionalMatchers.aryEq(first),
+                Matchers.eq(first.length))).thenReturn(204);
+        reloaded.drain();
+        Assert.assertEquals(0, reloaded.size());
+    }
+
+    /**
+     * GIVEN a pending payload
+     * WHEN draining while the server is still unreachable
+     * THEN the payload is kept
+     */
+    @Test
+    public void shouldKeepPayloadWhenServerStillUnreachable() {
+        record(createWelcome("first"), 400);
+        Mockito.when(client.post(Matchers.eq(welcomeUrl), Matchers.any(byte[].class),
+                Matchers.anyInt())).thenReturn(400);
+        outbox.drain();
+        Assert.assertEquals(1, outbox.size());
+    }
+
+    private void record(byte[] payload, int code) {
+        outbox.record(welcomeUrl, payload, payload.length, code);
+    }
+
+    private byte[] createWelcome(String text) {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("auth_token", DashBeatsPublisher.DEFAULT_AUTH_TOKEN);
+        jsonObject.put("text", text);
+        return jsonObject.toString().getBytes(Charset.forName("UTF-8"));
+    }
+}
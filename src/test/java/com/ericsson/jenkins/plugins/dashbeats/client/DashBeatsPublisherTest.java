@@ -35,9 +35,12 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.nio.charset.Charset;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 
 /**
@@ -82,10 +85,13 @@ public class DashBeatsPublisherTest {
         //GIVEN
         JSONObject json = jsonFactory.createWelcome();
         //WHEN
-        Mockito.when(client.post(url + DashBeatsPublisher.WELCOME_PATH, json)).thenReturn(204);
+        mockPost(DashBeatsPublisher.WELCOME_PATH, 204);
         int code = publisher.publish(WidgetType.WELCOME, statsSummary);
         //THEN
         Assert.assertEquals(204, code);
+        JSONObject posted = getPosted(DashBeatsPublisher.WELCOME_PATH);
+        Assert.assertEquals(json.keySet(), posted.keySet());
+        Assert.assertEquals(authToken, posted.getString("auth_token"));
     }
 
     /**
@@ -103,10 +109,11 @@ public class DashBeatsPublisherTest {
         JSONObject jsonObject = jsonFactory.createJson();
         jsonObject.put("items", data);
         //WHEN
-        Mockito.when(client.post(url + DashBeatsPublisher.COMMON_FAULT_CAUSES_PATH, jsonObject)).thenReturn(204);
+        mockPost(DashBeatsPublisher.COMMON_FAULT_CAUSES_PATH, 204);
         int code = publisher.publish(WidgetType.COMMON_FAULT_CAUSES, statsSummary);
         //THEN
         Assert.assertEquals(204, code);
+        Assert.assertEquals(jsonObject, getPosted(DashBeatsPublisher.COMMON_FAULT_CAUSES_PATH));
     }
 
     /**
@@ -124,10 +131,11 @@ public class DashBeatsPublisherTest {
         JSONObject jsonObject = jsonFactory.createJson();
         jsonObject.put("items", data);
         //WHEN
-        Mockito.when(client.post(url + DashBeatsPublisher.LATEST_FAILED_BUILDS_PATH, jsonObject)).thenReturn(204);
+        mockPost(DashBeatsPublisher.LATEST_FAILED_BUILDS_PATH, 204);
         int code = publisher.publish(WidgetType.LATEST_FAILED_BUILDS, statsSummary);
         //THEN
         Assert.assertEquals(204, code);
+        Assert.assertEquals(jsonObject, getPosted(DashBeatsPublisher.LATEST_FAILED_BUILDS_PATH));
     }
 
     /**
@@ -145,10 +153,11 @@ public class DashBeatsPublisherTest {
         JSONObject jsonObject = jsonFactory.createJson();
         jsonObject.put("items", data);
         //WHEN
-        Mockito.when(client.post(url + DashBeatsPublisher.LATEST_BUILDS_PATH, jsonObject)).thenReturn(204);
+        mockPost(DashBeatsPublisher.LATEST_BUILDS_PATH, 204);
         int code = publisher.publish(WidgetType.LATEST_BUILD, statsSummary);
         //THEN
         Assert.assertEquals(204, code);
+        Assert.assertEquals(jsonObject, getPosted(DashBeatsPublisher.LATEST_BUILDS_PATH));
     }
 
     /**
@@ -166,10 +175,11 @@ public class DashBeatsPublisherTest {
         JSONObject jsonObject = jsonFactory.createJson();
         jsonObject.put("items", data);
         //WHEN
-        Mockito.when(client.post(url + DashBeatsPublisher.TOP_FAILED_JOBS_PATH, jsonObject)).thenReturn(204);
+        mockPost(DashBeatsPublisher.TOP_FAILED_JOBS_PATH, 204);
         int code = publisher.publish(WidgetType.TOP_FAILED_JOBS, statsSummary);
         //THEN
         Assert.assertEquals(204, code);
+        Assert.assertEquals(jsonObject, getPosted(DashBeatsPublisher.TOP_FAILED_JOBS_PATH));
     }
 
     /**
@@ -186,4 +196,78 @@ public class DashBeatsPublisherTest {
         //THEN
         Assert.assertEquals(200, code);
     }
+
+    /**
+     * GIVEN a DashBeats server which became unreachable
+     * WHEN publishing a summary
+     * THEN nothing is posted
+     * and the summary is published once the server is back
+     */
+    @Test
+    public void shouldPublishLatestSummaryOnRecovery() {
+        //GIVEN
+        publisher.onOpen();
+        //WHEN
+        publisher.publish(statsSummary);
+        //THEN
+        Mockito.verifyZeroInteractions(client);
+        Assert.assertSame(statsSummary, publisher.getLatestSummary());
+        publisher.onClose();
+        Mockito.verify(client, Mockito.times(6)).post(Mockito.anyString(), Mockito.any(byte[].class),
+                Mockito.anyInt());
+    }
+
+    /**
+     * GIVEN a publisher restricted to the failure widgets
+     * WHEN publishing a summary
+     * THEN only the failure widgets are posted to
+     */
+    @Test
+    public void shouldPublishOnlyToSelectedWidgets() {
+        //GIVEN
+        DashBeatsPublisher restricted = new DashBeatsPublisher(url, client, jsonFactory,
+                EnumSet.of(WidgetType.LATEST_FAILED_BUILDS, WidgetType.COMMON_FAULT_CAUSES));
+        //WHEN
+        restricted.publish(statsSummary);
+        //THEN
+        Mockito.verify(client).post(Mockito.eq(url + DashBeatsPublisher.LATEST_FAILED_BUILDS_PATH),
+                Mockito.any(byte[].class), Mockito.anyInt());
+        Mockito.verify(client).post(Mockito.eq(url + DashBeatsPublisher.COMMON_FAULT_CAUSES_PATH),
+                Mockito.any(byte[].class), Mockito.anyInt());
+        Mockito.verifyNoMoreInteractions(client);
+    }
+
+    /**
+     * GIVEN a summary published to DashBeats
+     * WHEN publishing a summary where only the welcome text changed
+     * THEN only the welcome widget is posted again
+     */
+    @Test
+    public void shouldNotPostUnchangedWidgets() {
+        //GIVEN
+        Mockito.when(client.post(Mockito.anyString(), Mockito.any(byte[].class), Mockito.anyInt())).thenReturn(204);
+        publisher.publish(statsSummary);
+        //WHEN
+        publisher.publish(statsSummary);
+        //THEN
+        Mockito.verify(client, Mockito.times(2)).post(Mockito.eq(url + DashBeatsPublisher.WELCOME_PATH),
+                Mockito.any(byte[].class), Mockito.anyInt());
+        Mockito.verify(client, Mockito.times(1)).post(Mockito.eq(url + DashBeatsPublisher.LATEST_FAILED_BUILDS_PATH),
+                Mockito.any(byte[].class), Mockito.anyInt());
+    }
+
+    private void mockPost(String path, int code) {
+        Mockito.when(client.post(Mockito.eq(url + path), Mockito.any(byte[].class), Mockito.anyInt()))
+                .thenReturn(code);
+    }
+
+    /**
+     * Get the json posted to a widget, as a json object to be compared with the expected one
+     */
+    private JSONObject getPosted(String path) {
+        ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+        ArgumentCaptor<Integer> length = ArgumentCaptor.forClass(Integer.class);
+        Mockito.verify(client).post(Mockito.eq(url + path), payload.capture(), length.capture());
+        return JSONObject.fromObject(new String(payload.getValue(), 0, length.getValue(), Charset.forName("UTF-8")));
+    }
 }
@@ -0,0 +1,239 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A local stub of a DashBeats server, recording the requests it receives.
+ * Posts are answered with 204, pings with 200.
+ */
+public class DashBeatsStubServer {
+
+    /**
+     * A request received by the stub
+     */
+    public static class Request {
+        private final String method;
+        private final String path;
+        private final String contentEncoding;
+        private final byte[] body;
+
+        Request(String method, String path, String contentEncoding, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.contentEncoding = contentEncoding;
+            this.body = body;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        /**
+         * Get the body, decompressed if it was
+         * @return
+         */
+        public String getBody() {
+            try {
+                return new String(body, "UTF-8");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private final HttpServer server;
+    private final List<Request> requests = new CopyOnWriteArrayList<Request>();
+    /* Whether compressed posts are accepted, otherwise answered with 415 */
+    private volatile boolean acceptGzip = true;
+    /* Accept-Encoding header sent in response to pings, none if null */
+    private volatile String acceptEncoding;
+    /* Latency added to every response, in milliseconds */
+    private volatile long latency;
+    /* Whether the requests are recorded, otherwise only counted, e.g. by benchmarks */
+    private volatile boolean recording = true;
+    /* Number of posts received, and of bytes in their body as sent */
+    private final AtomicLong posts = new AtomicLong();
+    private final AtomicLong postedBytes = new AtomicLong();
+
+    /**
+     * Constructor of a stub listening on a free local port
+     *
+     * @throws IOException
+     */
+    public DashBeatsStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                DashBeatsStubServer.this.handle(exchange);
+            }
+        });
+    }
+
+    /**
+     * Start serving
+     *
+     * @return this stub
+     */
+    public DashBeatsStubServer start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * Stop serving
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Get the url of the stub
+     *
+     * @return url
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setAcceptGzip(boolean acceptGzip) {
+        this.acceptGzip = acceptGzip;
+    }
+
+    public void setAcceptEncoding(String acceptEncoding) {
+        this.acceptEncoding = acceptEncoding;
+    }
+
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Get the number of posts received so far
+     *
+     * @return posts
+     */
+    public long getPosts() {
+        return posts.get();
+    }
+
+    /**
+     * Get the number of bytes posted so far, as sent, i.e. compressed if they were
+     *
+     * @return bytes
+     */
+    public long getPostedBytes() {
+        return postedBytes.get();
+    }
+
+    /**
+     * Get the requests received so far
+     *
+     * @return requests
+     */
+    public List<Request> getRequests() {
+        return requests;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        byte[] body = read(exchange.getRequestBody());
+        try {
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if ("GET".equals(exchange.getRequestMethod())) {
+            if (recording) {
+                requests.add(new Request("GET", exchange.getRequestURI().getPath(), null, body));
+            }
+            if (acceptEncoding != null) {
+                exchange.getResponseHeaders().add("Accept-Encoding", acceptEncoding);
+            }
+            respond(exchange, 200);
+            return;
+        }
+        boolean gzip = "gzip".equalsIgnoreCase(contentEncoding);
+        if (gzip && !acceptGzip) {
+            exchange.getResponseHeaders().add("Accept-Encoding", "identity");
+            respond(exchange, 415);
+            return;
+        }
+        posts.incrementAndGet();
+        postedBytes.addAndGet(body.length);
+        if (!recording) {
+            respond(exchange, 204);
+            return;
+        }
+        if (gzip) {
+            body = read(new GZIPInputStream(new ByteArrayInputStream(body)));
+        }
+        requests.add(new Request(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), contentEncoding, body));
+        respond(exchange, 204);
+    }
+
+    private static void respond(HttpExchange exchange, int code) throws IOException {
+        exchange.sendResponseHeaders(code, -1);
+        exchange.close();
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.client;
+
+import com.ericsson.jenkins.plugins.dashbeats.json.RenderedSummary;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import com.ericsson.jenkins.plugins.dashbeats.widget.WidgetRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.Date;
+
+public class TargetPublisherTest {
+
+    private DashBeatsPublisher publisher;
+    private TargetPublisher target;
+    private RenderedSummary rendered;
+
+    @Before
+    public void setUp() {
+        publisher = Mockito.mock(DashBeatsPublisher.class);
+        Mockito.when(publisher.getWidgets()).thenReturn(WidgetRegistry.getBuiltins());
+        target = new TargetPublisher(publisher, 60000L);
+        // the pending widgets are published by the test thread instead of the worker
+        target.shutdown();
+        byte[] empty = new byte[0];
+        rendered = new RenderedSummary(new StatsSummary(new Date(), new Date(), 0),
+                empty, empty, empty, empty, empty, empty);
+    }
+
+    @After
+    public void tearDown() {
+        target.shutdown();
+    }
+
+    /**
+     * GIVEN a summary pending for every widget
+     * WHEN publishing the pending widgets
+     * THEN the failure widgets are published first
+     * and the low priority widgets last
+     */
+    @Test
+    public void shouldPublishFailureWidgetsFirst() {
+        //GIVEN
+        target.publish(rendered);
+        Assert.assertEquals(WidgetType.values().length, target.getQueueDepth());
+        //WHEN
+        target.publishPending();
+        //THEN
+        InOrder inOrder = Mockito.inOrder(publisher);
+        inOrder.verify(publisher).publishWidget(WidgetType.COMMON_FAULT_CAUSES.getWidget(), rendered);
+        inOrder.verify(publisher).publishWidget(WidgetType.LATEST_FAILED_BUILDS.getWidget(), rendered);
+        inOrder.verify(publisher).publishWidget(WidgetType.LATEST_BUILD.getWidget(), rendered);
+        inOrder.verify(publisher).publishWidget(WidgetType.TOP_FAILED_JOBS.getWidget(), rendered);
+        inOrder.verify(publisher).publishWidget(WidgetType.WELCOME.getWidget(), rendered);
+        inOrder.verify(publisher).publishWidget(WidgetType.CONFIGURE_FAILURE_CAUSES.getWidget(), rendered);
+        inOrder.verify(publisher).flushOutbox();
+        Assert.assertEquals(0, target.getQueueDepth());
+    }
+
+    /**
+     * GIVEN low priority widgets published recently
+     * WHEN publishing a new summary
+     * THEN the other widgets are published
+     * and the low priority widgets are held back, coalescing their updates
+     */
+    @Test
+    public void shouldCoalesceLowPriorityWidgets() {
+        //GIVEN
+        target.publish(rendered);
+        target.publishPending();
+        RenderedSummary next = new RenderedSummary(new StatsSummary(new Date(), new Date(), 0), new byte[0], new byte[0],
+                new byte[0], new byte[0], new byte[0], new byte[0]);
+        //WHEN
+        target.publish(next);
+        target.publishPending();
+        //THEN
+        Mockito.verify(publisher).publishWidget(WidgetType.LATEST_FAILED_BUILDS.getWidget(), next);
+        Mockito.verify(publisher).publishWidget(WidgetType.TOP_FAILED_JOBS.getWidget(), next);
+        Mockito.verify(publisher, Mockito.never()).publishWidget(WidgetType.WELCOME.getWidget(), next);
+        Mockito.verify(publisher, Mockito.never()).publishWidget(WidgetType.CONFIGURE_FAILURE_CAUSES.getWidget(), next);
+        Assert.assertEquals(2, target.getQueueDepth());
+    }
+
+    /**
+     * GIVEN a summary skipped while the server was unreachable
+     * WHEN the server is back
+     * THEN the summary is queued for every widget
+     * instead of being published by the thread which noticed the recovery
+     */
+    @Test
+    public void shouldQueueLatestSummaryOnRecovery() {
+        //GIVEN
+        Mockito.when(publisher.resume()).thenReturn(rendered);
+        target.onOpen();
+        Mockito.verify(publisher).onOpen();
+        //WHEN
+        target.onClose();
+        //THEN
+        Mockito.verify(publisher).resume();
+        Mockito.verify(publisher, Mockito.never()).publish(rendered);
+        Mockito.verify(publisher, Mockito.never()).onClose();
+        Assert.assertEquals(WidgetType.values().length, target.getQueueDepth());
+        target.publishPending();
+        InOrder inOrder = Mockito.inOrder(publisher);
+        inOrder.verify(publisher).publishWidget(WidgetType.COMMON_FAULT_CAUSES.getWidget(), rendered);
+        inOrder.verify(publisher).publishWidget(WidgetType.CONFIGURE_FAILURE_CAUSES.getWidget(), rendered);
+    }
+}
@@ -43,12 +43,15 @@ import org.jvnet.hudson.test.JenkinsRule;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by ekongto on 2014-09-16.
  */
 public class DashBeatsKnowledgeBaseTest {
 
+    private static final long WARM_UP_TIMEOUT = 30;
+
     private String url;
     private String authToken;
 
@@ -59,11 +62,12 @@ public class DashBeatsKnowledgeBaseTest {
     public JenkinsRule rule = new JenkinsRule();
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         this.url = DashBeatsPublisher.DEFAULT_URL;
         this.authToken = DashBeatsPublisher.DEFAULT_AUTH_TOKEN;
         kb = new DashBeatsKnowledgeBase(url, authToken);
         kb.start();
+        Assert.assertTrue(kb.getWarmUp().await(WARM_UP_TIMEOUT, TimeUnit.SECONDS));
         factory = new StatisticsMockFactory();
     }
 
@@ -118,6 +122,27 @@ public class DashBeatsKnowledgeBaseTest {
         Assert.assertEquals(1, kb.getStatistics(filter, 1).size());
     }
 
+    /**
+     * GIVEN a knowledge base just restarted, loading its store in the background
+     * WHEN saving statistics right away
+     * THEN the statistics are saved once the store is loaded
+     */
+    @Test
+    public void shouldSaveStatisticsWhileWarmingUp() throws Exception {
+        //GIVEN
+        kb.start();
+        Statistics stat1 = factory.createStatistics(new Date(), "jobTest1", 1, Result.SUCCESS.toString());
+        //WHEN
+        kb.saveStatistics(stat1);
+        //THEN
+        Assert.assertTrue(kb.getWarmUp().await(WARM_UP_TIMEOUT, TimeUnit.SECONDS));
+        Assert.assertEquals(StoreWarmUp.State.READY, kb.getWarmUp().getState());
+        Assert.assertEquals(100, kb.getWarmUp().getProgress());
+        GraphFilterBuilder filter = new GraphFilterBuilder();
+        filter.setProjectName("jobTest1");
+        Assert.assertEquals(1, kb.getStatistics(filter, 1).size());
+    }
+
     /**
      * GIVEN a DashBeats store with 1 statistics objects
      * and a filter
@@ -24,6 +24,7 @@
 package com.ericsson.jenkins.plugins.dashbeats.db;
 
 import com.ericsson.jenkins.plugins.dashbeats.model.*;
+import com.sonyericsson.jenkins.plugins.bfa.model.FailureCause;
 import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
 import hudson.model.Result;
 import net.sf.json.JSONObject;
@@ -31,6 +32,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -160,4 +162,23 @@ public class DashBeatsStoreTest {
 
     }
 
+
+    /**
+     * GIVEN a failed build whose cause is not known by the knowledge base, e.g. not loaded yet
+     * WHEN updating the store
+     * THEN the store is updated
+     * and the fault cause is named by its id
+     */
+    @Test
+    public void shouldUpdateStoreWithUnknownCause() throws Exception {
+        //GIVEN
+        Statistics stat = factory.createStatistics(new Date(), "jobTest1", 1, Result.FAILURE.toString());
+        //WHEN
+        store.update(stat, Collections.<FailureCause>emptyList());
+        //THEN
+        Assert.assertEquals(1, store.size());
+        List<FaultCauseInfo> causes = store.createSummary().getCommonFaultCauses();
+        Assert.assertEquals(1, causes.size());
+        Assert.assertEquals("causeId-1", causes.get(0).getCauseName());
+    }
 }
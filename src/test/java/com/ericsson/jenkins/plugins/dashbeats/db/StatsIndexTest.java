@@ -0,0 +1,306 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.model.Result;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class StatsIndexTest {
+
+    private StatsIndex index;
+    private GraphFilterBuilder filter;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new StatsIndex();
+        index.addAll(new StatisticsMockFactory().createStatisticsBatch());
+        filter = Mockito.mock(GraphFilterBuilder.class);
+    }
+
+    /**
+     * GIVEN the stats of a build already indexed
+     * WHEN adding them again
+     * THEN they are not added
+     */
+    @Test
+    public void shouldAddStatsOfABuildOnce() throws Exception {
+        //GIVEN
+        Statistics stat = new StatisticsMockFactory().createStatistics(new Date(), "jobTestA", 1,
+                Result.FAILURE.toString());
+        //WHEN
+        boolean added = index.add(stat);
+        //THEN
+        Assert.assertFalse(added);
+        Assert.assertEquals(24, index.size());
+        Assert.assertEquals(24, index.toMap().size());
+    }
+
+    /**
+     * GIVEN a filter on a project and a result
+     * WHEN querying the index
+     * THEN only the stats of the project are looked at
+     * and the matching stats are returned
+     */
+    @Test
+    public void shouldLookUpProjectIndex() {
+        //GIVEN
+        Mockito.when(filter.getProjectName()).thenReturn("jobTestB");
+        Mockito.when(filter.getResult()).thenReturn("FAILURE");
+        StatsQuery query = StatsQuery.compile(filter);
+        //WHEN
+        List<Statistics> stats = index.query(query, 10);
+        //THEN
+        Assert.assertEquals(4, index.getCandidates(query).size());
+        Assert.assertEquals(1, stats.size());
+        Assert.assertEquals("jobTestB", stats.get(0).getProjectName());
+        Assert.assertEquals(2, stats.get(0).getBuildNumber());
+    }
+
+    /**
+     * GIVEN a filter on build numbers and a regular expression on projects
+     * WHEN querying the index
+     * THEN only the builds of the matching projects are looked at
+     */
+    @Test
+    public void shouldLookUpBuildNumberIndex() {
+        //GIVEN
+        Mockito.when(filter.getProjectName()).thenReturn("jobTest[AB]");
+        Mockito.when(filter.getBuildNumbers()).thenReturn(Arrays.asList(3, 4));
+        StatsQuery query = StatsQuery.compile(filter);
+        //WHEN
+        List<Statistics> stats = index.query(query, 10);
+        //THEN
+        Assert.assertEquals(4, index.getCandidates(query).size());
+        Assert.assertEquals(4, stats.size());
+    }
+
+    /**
+     * GIVEN a filter matching every stats
+     * WHEN querying the index with a limit
+     * THEN the number of stats returned is limited
+     */
+    @Test
+    public void shouldApplyLimit() {
+        Assert.assertEquals(5, index.query(StatsQuery.compile(filter), 5).size());
+    }
+
+    /**
+     * GIVEN stats of builds started at different times
+     * WHEN querying the stats since a date with a limit
+     * THEN the newest stats are returned first
+     * and none older than the date
+     */
+    @Test
+    public void shouldReturnNewestFirstSinceDate() throws Exception {
+        //GIVEN
+        StatisticsMockFactory factory = new StatisticsMockFactory();
+        StatsIndex timed = new StatsIndex();
+        for (int i = 1; i <= 10; i++) {
+            timed.add(factory.createStatistics(new Date(i * 1000L), "jobTime", i, Result.SUCCESS.toString()));
+        }
+        Mockito.when(filter.getSince()).thenReturn(new Date(7000L));
+        //WHEN
+        List<Statistics> newest = timed.query(StatsQuery.compile(filter), 2);
+        List<Statistics> since = timed.query(StatsQuery.compile(filter), 10);
+        //THEN
+        Assert.assertEquals(2, newest.size());
+        Assert.assertEquals(10, newest.get(0).getBuildNumber());
+        Assert.assertEquals(9, newest.get(1).getBuildNumber());
+        Assert.assertEquals(3, since.size());
+        Assert.assertEquals(8, since.get(2).getBuildNumber());
+    }
+
+    /**
+     * GIVEN an index large enough to be scanned in parallel
+     * WHEN querying it with a regular expression, a date and a limit
+     * THEN the stats returned are those of a sequential scan, newest first
+     */
+    @Test
+    public void shouldScanInParallelAsSequentially() throws Exception {
+        //GIVEN
+        StatisticsMockFactory factory = new StatisticsMockFactory();
+        StatsIndex parallel = new StatsIndex(new ParallelStatsScanner(3, 100));
+        StatsIndex sequential = new StatsIndex(new ParallelStatsScanner(1, 100));
+        for (int i = 1; i <= 5000; i++) {
+            Statistics stat = factory.createStatistics(new Date(i * 1000L), "jobScan" + (i % 3), i,
+                    Result.FAILURE.toString());
+            parallel.add(stat);
+            sequential.add(stat);
+        }
+        Mockito.when(filter.getProjectName()).thenReturn("jobScan[12]");
+        Mockito.when(filter.getSince()).thenReturn(new Date(1000000L));
+        StatsQuery query = StatsQuery.compile(filter);
+        //WHEN
+        List<Statistics> stats = parallel.scan(query, 3000);
+        //THEN
+        Assert.assertEquals(sequential.scan(query, 3000), stats);
+        Assert.assertEquals(3000, stats.size());
+        Assert.assertEquals(5000, stats.get(0).getBuildNumber());
+        Assert.assertEquals(parallel.scan(query, 10), stats.subList(0, 10));
+    }
+
+    /**
+     * GIVEN stats scanned in parallel
+     * WHEN the querying thread is interrupted
+     * THEN the query is cancelled
+     * and no partial result is cached
+     */
+    @Test
+    public void shouldNotCacheInterruptedScan() throws Exception {
+        //GIVEN
+        StatisticsMockFactory factory = new StatisticsMockFactory();
+        StatsIndex parallel = new StatsIndex(new ParallelStatsScanner(3, 100));
+        for (int i = 1; i <= 1000; i++) {
+            parallel.add(factory.createStatistics(new Date(i * 1000L), "jobScan" + (i % 3), i,
+                    Result.FAILURE.toString()));
+        }
+        Mockito.when(filter.getProjectName()).thenReturn("jobScan[12]");
+        StatsQuery query = StatsQuery.compile(filter);
+        //WHEN
+        Thread.currentThread().interrupt();
+        try {
+            parallel.query(query, 500);
+            Assert.fail("The interrupted query should be cancelled");
+        } catch (CancellationException e) {
+            //THEN
+            Assert.assertTrue(Thread.interrupted());
+        }
+        Assert.assertNull(parallel.getCache().get(query, 500));
+        Assert.assertEquals(500, parallel.query(query, 500).size());
+    }
+
+    /**
+     * GIVEN stats scanned in parallel for a query
+     * WHEN the stats of a build are added by another thread during the scan
+     * THEN they are added without waiting for the scan
+     * and the result of the scan is not cached
+     */
+    @Test
+    public void shouldAddWhileScanning() throws Exception {
+        //GIVEN
+        final StatisticsMockFactory factory = new StatisticsMockFactory();
+        final StatsIndex[] scanned = new StatsIndex[1];
+        final ExecutorService saver = Executors.newSingleThreadExecutor();
+        scanned[0] = new StatsIndex(new ParallelStatsScanner(3, 100) {
+            @Override
+            public List<Statistics> scan(Statistics[] ordered, int end, StatsQuery query, int limit) {
+                try {
+                    Assert.assertTrue(saver.submit(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws Exception {
+                            return scanned[0].add(factory.createStatistics(new Date(), "jobScan1", 5000,
+                                    Result.FAILURE.toString()));
+                        }
+                    }).get(5, TimeUnit.SECONDS));
+                } catch (Exception e) {
+                    throw new AssertionError("The stats are not added during the scan: " + e);
+                }
+                return super.scan(ordered, end, query, limit);
+            }
+        });
+        for (int i = 1; i <= 1000; i++) {
+            scanned[0].add(factory.createStatistics(new Date(i * 1000L), "jobScan" + (i % 3), i,
+                    Result.FAILURE.toString()));
+        }
+        Mockito.when(filter.getProjectName()).thenReturn("jobScan[12]");
+        StatsQuery query = StatsQuery.compile(filter);
+        try {
+            //WHEN
+            List<Statistics> stats = scanned[0].query(query, 2000);
+            //THEN
+            Assert.assertEquals(667, stats.size());
+            Assert.assertEquals(1001, scanned[0].size());
+            Assert.assertNull(scanned[0].getCache().get(query, 2000));
+        } finally {
+            saver.shutdownNow();
+        }
+    }
+
+    /**
+     * GIVEN a filter matching part of the stats
+     * WHEN walking them page by page with a cursor
+     * THEN all of them are walked, newest first, as a query returns them
+     */
+    @Test
+    public void shouldWalkPagesAsQuery() throws Exception {
+        //GIVEN
+        Mockito.when(filter.getResult()).thenReturn("SUCCESS|FAILURE");
+        StatsQuery query = StatsQuery.compile(filter);
+        //WHEN
+        StatsPage first = index.page(query, null, 5);
+        List<Statistics> walked = new ArrayList<Statistics>();
+        StatsCursor cursor = new StatsCursor(index, query, 5);
+        while (cursor.hasNext()) {
+            walked.add(cursor.next());
+        }
+        //THEN
+        Assert.assertEquals(5, first.getStatistics().size());
+        Assert.assertTrue(first.hasNext());
+        Assert.assertEquals(index.query(query, 100), walked);
+        Assert.assertEquals(12, walked.size());
+    }
+
+    /**
+     * GIVEN the token of a page
+     * WHEN reading it, or altering it
+     * THEN it does not reveal the project of the position
+     * and an altered token is rejected
+     */
+    @Test
+    public void shouldHidePositionInToken() throws Exception {
+        //GIVEN
+        StatsPage first = index.page(StatsQuery.compile(null), null, 5);
+        String token = first.getNextToken();
+        StringBuilder project = new StringBuilder();
+        for (byte b : "jobTest".getBytes("UTF-8")) {
+            project.append(String.format("%02x", b));
+        }
+        //THEN
+        Assert.assertFalse(token.contains(project.toString()));
+        Assert.assertEquals(5, index.page(StatsQuery.compile(null), token, 5).getStatistics().size());
+        char last = token.charAt(token.length() - 1);
+        String altered = token.substring(0, token.length() - 1) + (last == '0' ? '1' : '0');
+        try {
+            index.page(StatsQuery.compile(null), altered, 5);
+            Assert.fail("An altered token is accepted");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Invalid page token"));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.model.Result;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Date;
+import java.util.List;
+
+public class StatsQueryCacheTest {
+
+    private StatisticsMockFactory factory;
+    private StatsIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        factory = new StatisticsMockFactory();
+        index = new StatsIndex();
+        index.addAll(factory.createStatisticsBatch());
+    }
+
+    /**
+     * GIVEN a query answered once
+     * WHEN asking it again with an equivalent filter
+     * THEN it is answered from the cache
+     */
+    @Test
+    public void shouldHitOnEquivalentFilter() {
+        //GIVEN
+        index.query(StatsQuery.compile(createFilter("jobTestA")), 10);
+        //WHEN
+        List<Statistics> stats = index.query(StatsQuery.compile(createFilter("jobTestA")), 10);
+        //THEN
+        Assert.assertEquals(4, stats.size());
+        Assert.assertEquals(1, index.getCache().getHits());
+        Assert.assertEquals(1, index.getCache().getMisses());
+        index.query(StatsQuery.compile(createFilter("jobTestA")), 5);
+        Assert.assertEquals(2, index.getCache().getMisses());
+    }
+
+    /**
+     * GIVEN the results of queries on two projects cached
+     * WHEN stats of one of the projects are added
+     * THEN only the result of the query on that project is dropped
+     */
+    @Test
+    public void shouldInvalidateMatchingQueriesOnly() throws Exception {
+        //GIVEN
+        index.query(StatsQuery.compile(createFilter("jobTestA")), 10);
+        index.query(StatsQuery.compile(createFilter("jobTestB")), 10);
+        //WHEN
+        index.add(factory.createStatistics(new Date(), "jobTestA", 5, Result.FAILURE.toString()));
+        //THEN
+        Assert.assertEquals(1, index.getCache().size());
+        Assert.assertEquals(1, index.getCache().getInvalidations());
+        Assert.assertEquals(5, index.query(StatsQuery.compile(createFilter("jobTestA")), 10).size());
+        Assert.assertEquals(4, index.query(StatsQuery.compile(createFilter("jobTestB")), 10).size());
+        Assert.assertEquals(1, index.getCache().getHits());
+    }
+
+    private GraphFilterBuilder createFilter(String projectName) {
+        GraphFilterBuilder filter = Mockito.mock(GraphFilterBuilder.class);
+        Mockito.when(filter.getProjectName()).thenReturn(projectName);
+        return filter;
+    }
+}
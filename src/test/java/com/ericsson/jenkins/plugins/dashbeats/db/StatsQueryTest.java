@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.model.Result;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Date;
+
+public class StatsQueryTest {
+
+    private Statistics stat;
+    private GraphFilterBuilder filter;
+
+    @Before
+    public void setUp() throws Exception {
+        stat = new StatisticsMockFactory().createStatistics(new Date(), "jobTestA", 2, Result.FAILURE.toString());
+        filter = Mockito.mock(GraphFilterBuilder.class);
+    }
+
+    /**
+     * GIVEN a filter on the project name as a plain text
+     * WHEN matching stats
+     * THEN the stats of projects containing the text are included
+     */
+    @Test
+    public void shouldMatchLiteralAsSubstring() {
+        //GIVEN
+        Mockito.when(filter.getProjectName()).thenReturn("TestA");
+        //WHEN
+        StatsQuery query = StatsQuery.compile(filter);
+        //THEN
+        Assert.assertTrue(query.matches(stat));
+        Mockito.when(filter.getProjectName()).thenReturn("TestB");
+        Assert.assertFalse(StatsQuery.compile(filter).matches(stat));
+    }
+
+    /**
+     * GIVEN a filter on the result as a regular expression
+     * WHEN matching stats
+     * THEN the query agrees with the filter utility
+     */
+    @Test
+    public void shouldMatchRegularExpression() {
+        //GIVEN
+        Mockito.when(filter.getResult()).thenReturn("FAIL|UNSTABLE");
+        //WHEN
+        StatsQuery query = StatsQuery.compile(filter);
+        //THEN
+        Assert.assertTrue(query.matches(stat));
+        Assert.assertTrue(StatsFilterUtil.isMatched("^job.*A$", "jobTestA"));
+        Assert.assertFalse(StatsFilterUtil.isMatched("^Test", "jobTestA"));
+    }
+
+    /**
+     * GIVEN a filter with regular expression metacharacters compiled literally
+     * WHEN matching stats
+     * THEN the criterion is matched as a plain text, without pattern
+     * and the query is told apart from the same filter compiled as patterns
+     */
+    @Test
+    public void shouldMatchLiteralQueryAsPlainText() {
+        //GIVEN
+        Mockito.when(filter.getResult()).thenReturn("FAIL|UNSTABLE");
+        //WHEN
+        StatsQuery query = StatsQuery.compileLiteral(filter);
+        //THEN
+        Assert.assertFalse(query.matches(stat));
+        Assert.assertFalse(query.hasPattern());
+        Assert.assertFalse(query.getKey().equals(StatsQuery.compile(filter).getKey()));
+        Mockito.when(filter.getResult()).thenReturn("FAIL");
+        Assert.assertTrue(StatsQuery.compileLiteral(filter).matches(stat));
+    }
+
+    /**
+     * GIVEN a filter excluding a result, on build numbers and since a date
+     * WHEN matching stats
+     * THEN the stats not meeting a criterion are excluded
+     */
+    @Test
+    public void shouldExcludeOnEveryCriterion() {
+        //GIVEN
+        Mockito.when(filter.getExcludeResult()).thenReturn("FAILURE");
+        //THEN
+        Assert.assertFalse(StatsQuery.compile(filter).matches(stat));
+
+        Mockito.when(filter.getExcludeResult()).thenReturn(null);
+        Mockito.when(filter.getBuildNumbers()).thenReturn(Arrays.asList(1, 3));
+        Assert.assertFalse(StatsQuery.compile(filter).matches(stat));
+
+        Mockito.when(filter.getBuildNumbers()).thenReturn(Arrays.asList(2));
+        Mockito.when(filter.getSince()).thenReturn(new Date(stat.getStartingTime().getTime() + 1));
+        Assert.assertFalse(StatsQuery.compile(filter).matches(stat));
+
+        Mockito.when(filter.getSince()).thenReturn(new Date(stat.getStartingTime().getTime() - 1));
+        Assert.assertTrue(StatsQuery.compile(filter).matches(stat));
+    }
+
+    /**
+     * GIVEN no filter
+     * WHEN matching stats
+     * THEN every stats is included
+     */
+    @Test
+    public void shouldMatchEverythingWithoutFilter() {
+        Assert.assertTrue(StatsQuery.compile(null).matches(stat));
+        Assert.assertTrue(StatsQuery.compile(filter).matches(stat));
+    }
+}
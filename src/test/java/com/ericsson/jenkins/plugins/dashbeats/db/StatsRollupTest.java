@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.model.Result;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TimeZone;
+
+public class StatsRollupTest {
+
+    private static final long MINUTE = 60000L;
+
+    private StatsIndex index;
+    private List<Statistics> stats;
+    private GraphFilterBuilder filter;
+
+    @Before
+    public void setUp() throws Exception {
+        StatisticsMockFactory factory = new StatisticsMockFactory();
+        index = new StatsIndex();
+        stats = new ArrayList<Statistics>();
+        String[] results = {Result.SUCCESS.toString(), Result.FAILURE.toString(), Result.ABORTED.toString()};
+        // a build every 5 minutes over 3 days
+        for (int i = 1; i <= 864; i++) {
+            stats.add(factory.createStatistics(new Date(i * 5 * MINUTE), "jobRollup" + (i % 3), i,
+                    results[i % 3]));
+        }
+        index.addAll(stats);
+        filter = Mockito.mock(GraphFilterBuilder.class);
+    }
+
+    /**
+     * GIVEN stats of builds over several hours
+     * WHEN adding them to the index
+     * THEN they are counted with much fewer counters
+     */
+    @Test
+    public void shouldCountWithFewerCounters() {
+        Assert.assertEquals(864, index.size());
+        Assert.assertTrue(index.getRollup().size() < 864 / 3);
+    }
+
+    /**
+     * GIVEN a filter on the result and a date in the middle of an hour
+     * WHEN counting the stats per cause, project and node
+     * THEN the counts are those of the matching stats
+     */
+    @Test
+    public void shouldCountAsTheMatchingStats() {
+        //GIVEN
+        Mockito.when(filter.getResult()).thenReturn("FAILURE");
+        Mockito.when(filter.getSince()).thenReturn(new Date(1000 * MINUTE + 5 * MINUTE));
+        StatsQuery query = StatsQuery.compile(filter);
+        List<Statistics> matching = index.query(query, Integer.MAX_VALUE);
+        //WHEN
+        Map<String, Integer> perCause = index.count(query, StatsRollup.Dimension.CAUSE);
+        Map<String, Integer> perProject = index.count(query, StatsRollup.Dimension.PROJECT);
+        Map<String, Integer> perNode = index.count(query, StatsRollup.Dimension.NODE);
+        //THEN
+        Assert.assertFalse(perCause.isEmpty());
+        Assert.assertEquals(StatsRollup.count(matching, StatsRollup.Dimension.CAUSE), perCause);
+        Assert.assertEquals(StatsRollup.count(matching, StatsRollup.Dimension.PROJECT), perProject);
+        Assert.assertEquals(StatsRollup.count(matching, StatsRollup.Dimension.NODE), perNode);
+        Assert.assertEquals(Integer.valueOf(matching.size()), perNode.get("nodeName"));
+    }
+
+    /**
+     * GIVEN a filter on a project and a date in the middle of an hour
+     * WHEN counting the stats per day
+     * THEN the counts are those of the matching stats
+     */
+    @Test
+    public void shouldCountPerPeriod() {
+        //GIVEN
+        Mockito.when(filter.getProjectName()).thenReturn("jobRollup[12]");
+        Mockito.when(filter.getSince()).thenReturn(new Date(25 * MINUTE));
+        StatsQuery query = StatsQuery.compile(filter);
+        List<Statistics> matching = index.query(query, Integer.MAX_VALUE);
+        //WHEN
+        SortedMap<Date, Integer> perDay = index.countPerPeriod(query, Calendar.DATE);
+        SortedMap<Date, Integer> perHour = index.countPerPeriod(query, Calendar.HOUR_OF_DAY);
+        //THEN
+        Assert.assertEquals(StatsRollup.countPerPeriod(matching, Calendar.DATE), perDay);
+        Assert.assertEquals(StatsRollup.countPerPeriod(matching, Calendar.HOUR_OF_DAY), perHour);
+        int total = 0;
+        for (int count : perDay.values()) {
+            total += count;
+        }
+        Assert.assertEquals(matching.size(), total);
+    }
+
+    /**
+     * GIVEN a default time zone at a fractional offset from UTC
+     * WHEN counting the stats per hour and per day
+     * THEN the counts are those of the matching stats in the local periods
+     */
+    @Test
+    public void shouldCountPerPeriodAtFractionalOffset() {
+        //GIVEN
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+        try {
+            Mockito.when(filter.getSince()).thenReturn(new Date(25 * MINUTE));
+            StatsQuery query = StatsQuery.compile(filter);
+            List<Statistics> matching = index.query(query, Integer.MAX_VALUE);
+            //WHEN
+            SortedMap<Date, Integer> perHour = index.countPerPeriod(query, Calendar.HOUR_OF_DAY);
+            SortedMap<Date, Integer> perDay = index.countPerPeriod(query, Calendar.DATE);
+            //THEN
+            Assert.assertFalse(StatsRollup.canCountPerPeriod(TimeZone.getDefault()));
+            Assert.assertEquals(StatsRollup.countPerPeriod(matching, Calendar.HOUR_OF_DAY), perHour);
+            Assert.assertEquals(StatsRollup.countPerPeriod(matching, Calendar.DATE), perDay);
+            Assert.assertEquals(Integer.valueOf(12), perHour.get(new Date(90 * MINUTE)));
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+        Assert.assertTrue(StatsRollup.canCountPerPeriod(TimeZone.getTimeZone("Europe/Stockholm")));
+        Assert.assertFalse(StatsRollup.canCountPerPeriod(TimeZone.getTimeZone("Australia/Lord_Howe")));
+    }
+
+    /**
+     * GIVEN stats already counted by a first query
+     * WHEN adding stats of a new build, in the slice of the date of the query
+     * THEN the next query counts them too, as the matching stats
+     */
+    @Test
+    public void shouldCountStatsAddedAfterFirstQuery() throws Exception {
+        //GIVEN
+        Mockito.when(filter.getSince()).thenReturn(new Date(4000 * MINUTE + 5 * MINUTE));
+        StatsQuery query = StatsQuery.compile(filter);
+        index.count(query, StatsRollup.Dimension.PROJECT);
+        //WHEN
+        index.add(new StatisticsMockFactory().createStatistics(new Date(4000 * MINUTE + 7 * MINUTE), "jobRollupNew",
+                1, Result.FAILURE.toString()));
+        index.add(new StatisticsMockFactory().createStatistics(new Date(4400 * MINUTE), "jobRollupNew",
+                2, Result.FAILURE.toString()));
+        Map<String, Integer> perProject = index.count(query, StatsRollup.Dimension.PROJECT);
+        //THEN
+        Assert.assertEquals(Integer.valueOf(2), perProject.get("jobRollupNew"));
+        Assert.assertEquals(StatsRollup.count(index.query(query, Integer.MAX_VALUE), StatsRollup.Dimension.PROJECT),
+                perProject);
+    }
+
+    /**
+     * GIVEN a filter on build numbers
+     * WHEN counting the stats per project
+     * THEN the stats are counted one by one
+     */
+    @Test
+    public void shouldFallBackOnStatsForBuildNumbers() {
+        //GIVEN
+        Mockito.when(filter.getBuildNumbers()).thenReturn(Arrays.asList(1, 2, 3));
+        StatsQuery query = StatsQuery.compile(filter);
+        //WHEN
+        Map<String, Integer> perProject = index.count(query, StatsRollup.Dimension.PROJECT);
+        //THEN
+        Assert.assertFalse(StatsRollup.canAnswer(query));
+        Assert.assertEquals(3, perProject.size());
+        Assert.assertEquals(Integer.valueOf(1), perProject.get("jobRollup1"));
+    }
+}
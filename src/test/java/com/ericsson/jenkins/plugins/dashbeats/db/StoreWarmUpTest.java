@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.db;
+
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.model.Result;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class StoreWarmUpTest {
+
+    private final StatisticsMockFactory factory = new StatisticsMockFactory();
+
+    /**
+     * GIVEN a store being loaded
+     * WHEN stats are saved before and after the buffer is drained
+     * THEN the warm-up completes only once every buffered stats has been drained
+     * and stats saved afterwards are no longer buffered
+     */
+    @Test
+    public void shouldBufferUntilComplete() throws Exception {
+        //GIVEN
+        StoreWarmUp warmUp = new StoreWarmUp();
+        warmUp.start();
+        Statistics stat1 = factory.createStatistics(new Date(), "jobTest1", 1, Result.SUCCESS.toString());
+        Statistics stat2 = factory.createStatistics(new Date(), "jobTest1", 2, Result.FAILURE.toString());
+        Statistics stat3 = factory.createStatistics(new Date(), "jobTest1", 3, Result.SUCCESS.toString());
+        //WHEN
+        Assert.assertTrue(warmUp.buffer(stat1));
+        List<Statistics> first = warmUp.drain();
+        Assert.assertTrue(warmUp.buffer(stat2));
+        boolean completeWithBuffered = warmUp.complete();
+        List<Statistics> second = warmUp.drain();
+        boolean complete = warmUp.complete();
+        //THEN
+        Assert.assertEquals(1, first.size());
+        Assert.assertSame(stat1, first.get(0));
+        Assert.assertFalse(completeWithBuffered);
+        Assert.assertSame(stat2, second.get(0));
+        Assert.assertTrue(complete);
+        Assert.assertTrue(warmUp.isReady());
+        Assert.assertTrue(warmUp.await(0, TimeUnit.SECONDS));
+        Assert.assertFalse(warmUp.buffer(stat3));
+        Assert.assertEquals(0, warmUp.getBuffered());
+    }
+
+    /**
+     * GIVEN a store of 200 stats being loaded
+     * WHEN 50 are loaded
+     * THEN the progress is 25%, and 100% once complete
+     */
+    @Test
+    public void shouldReportProgress() {
+        //GIVEN
+        StoreWarmUp warmUp = new StoreWarmUp();
+        warmUp.start();
+        warmUp.setTotal(200);
+        //WHEN
+        for (int i = 0; i < 50; i++) {
+            warmUp.loaded();
+        }
+        //THEN
+        Assert.assertEquals(StoreWarmUp.State.LOADING, warmUp.getState());
+        Assert.assertEquals(25, warmUp.getProgress());
+        warmUp.drain();
+        Assert.assertTrue(warmUp.complete());
+        Assert.assertEquals(100, warmUp.getProgress());
+    }
+
+    /**
+     * GIVEN a store read while the causes are not reloaded yet
+     * WHEN a build completes
+     * THEN the causes are considered reloaded and the stats can be compiled
+     */
+    @Test
+    public void shouldWaitForCauses() throws Exception {
+        //GIVEN
+        StoreWarmUp warmUp = new StoreWarmUp();
+        warmUp.start();
+        Assert.assertFalse(warmUp.awaitCauses(0, TimeUnit.SECONDS));
+        Assert.assertEquals(StoreWarmUp.State.WAITING_FOR_CAUSES, warmUp.getState());
+        //WHEN
+        warmUp.causesLoaded();
+        //THEN
+        Assert.assertTrue(warmUp.awaitCauses(0, TimeUnit.SECONDS));
+    }
+
+    /**
+     * GIVEN a store being loaded, buffering up to 2 stats
+     * WHEN 3 stats are saved
+     * THEN the third one is dropped and counted, not buffered
+     */
+    @Test
+    public void shouldDropBeyondCapacity() throws Exception {
+        //GIVEN
+        StoreWarmUp warmUp = new StoreWarmUp(2);
+        warmUp.start();
+        //WHEN
+        Statistics stat1 = factory.createStatistics(new Date(), "jobTest1", 1, Result.SUCCESS.toString());
+        Statistics stat2 = factory.createStatistics(new Date(), "jobTest1", 2, Result.SUCCESS.toString());
+        Statistics stat3 = factory.createStatistics(new Date(), "jobTest1", 3, Result.SUCCESS.toString());
+        Assert.assertTrue(warmUp.buffer(stat1));
+        Assert.assertTrue(warmUp.buffer(stat2));
+        Assert.assertTrue(warmUp.buffer(stat3));
+        //THEN
+        Assert.assertEquals(2, warmUp.getBuffered());
+        Assert.assertEquals(1, warmUp.getDropped());
+        List<Statistics> drained = warmUp.drain();
+        Assert.assertSame(stat1, drained.get(0));
+        Assert.assertSame(stat2, drained.get(1));
+    }
+
+    /**
+     * GIVEN a store whose loading failed with stats buffered
+     * WHEN the warm-up is ended
+     * THEN it is ready, the buffered stats are dropped and the next ones saved as usual
+     */
+    @Test
+    public void shouldEndAfterFailure() throws Exception {
+        //GIVEN
+        StoreWarmUp warmUp = new StoreWarmUp();
+        warmUp.start();
+        warmUp.buffer(factory.createStatistics(new Date(), "jobTest1", 1, Result.SUCCESS.toString()));
+        //WHEN
+        int dropped = warmUp.end();
+        //THEN
+        Assert.assertEquals(1, dropped);
+        Assert.assertEquals(1, warmUp.getDropped());
+        Assert.assertTrue(warmUp.isReady());
+        Assert.assertTrue(warmUp.await(0, TimeUnit.SECONDS));
+        Assert.assertEquals(0, warmUp.getBuffered());
+        Assert.assertFalse(warmUp.buffer(factory.createStatistics(new Date(), "jobTest1", 2,
+                Result.SUCCESS.toString())));
+        Assert.assertEquals(0, warmUp.end());
+    }
+}
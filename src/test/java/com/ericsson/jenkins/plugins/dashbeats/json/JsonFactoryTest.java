@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.json;
+
+import com.ericsson.jenkins.plugins.dashbeats.db.SummaryMockFactory;
+import com.ericsson.jenkins.plugins.dashbeats.model.BuildInfo;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests of the rendering of the widgets content.
+ */
+public class JsonFactoryTest {
+
+    private static final String AUTH_TOKEN = "YOUR_AUTH_TOKEN";
+
+    private String rootUrl;
+    private StatsSummary summary;
+    private JsonFactory jsonFactory;
+
+    @Before
+    public void setUp() {
+        rootUrl = "http://jenkins:8080";
+        summary = SummaryMockFactory.createSummary(new Date(), new Date());
+        jsonFactory = new JsonFactory(AUTH_TOKEN) {
+            @Override
+            protected String getRootUrl() {
+                return rootUrl;
+            }
+        };
+    }
+
+    /**
+     * GIVEN a summary
+     * WHEN rendering it
+     * THEN the payloads are the same as the json objects created from the summary
+     */
+    @Test
+    public void shouldRenderSameContentAsJsonObjects() {
+        //WHEN
+        RenderedSummary rendered = jsonFactory.render(summary);
+        //THEN
+        Assert.assertEquals(withItems(jsonFactory.createCommonFaultCauses(summary)),
+                parse(rendered.getCommonFaultCauses()));
+        Assert.assertEquals(withItems(jsonFactory.createLatestFailedBuilds(summary)),
+                parse(rendered.getLatestFailedBuilds()));
+        Assert.assertEquals(withItems(jsonFactory.createLatestBuilds(summary)),
+                parse(rendered.getLatestBuilds()));
+        Assert.assertEquals(withItems(jsonFactory.createTopFailedJobs(summary)),
+                parse(rendered.getTopFailedJobs()));
+        JSONObject configure = jsonFactory.createJson();
+        configure.putAll(jsonFactory.createConfigureFailureCauses());
+        Assert.assertEquals(configure, parse(rendered.getConfigureFailureCauses()));
+    }
+
+    /**
+     * GIVEN a rendered summary
+     * WHEN rendering it again after one build info changed
+     * THEN the content of the widgets without changes is reused
+     * and the content of the widget listing the build info is rendered again
+     */
+    @Test
+    public void shouldRenderAgainOnlyChangedWidgets() {
+        //GIVEN
+        RenderedSummary first = jsonFactory.render(summary);
+        BuildInfo buildInfo = summary.getLatestBuilds().get(0);
+        //WHEN
+        buildInfo.incrementBuildResult("FAILURE");
+        RenderedSummary second = jsonFactory.render(summary);
+        //THEN
+        Assert.assertSame(first.getCommonFaultCauses(), second.getCommonFaultCauses());
+        Assert.assertSame(first.getLatestFailedBuilds(), second.getLatestFailedBuilds());
+        Assert.assertSame(first.getConfigureFailureCauses(), second.getConfigureFailureCauses());
+        Assert.assertNotSame(first.getLatestBuilds(), second.getLatestBuilds());
+        Assert.assertEquals(withItems(jsonFactory.createLatestBuilds(summary)), parse(second.getLatestBuilds()));
+    }
+
+    /**
+     * GIVEN a rendered summary
+     * WHEN the root url of Jenkins changes
+     * THEN the links are rendered again
+     */
+    @Test
+    public void shouldRenderAgainWhenRootUrlChanges() {
+        //GIVEN
+        jsonFactory.render(summary);
+        //WHEN
+        rootUrl = "https://ci.example.com";
+        RenderedSummary rendered = jsonFactory.render(summary);
+        //THEN
+        Assert.assertEquals(withItems(jsonFactory.createTopFailedJobs(summary)), parse(rendered.getTopFailedJobs()));
+        Assert.assertTrue(parse(rendered.getConfigureFailureCauses()).getString("url").startsWith(rootUrl));
+    }
+
+    private JSONObject withItems(List<JSONObject> items) {
+        JSONObject jsonObject = jsonFactory.createJson();
+        jsonObject.put("items", items);
+        return jsonObject;
+    }
+
+    private JSONObject parse(byte[] members) {
+        JsonWriter writer = new JsonWriter();
+        jsonFactory.writePayload(writer, members);
+        return JSONObject.fromObject(new String(writer.array(), 0, writer.size(), Charset.forName("UTF-8")));
+    }
+}
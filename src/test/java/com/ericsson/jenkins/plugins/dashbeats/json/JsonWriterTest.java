@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.json;
+
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+/**
+ * Tests of the streaming json writer.
+ */
+public class JsonWriterTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * GIVEN values with quotes, control and non-ascii characters
+     * WHEN writing them
+     * THEN the json is parsed back to the same values
+     */
+    @Test
+    public void shouldEscapeValues() {
+        //GIVEN
+        String text = "a \"quoted\" \\ path\n\ttab \u0001 caf\u00e9 \u20ac \ud83d\ude00";
+        JsonWriter writer = new JsonWriter(4);
+        //WHEN
+        writer.beginObject()
+                .name("text").value(text)
+                .name("count").value(-42)
+                .endObject();
+        //THEN
+        JSONObject json = parse(writer);
+        Assert.assertEquals(text, json.getString("text"));
+        Assert.assertEquals(-42, json.getInt("count"));
+    }
+
+    /**
+     * GIVEN a string composed of several parts
+     * WHEN writing it
+     * THEN the parts are concatenated as a StringBuilder would
+     */
+    @Test
+    public void shouldComposeStrings() {
+        //GIVEN
+        JsonWriter writer = new JsonWriter();
+        //WHEN
+        writer.beginObject().name("label").beginString()
+                .append("job").append("  #").append(12L)
+                .append("  fail rate(").append(50.0).append("%)")
+                .append(" ").append(33.333333333333336)
+                .endString().endObject();
+        //THEN
+        String expected = new StringBuilder("job").append("  #").append(12L)
+                .append("  fail rate(").append(50.0).append("%)")
+                .append(" ").append(33.333333333333336).toString();
+        Assert.assertEquals(expected, parse(writer).getString("label"));
+    }
+
+    /**
+     * GIVEN members rendered once
+     * WHEN writing them into a payload with a reused writer
+     * THEN the payload is a valid json object with all the members
+     */
+    @Test
+    public void shouldWriteRenderedMembers() {
+        //GIVEN
+        JsonWriter members = new JsonWriter();
+        members.name("items").beginArray()
+                .beginObject().name("col1").value("job1").endObject()
+                .beginObject().name("col1").value("job2").endObject()
+                .endArray();
+        byte[] rendered = members.toByteArray();
+        JsonWriter writer = new JsonWriter();
+        writer.beginObject().name("ignored").value("first payload").endObject();
+        //WHEN
+        writer.reset().beginObject().name("auth_token").value("token").members(rendered).endObject();
+        //THEN
+        JSONObject json = parse(writer);
+        Assert.assertEquals("token", json.getString("auth_token"));
+        Assert.assertEquals(2, json.getJSONArray("items").size());
+        Assert.assertEquals("job2", json.getJSONArray("items").getJSONObject(1).getString("col1"));
+        Assert.assertFalse(json.has("ignored"));
+    }
+
+    private JSONObject parse(JsonWriter writer) {
+        return JSONObject.fromObject(new String(writer.array(), 0, writer.size(), UTF8));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class BuildTracerTest {
+
+    /**
+     * GIVEN a tracer keeping 3 traces
+     * WHEN tracing 5 builds
+     * THEN the 3 latest traces are kept, newest first
+     */
+    @Test
+    public void shouldKeepLatestTraces() {
+        //GIVEN
+        BuildTracer tracer = new BuildTracer(true, 3, 1000L);
+        //WHEN
+        for (int i = 1; i <= 5; i++) {
+            BuildTrace trace = tracer.start("jobTest", i);
+            trace.mark(BuildTrace.Stage.DEDUP);
+            tracer.finish(trace);
+        }
+        //THEN
+        List<BuildTrace> traces = tracer.getTraces();
+        Assert.assertEquals(3, traces.size());
+        Assert.assertEquals(5, traces.get(0).getBuildNumber());
+        Assert.assertEquals(3, traces.get(2).getBuildNumber());
+    }
+
+    /**
+     * GIVEN a trace through every stage
+     * WHEN finishing it
+     * THEN the time spent in the stages adds up to the total at most
+     * and the breakdown names every stage
+     */
+    @Test
+    public void shouldBreakDownStages() throws Exception {
+        //GIVEN
+        BuildTracer tracer = new BuildTracer(true, 3, 0L);
+        BuildTrace trace = tracer.start("jobTest", 1);
+        //WHEN
+        for (BuildTrace.Stage stage : BuildTrace.Stage.values()) {
+            Thread.sleep(1);
+            trace.mark(stage);
+        }
+        tracer.finish(trace);
+        //THEN
+        long stages = 0;
+        for (BuildTrace.Stage stage : BuildTrace.Stage.values()) {
+            Assert.assertTrue(trace.getDuration(stage) > 0);
+            stages += trace.getDuration(stage);
+        }
+        Assert.assertTrue(stages <= trace.getTotal());
+        Assert.assertTrue(trace.toString().startsWith("jobTest #1 took "));
+        Assert.assertTrue(trace.toString().contains("render "));
+    }
+
+    /**
+     * GIVEN a disabled tracer
+     * WHEN starting a trace
+     * THEN nothing is traced
+     */
+    @Test
+    public void shouldNotTraceWhenDisabled() {
+        //GIVEN
+        BuildTracer tracer = new BuildTracer(false, 3, 1000L);
+        //WHEN
+        BuildTrace trace = tracer.start("jobTest", 1);
+        tracer.finish(trace);
+        //THEN
+        Assert.assertNull(trace);
+        Assert.assertTrue(tracer.getTraces().isEmpty());
+    }
+}
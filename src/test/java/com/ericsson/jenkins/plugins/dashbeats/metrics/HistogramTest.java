@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+
+    private static final long MILLI = 1000000L;
+
+    /**
+     * GIVEN a histogram
+     * WHEN recording latencies from 1 to 100 ms
+     * THEN the count, mean and max are exact
+     * and the percentiles are within a factor of 2
+     */
+    @Test
+    public void shouldEstimatePercentiles() {
+        //GIVEN
+        Histogram histogram = new Histogram();
+        //WHEN
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * MILLI);
+        }
+        //THEN
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(50.5, histogram.getMeanMillis(), 0.001);
+        Assert.assertEquals(100.0, histogram.getMaxMillis(), 0.001);
+        Assert.assertTrue(histogram.get50thPercentileMillis() >= 50);
+        Assert.assertTrue(histogram.get50thPercentileMillis() <= 100);
+        Assert.assertTrue(histogram.get99thPercentileMillis() >= 99);
+        Assert.assertTrue(histogram.get99thPercentileMillis() <= 100);
+    }
+
+    /**
+     * GIVEN latencies at the bounds of the buckets
+     * WHEN getting their buckets
+     * THEN every latency is below the upper bound of its bucket
+     */
+    @Test
+    public void shouldBucketBelowUpperBound() {
+        for (long nanos : new long[] {0, 999, 1000, 1999, 2000, MILLI, 1000 * MILLI, Long.MAX_VALUE}) {
+            int bucket = Histogram.getBucket(nanos);
+            Assert.assertTrue(nanos < Histogram.getUpperBound(bucket) || bucket == Histogram.BUCKETS - 1);
+            Assert.assertTrue(bucket == 0 || nanos >= Histogram.getUpperBound(bucket - 1));
+        }
+    }
+
+    /**
+     * GIVEN metrics
+     * WHEN getting a histogram and a counter twice
+     * THEN the same ones are returned
+     * and a gauge replaces the one of the same name
+     */
+    @Test
+    public void shouldCreateMetricsOnce() {
+        //GIVEN
+        DashBeatsMetrics metrics = new DashBeatsMetrics(false);
+        //WHEN
+        metrics.histogram(DashBeatsMetrics.INGEST).record(MILLI);
+        metrics.errors(DashBeatsMetrics.INGEST).increment();
+        metrics.gauge("queue", new Gauge() {
+            @Override
+            public long getValue() {
+                return 1;
+            }
+        });
+        metrics.gauge("queue", new Gauge() {
+            @Override
+            public long getValue() {
+                return 2;
+            }
+        });
+        //THEN
+        Assert.assertEquals(1, metrics.histogram(DashBeatsMetrics.INGEST).getCount());
+        Assert.assertEquals(1, metrics.counter("ingest.errors").getCount());
+        Assert.assertEquals(2, metrics.getGauges().get("queue").getValue());
+        Assert.assertEquals(1, metrics.getGauges().size());
+    }
+}
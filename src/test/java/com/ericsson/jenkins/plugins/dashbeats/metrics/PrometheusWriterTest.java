@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+public class PrometheusWriterTest {
+
+    private static final long MILLI = 1000000L;
+
+    /**
+     * GIVEN latencies of the publish of a widget and errors of a stage
+     * WHEN writing the metrics
+     * THEN the buckets are cumulative up to +Inf, which matches the count
+     * and the widget and the stage are labels
+     */
+    @Test
+    public void shouldWriteCumulativeHistogram() {
+        //GIVEN
+        DashBeatsMetrics metrics = new DashBeatsMetrics(false);
+        metrics.histogram("publish.latest_builds").record(3 * MILLI);
+        metrics.histogram("publish.latest_builds").record(300 * MILLI);
+        metrics.errors(DashBeatsMetrics.PUBLISH).increment();
+        metrics.gauge("publish.pending", new Gauge() {
+            @Override
+            public long getValue() {
+                return 7;
+            }
+        });
+        //WHEN
+        String exposition = new String(PrometheusWriter.writeMetrics(metrics), Charset.forName("UTF-8"));
+        //THEN
+        String labels = "stage=\"publish\",widget=\"latest_builds\"";
+        Assert.assertTrue(exposition.contains("dashbeats_stage_duration_seconds_bucket{" + labels + ",le=\"1.0E-6\"} 0\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_stage_duration_seconds_bucket{" + labels + ",le=\"0.004096\"} 1\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_stage_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 2\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_stage_duration_seconds_sum{" + labels + "} 0.303\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_stage_duration_seconds_count{" + labels + "} 2\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_stage_errors_total{stage=\"publish\"} 1\n"));
+        Assert.assertTrue(exposition.contains("# TYPE dashbeats_publish_pending gauge\ndashbeats_publish_pending 7\n"));
+    }
+
+    /**
+     * GIVEN label values with quotes, backslashes and new lines
+     * WHEN escaping them
+     * THEN they are escaped as the exposition format requires
+     */
+    @Test
+    public void shouldEscapeLabelValues() {
+        //GIVEN
+        StringBuilder out = new StringBuilder();
+        //WHEN
+        PrometheusWriter.escape(out, "a\"b\\c\nd");
+        //THEN
+        Assert.assertEquals("a\\\"b\\\\c\\nd", out.toString());
+        Assert.assertEquals("stats_query_cache_hits", PrometheusWriter.sanitize("stats.query.cache.hits"));
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.web;
+
+import com.ericsson.jenkins.plugins.dashbeats.db.DashBeatsStore;
+import com.ericsson.jenkins.plugins.dashbeats.db.StatisticsMockFactory;
+import com.ericsson.jenkins.plugins.dashbeats.db.StatsIndex;
+import com.ericsson.jenkins.plugins.dashbeats.db.StatsPage;
+import com.ericsson.jenkins.plugins.dashbeats.db.StatsQuery;
+import com.ericsson.jenkins.plugins.dashbeats.db.SummaryMockFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.RenderedSummary;
+import com.ericsson.jenkins.plugins.dashbeats.metrics.PrometheusWriter;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import com.sonyericsson.jenkins.plugins.bfa.graphs.GraphFilterBuilder;
+import com.sonyericsson.jenkins.plugins.bfa.statistics.Statistics;
+import hudson.model.Result;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.mockito.Mockito;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+
+/**
+ * Tests of the pull endpoint serving the latest summary.
+ */
+public class DashBeatsRootActionTest {
+
+    private RenderedSummary snapshot;
+    private StatsIndex stats;
+    private DashBeatsStore aggregates;
+    /* Job the caller is not allowed to read */
+    private String hiddenProject;
+    private DashBeatsRootAction action;
+    private StaplerRequest req;
+    private StaplerResponse rsp;
+    private ByteArrayOutputStream body;
+
+    @Before
+    public void setUp() throws Exception {
+        StatsSummary summary = SummaryMockFactory.createSummary(new Date(), new Date());
+        summary.setVersion(42L);
+        JsonFactory jsonFactory = new JsonFactory("YOUR_AUTH_TOKEN") {
+            @Override
+            protected String getRootUrl() {
+                return "http://jenkins:8080";
+            }
+        };
+        snapshot = jsonFactory.render(summary);
+        stats = new StatsIndex();
+        StatisticsMockFactory factory = new StatisticsMockFactory();
+        stats.addAll(factory.createStatisticsBatch());
+        aggregates = new DashBeatsStore();
+        for (Statistics stat : factory.createStatisticsBatch()) {
+            aggregates.update(stat, factory.createFailureCauses());
+        }
+        action = new DashBeatsRootAction() {
+            @Override
+            RenderedSummary getSnapshot() {
+                return snapshot;
+            }
+
+            @Override
+            DashBeatsStore getStore() {
+                return aggregates;
+            }
+
+            @Override
+            StatsPage getStatisticsPage(GraphFilterBuilder filter, String token, int size) {
+                return getReadable(stats.page(StatsQuery.compileLiteral(filter), token, size));
+            }
+
+            @Override
+            boolean canRead(String projectName) {
+                return !projectName.equals(hiddenProject);
+            }
+        };
+        req = Mockito.mock(StaplerRequest.class);
+        rsp = Mockito.mock(StaplerResponse.class);
+        body = new ByteArrayOutputStream();
+        Mockito.when(rsp.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+    }
+
+    /**
+     * GIVEN a published summary
+     * WHEN requesting it
+     * THEN the content of all widgets is served with an ETag
+     * and without authorization token
+     */
+    @Test
+    public void shouldServeSummaryWithETag() throws Exception {
+        //WHEN
+        action.doSummary(req, rsp);
+        //THEN
+        Mockito.verify(rsp).setHeader("ETag", "\"2a\"");
+        JSONObject json = JSONObject.fromObject(body.toString("UTF-8"));
+        Assert.assertEquals(42L, json.getLong("version"));
+        Assert.assertEquals(5, json.getJSONObject("widgets").getJSONObject("latest_failed_builds")
+                .getJSONArray("items").size());
+        Assert.assertFalse(body.toString("UTF-8").contains("auth_token"));
+    }
+
+    /**
+     * GIVEN a client having the latest summary
+     * WHEN requesting it again with its ETag
+     * THEN 304 is answered without body
+     */
+    @Test
+    public void shouldAnswerNotModified() throws Exception {
+        //GIVEN
+        Mockito.when(req.getHeader("If-None-Match")).thenReturn("\"2a\"");
+        //WHEN
+        action.doSummary(req, rsp);
+        //THEN
+        Mockito.verify(rsp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        Assert.assertEquals(0, body.size());
+    }
+
+    /**
+     * GIVEN a published summary
+     * WHEN requesting a widget
+     * THEN its content is served, unknown widgets are not found
+     */
+    @Test
+    public void shouldServeWidget() throws Exception {
+        //WHEN
+        Mockito.when(req.getRestOfPath()).thenReturn("/top_failed_jobs");
+        action.doWidgets(req, rsp);
+        //THEN
+        JSONObject json = JSONObject.fromObject(body.toString("UTF-8"));
+        Assert.assertEquals("testJob1", json.getJSONArray("items").getJSONObject(0).getString("col1"));
+
+        Mockito.when(req.getRestOfPath()).thenReturn("/unknown");
+        action.doWidgets(req, rsp);
+        Mockito.verify(rsp).sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+
+    /**
+     * GIVEN stats of failed builds
+     * WHEN requesting the failed builds by pages
+     * THEN the pages are served until the last one, without token
+     */
+    @Test
+    public void shouldServeStatisticsPages() throws Exception {
+        //GIVEN
+        Mockito.when(req.getParameter("result")).thenReturn("FAILURE");
+        Mockito.when(req.getParameter("pageSize")).thenReturn("4");
+        //WHEN
+        action.doStatistics(req, rsp);
+        JSONObject first = JSONObject.fromObject(body.toString("UTF-8"));
+        body.reset();
+        Mockito.when(req.getParameter("pageToken")).thenReturn(first.getString("nextPageToken"));
+        action.doStatistics(req, rsp);
+        String second = body.toString("UTF-8");
+        //THEN
+        Assert.assertEquals(4, first.getJSONArray("statistics").size());
+        Assert.assertEquals("FAILURE", first.getJSONArray("statistics").getJSONObject(0).getString("result"));
+        Assert.assertEquals(2, JSONObject.fromObject(second).getJSONArray("statistics").size());
+        Assert.assertTrue(second.endsWith("\"nextPageToken\":null}"));
+    }
+
+    /**
+     * GIVEN a job the caller is not allowed to read
+     * WHEN requesting the stats of the failed builds
+     * THEN the stats of the other jobs only are served
+     */
+    @Test
+    public void shouldLeaveOutUnreadableJobs() throws Exception {
+        //GIVEN
+        hiddenProject = "jobTestA";
+        Mockito.when(req.getParameter("result")).thenReturn("FAILURE");
+        //WHEN
+        action.doStatistics(req, rsp);
+        //THEN
+        JSONObject page = JSONObject.fromObject(body.toString("UTF-8"));
+        Assert.assertEquals(5, page.getJSONArray("statistics").size());
+        Assert.assertFalse(body.toString("UTF-8").contains("jobTestA"));
+    }
+
+    /**
+     * GIVEN a criterion with regular expression metacharacters
+     * WHEN requesting the stats
+     * THEN the criterion is matched as a plain text
+     */
+    @Test
+    public void shouldMatchCriteriaAsPlainText() throws Exception {
+        //GIVEN
+        Mockito.when(req.getParameter("project")).thenReturn("jobTest[AB]");
+        //WHEN
+        action.doStatistics(req, rsp);
+        //THEN
+        JSONObject page = JSONObject.fromObject(body.toString("UTF-8"));
+        Assert.assertEquals(0, page.getJSONArray("statistics").size());
+    }
+
+    /**
+     * GIVEN an invalid page token
+     * WHEN requesting the stats
+     * THEN the request is answered as bad
+     */
+    @Test
+    public void shouldRejectInvalidPageToken() throws Exception {
+        //GIVEN
+        Mockito.when(req.getParameter("pageToken")).thenReturn("not-a-token");
+        //WHEN
+        action.doStatistics(req, rsp);
+        //THEN
+        Mockito.verify(rsp).sendError(Mockito.eq(HttpServletResponse.SC_BAD_REQUEST), Mockito.anyString());
+    }
+
+    /**
+     * GIVEN builds saved in the store
+     * WHEN scraped by Prometheus twice, then again after a build
+     * THEN the builds by job and result and the failures by cause are exposed
+     * and written only once per version of the store
+     */
+    @Test
+    public void shouldExposePrometheusMetrics() throws Exception {
+        //WHEN
+        action.doPrometheus(req, rsp);
+        String exposition = body.toString("UTF-8");
+        byte[] written = action.getExposition(aggregates);
+        //THEN
+        Mockito.verify(rsp).setContentType(PrometheusWriter.CONTENT_TYPE);
+        Assert.assertTrue(exposition.contains("# TYPE dashbeats_builds_total counter\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_builds_total{job=\"jobTestA\",result=\"FAILURE\"} 1\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_builds_total{job=\"jobTestF\",result=\"ABORTED\"} 1\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_failure_causes_total{cause_id=\"causeId-1\",cause=\"cause1\"} 6\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_jobs 6\n"));
+        Assert.assertTrue(exposition.contains("dashbeats_summary_version " + aggregates.getVersion() + "\n"));
+        Assert.assertTrue(exposition.contains("# TYPE dashbeats_stage_duration_seconds histogram\n"));
+        Assert.assertSame(written, action.getExposition(aggregates));
+        aggregates.update(new StatisticsMockFactory().createStatistics(new Date(), "jobTestG", 1,
+                Result.SUCCESS.toString()), new StatisticsMockFactory().createFailureCauses());
+        Assert.assertNotSame(written, action.getExposition(aggregates));
+        Assert.assertTrue(new String(action.getExposition(aggregates), "UTF-8").contains("dashbeats_jobs 7\n"));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.web;
+
+import com.ericsson.jenkins.plugins.dashbeats.db.SummaryMockFactory;
+import com.ericsson.jenkins.plugins.dashbeats.json.JsonFactory;
+import com.ericsson.jenkins.plugins.dashbeats.model.StatsSummary;
+import net.sf.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * Tests of the broadcasting of the summary changes.
+ */
+public class SummaryBroadcasterTest {
+
+    private StatsSummary summary;
+    private JsonFactory jsonFactory;
+    private SummaryBroadcaster broadcaster;
+
+    @Before
+    public void setUp() {
+        summary = SummaryMockFactory.createSummary(new Date(), new Date());
+        summary.setVersion(1L);
+        jsonFactory = new JsonFactory("YOUR_AUTH_TOKEN") {
+            @Override
+            protected String getRootUrl() {
+                return "http://jenkins:8080";
+            }
+        };
+        broadcaster = new SummaryBroadcaster(2, 10);
+    }
+
+    /**
+     * GIVEN a published summary
+     * WHEN subscribing and publishing a summary where one build changed
+     * THEN the whole summary is received first
+     * and then only the changed widgets
+     */
+    @Test
+    public void shouldStreamChangedWidgets() throws Exception {
+        //GIVEN
+        broadcaster.onPublish(jsonFactory.render(summary));
+        //WHEN
+        SummaryBroadcaster.Subscription subscription = broadcaster.subscribe(null);
+        summary.getLatestBuilds().get(0).incrementBuildResult("FAILURE");
+        summary.setVersion(2L);
+        broadcaster.onPublish(jsonFactory.render(summary));
+        //THEN
+        JSONObject first = parse(subscription.poll(0));
+        Assert.assertEquals(1L, first.getLong("version"));
+        Assert.assertEquals(6, first.getJSONObject("widgets").size());
+        JSONObject second = parse(subscription.poll(0));
+        Assert.assertEquals(2L, second.getLong("version"));
+        Assert.assertTrue(second.getJSONObject("widgets").has("latest_builds"));
+        Assert.assertFalse(second.getJSONObject("widgets").has("latest_failed_builds"));
+    }
+
+    /**
+     * GIVEN a subscriber which already received the latest summary
+     * WHEN reconnecting with the id of the last event
+     * THEN the summary is not sent again
+     */
+    @Test
+    public void shouldResumeFromLastEventId() throws Exception {
+        //GIVEN
+        broadcaster.onPublish(jsonFactory.render(summary));
+        //WHEN
+        SummaryBroadcaster.Subscription subscription = broadcaster.subscribe("1");
+        //THEN
+        Assert.assertNull(subscription.poll(0));
+    }
+
+    /**
+     * GIVEN a subscriber not reading the events
+     * WHEN more summaries are published than its buffer holds
+     * THEN it is disconnected
+     */
+    @Test
+    public void shouldDisconnectSlowSubscriber() {
+        //GIVEN
+        SummaryBroadcaster.Subscription subscription = broadcaster.subscribe(null);
+        //WHEN
+        for (long version = 1; version <= 3; version++) {
+            summary.setVersion(version);
+            broadcaster.onPublish(jsonFactory.render(summary));
+        }
+        //THEN
+        Assert.assertTrue(subscription.isClosed());
+        Assert.assertEquals(0, broadcaster.getSubscribers());
+    }
+
+    private JSONObject parse(byte[] event) {
+        String text = new String(event, Charset.forName("UTF-8"));
+        Assert.assertTrue(text.endsWith("\n\n"));
+        String data = text.substring(text.indexOf("data: ") + "data: ".length()).trim();
+        return JSONObject.fromObject(data);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2014 Ericsson. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.ericsson.jenkins.plugins.dashbeats.widget;
+
+import com.ericsson.jenkins.plugins.dashbeats.client.DashBeatsPublisher;
+import com.ericsson.jenkins.plugins.dashbeats.client.WidgetType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class WidgetRegistryTest {
+
+    /**
+     * GIVEN the built-in widgets
+     * WHEN getting the widget of every widget type
+     * THEN the widget has the name of the type
+     */
+    @Test
+    public void shouldHaveOneBuiltinWidgetPerType() {
+        //WHEN
+        List<DashBeatsWidget> builtins = WidgetRegistry.getBuiltins();
+        //THEN
+        Assert.assertEquals(WidgetType.values().length, builtins.size());
+        for (WidgetType type : WidgetType.values()) {
+            Assert.assertEquals(type.name(), type.getWidget().getName());
+            Assert.assertSame(type.getWidget(), builtins.get(type.ordinal()));
+        }
+        Assert.assertEquals("latest_failed_builds", WidgetType.LATEST_FAILED_BUILDS.getWidget().getId());
+        Assert.assertEquals(DashBeatsPublisher.LATEST_FAILED_BUILDS_PATH,
+                WidgetType.LATEST_FAILED_BUILDS.getWidget().getPath());
+    }
+
+    /**
+     * GIVEN widget names in any case and order
+     * WHEN parsing them
+     * THEN the widgets are returned in the order of the registry
+     */
+    @Test
+    public void shouldParseWidgetNames() {
+        //WHEN
+        List<DashBeatsWidget> widgets = WidgetRegistry.parse("top_failed_jobs, Latest_Failed_Builds");
+        //THEN
+        Assert.assertEquals(Arrays.asList(WidgetType.LATEST_FAILED_BUILDS.getWidget(),
+                WidgetType.TOP_FAILED_JOBS.getWidget()), widgets);
+        Assert.assertEquals(WidgetRegistry.all(), WidgetRegistry.parse(" "));
+    }
+
+    /**
+     * GIVEN an unknown widget name
+     * WHEN parsing it
+     * THEN it is rejected
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownWidget() {
+        WidgetRegistry.parse("LATEST_BUILD, DURATIONS");
+    }
+}